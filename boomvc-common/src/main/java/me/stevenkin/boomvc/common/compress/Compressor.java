@@ -0,0 +1,166 @@
+package me.stevenkin.boomvc.common.compress;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * gzip or deflate encoder of one body at a time, the Deflater is kept and reset between bodies
+ * so a compressor can be reused by the thread owning it. a streamed body is compressed part by
+ * part, every part ends with a sync flush so the client can decode what it got so far
+ */
+public class Compressor {
+
+    public static final String GZIP = "gzip";
+
+    public static final String DEFLATE = "deflate";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int SEGMENT_SIZE = 8 * 1024;
+
+    private final boolean gzip;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private boolean started = false;
+
+    private byte[] current;
+
+    private int count;
+
+    public Compressor(String encoding) {
+        this(encoding, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public Compressor(String encoding, int level) {
+        if(GZIP.equals(encoding))
+            this.gzip = true;
+        else if(DEFLATE.equals(encoding))
+            this.gzip = false;
+        else
+            throw new IllegalArgumentException("unsupported encoding " + encoding);
+        this.deflater = new Deflater(level, this.gzip);
+    }
+
+    /**
+     * compress the readable bytes of the buffers, their positions are not moved
+     *
+     * @param finish the buffers are the end of the body
+     */
+    public List<ByteBuffer> compress(List<ByteBuffer> buffers, boolean finish){
+        List<ByteBuffer> out = new ArrayList<>();
+        if(!this.started) {
+            if(this.gzip)
+                out.add(ByteBuffer.wrap(GZIP_HEADER));
+            this.started = true;
+        }
+        for(ByteBuffer buffer : buffers){
+            if(!buffer.hasRemaining())
+                continue;
+            byte[] array;
+            int offset;
+            int length = buffer.remaining();
+            if(buffer.hasArray()) {
+                array = buffer.array();
+                offset = buffer.arrayOffset() + buffer.position();
+            } else {
+                array = new byte[length];
+                offset = 0;
+                buffer.duplicate().get(array);
+            }
+            if(this.gzip)
+                this.crc.update(array, offset, length);
+            this.deflater.setInput(array, offset, length);
+            while(!this.deflater.needsInput())
+                deflate(out, Deflater.NO_FLUSH);
+        }
+        if(finish) {
+            this.deflater.finish();
+            while(!this.deflater.finished())
+                deflate(out, Deflater.NO_FLUSH);
+            seal(out);
+            if(this.gzip)
+                out.add(gzipTrailer());
+        } else {
+            deflate(out, Deflater.SYNC_FLUSH);
+            seal(out);
+        }
+        return out;
+    }
+
+    /**
+     * compress a whole body
+     */
+    public byte[] compress(byte[] bytes){
+        List<ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(ByteBuffer.wrap(bytes));
+        List<ByteBuffer> out = compress(buffers, true);
+        int size = 0;
+        for(ByteBuffer buffer : out)
+            size += buffer.remaining();
+        byte[] compressed = new byte[size];
+        int position = 0;
+        for(ByteBuffer buffer : out){
+            int length = buffer.remaining();
+            buffer.get(compressed, position, length);
+            position += length;
+        }
+        return compressed;
+    }
+
+    private void deflate(List<ByteBuffer> out, int flush){
+        int n;
+        int space;
+        do {
+            if(this.current == null || this.count == this.current.length) {
+                seal(out);
+                this.current = new byte[SEGMENT_SIZE];
+            }
+            space = this.current.length - this.count;
+            n = this.deflater.deflate(this.current, this.count, space, flush);
+            this.count += n;
+        } while(n == space);
+    }
+
+    private void seal(List<ByteBuffer> out){
+        if(this.current != null && this.count > 0)
+            out.add(ByteBuffer.wrap(this.current, 0, this.count));
+        this.current = null;
+        this.count = 0;
+    }
+
+    private ByteBuffer gzipTrailer(){
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        int crc = (int) this.crc.getValue();
+        int size = (int) this.deflater.getBytesRead();
+        for(int i = 0; i < 4; i++)
+            trailer.put((byte) (crc >>> (i * 8)));
+        for(int i = 0; i < 4; i++)
+            trailer.put((byte) (size >>> (i * 8)));
+        trailer.flip();
+        return trailer;
+    }
+
+    /**
+     * get ready for the next body
+     */
+    public void reset(){
+        this.deflater.reset();
+        this.crc.reset();
+        this.started = false;
+        this.current = null;
+        this.count = 0;
+    }
+
+    /**
+     * free the native memory of the Deflater, the compressor can not be used any more
+     */
+    public void end(){
+        this.deflater.end();
+    }
+}
@@ -0,0 +1,147 @@
+package me.stevenkin.boomvc.common.compress;
+
+import com.google.common.base.Splitter;
+import me.stevenkin.boomvc.ioc.Environment;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static me.stevenkin.boomvc.http.Const.*;
+
+/**
+ * the response compression settings: which responses may be compressed and with which encoding
+ * a client accepts. whole bodies are compressed with a Compressor borrowed from a small pool, a
+ * thread per request (virtual threads) must not cost a Deflater per request
+ */
+public class HttpCompression {
+
+    /**
+     * compressors kept per encoding, more are made while all are borrowed and ended when they
+     * do not fit back
+     */
+    private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final BlockingQueue<Compressor> gzipCompressors = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private final BlockingQueue<Compressor> deflateCompressors = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private final boolean enabled;
+
+    private final long minLength;
+
+    private final List<String> mimeTypes;
+
+    public HttpCompression(boolean enabled, long minLength, List<String> mimeTypes) {
+        this.enabled = enabled;
+        this.minLength = minLength;
+        this.mimeTypes = mimeTypes;
+    }
+
+    public static HttpCompression of(Environment environment){
+        return new HttpCompression(
+                Boolean.valueOf(environment.getValue(ENV_KEY_GZIP_ENABLE, "false")),
+                Long.parseLong(environment.getValue(ENV_KEY_GZIP_MIN_LENGTH, Long.toString(DEFAULT_GZIP_MIN_LENGTH))),
+                Splitter.on(',').omitEmptyStrings().trimResults().splitToList(environment.getValue(ENV_KEY_GZIP_MIME_TYPES, DEFAULT_GZIP_MIME_TYPES)));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * the encoding to use for a client sending this Accept-Encoding, gzip is preferred when the
+     * client weighs gzip and deflate the same. null when compression is off or nothing fits
+     */
+    public String negotiate(String acceptEncoding){
+        if(!this.enabled || acceptEncoding == null || acceptEncoding.isEmpty())
+            return null;
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for(String coding : acceptEncoding.split(",")){
+            int i = coding.indexOf(';');
+            String name = (i < 0 ? coding : coding.substring(0, i)).trim().toLowerCase();
+            float q = i < 0 ? 1 : quality(coding.substring(i + 1));
+            if(name.equals(Compressor.GZIP) || name.equals("x-gzip"))
+                gzip = Math.max(gzip, q);
+            else if(name.equals(Compressor.DEFLATE))
+                deflate = Math.max(deflate, q);
+            else if(name.equals("*"))
+                any = q;
+        }
+        if(gzip < 0)
+            gzip = any;
+        if(deflate < 0)
+            deflate = any;
+        if(gzip <= 0 && deflate <= 0)
+            return null;
+        return gzip >= deflate ? Compressor.GZIP : Compressor.DEFLATE;
+    }
+
+    private static float quality(String params){
+        for(String param : params.split(";")){
+            param = param.trim();
+            if(param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * a body of this content type and length is worth compressing, a length of -1 means a streamed body
+     */
+    public boolean isCompressible(String contentType, long length){
+        if(!this.enabled || contentType == null || (length >= 0 && length < this.minLength))
+            return false;
+        int i = contentType.indexOf(';');
+        String mimeType = (i < 0 ? contentType : contentType.substring(0, i)).trim().toLowerCase();
+        for(String type : this.mimeTypes){
+            if(type.endsWith("/*") ? mimeType.startsWith(type.substring(0, type.length() - 1)) : mimeType.equals(type))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * compress a whole body with a pooled compressor
+     */
+    public List<ByteBuffer> compress(String encoding, List<ByteBuffer> body){
+        Compressor compressor = borrow(encoding);
+        try {
+            return compressor.compress(body, true);
+        } finally {
+            giveBack(encoding, compressor);
+        }
+    }
+
+    public byte[] compress(String encoding, byte[] body){
+        Compressor compressor = borrow(encoding);
+        try {
+            return compressor.compress(body);
+        } finally {
+            giveBack(encoding, compressor);
+        }
+    }
+
+    private BlockingQueue<Compressor> compressors(String encoding){
+        return Compressor.GZIP.equals(encoding) ? this.gzipCompressors : this.deflateCompressors;
+    }
+
+    private Compressor borrow(String encoding){
+        Compressor compressor = compressors(encoding).poll();
+        return compressor != null ? compressor : new Compressor(encoding);
+    }
+
+    private void giveBack(String encoding, Compressor compressor){
+        compressor.reset();
+        if(!compressors(encoding).offer(compressor))
+            compressor.end();
+    }
+}
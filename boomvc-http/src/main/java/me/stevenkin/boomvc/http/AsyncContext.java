@@ -0,0 +1,23 @@
+package me.stevenkin.boomvc.http;
+
+/**
+ * a response kept open after its handler returned, the connection waits for complete. any
+ * thread may write the response and complete it, as long as two of them never do it at once
+ */
+public interface AsyncContext {
+
+    /**
+     * send the rest of the body and end the response, only the first call counts
+     */
+    void complete();
+
+    boolean isCompleted();
+
+    /**
+     * run the listener once when the connection is closed before the response is complete. it
+     * runs on the io thread of the connection and must not block
+     */
+    void onDisconnect(Runnable listener);
+
+    boolean isDisconnected();
+}
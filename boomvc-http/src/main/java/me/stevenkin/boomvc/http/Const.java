@@ -63,6 +63,8 @@ public interface Const {
     String ENV_KEY_BANNER_PATH = "app.banner-path";
     String ENV_KEY_CONTEXT_PATH = "app.context-path";
     String ENV_KEY_GZIP_ENABLE = "http.gzip.enable";
+    String ENV_KEY_GZIP_MIN_LENGTH = "http.gzip.min-length";
+    String ENV_KEY_GZIP_MIME_TYPES = "http.gzip.mime-types";
     String ENV_KEY_CORS_ENABLE = "http.cors.enable";
     String ENV_KEY_SESSION_KEY = "http.session.key";
     String ENV_KEY_SESSION_TIMEOUT = "http.session.timeout";
@@ -77,12 +79,62 @@ public interface Const {
     String ENV_KEY_SERVER_ADDRESS = "server.address";
     String ENV_KEY_SERVER_PORT = "server.port";
     String ENV_KEY_SERVER_ACCEPT_THREAD_COUNT = "server.accept-thread.count";
+    String ENV_KEY_SERVER_ACCEPT_BATCH_SIZE = "server.accept-batch.size";
+    String ENV_KEY_SERVER_SO_BACKLOG = "server.so-backlog";
+    String ENV_KEY_SERVER_SO_REUSEADDR = "server.so-reuseaddr";
+    String ENV_KEY_SERVER_SO_REUSEPORT = "server.so-reuseport";
+    String ENV_KEY_SERVER_SO_RCVBUF = "server.so-rcvbuf";
+    String ENV_KEY_SERVER_SO_SNDBUF = "server.so-sndbuf";
+    String ENV_KEY_SERVER_SO_KEEPALIVE = "server.so-keepalive";
+    String ENV_KEY_SERVER_TCP_NODELAY = "server.tcp-nodelay";
     String ENV_KEY_SERVER_IO_THREAD_COUNT = "server.io-thread.count";
+    String ENV_KEY_SERVER_IO_THREAD_CHOOSER = "server.io-thread.chooser";
+    String ENV_KEY_SERVER_EXECUTE_MODE = "server.execute-mode";
+    String ENV_KEY_SERVER_WORKER_THREAD_COUNT = "server.worker-thread.count";
+    String ENV_KEY_SERVER_WORKER_QUEUE_SIZE = "server.worker-queue.size";
+    String ENV_KEY_SERVER_MAX_INITIAL_LINE_LENGTH = "server.max-initial-line-length";
+    String ENV_KEY_SERVER_MAX_HEADER_SIZE = "server.max-header-size";
+    String ENV_KEY_SERVER_MAX_CONTENT_LENGTH = "server.max-content-length";
+    String ENV_KEY_SERVER_MAX_PIPELINED_REQUESTS = "server.max-pipelined-requests";
+    String ENV_KEY_SERVER_BODY_SPOOL_THRESHOLD = "server.body-spool.threshold";
+    String ENV_KEY_SERVER_BODY_SPOOL_DIR = "server.body-spool.dir";
+    String ENV_KEY_SERVER_HTTP2_ENABLE = "server.http2.enable";
+    String ENV_KEY_SERVER_HTTP2_MAX_CONCURRENT_STREAMS = "server.http2.max-concurrent-streams";
+    String ENV_KEY_SERVER_HTTP2_INITIAL_WINDOW_SIZE = "server.http2.initial-window-size";
+    String ENV_KEY_SERVER_WEBSOCKET_MAX_MESSAGE_SIZE = "server.websocket.max-message-size";
+    String ENV_KEY_SERVER_WRITE_BUFFER_HIGH_WATERMARK = "server.write-buffer.high-watermark";
+    String ENV_KEY_SERVER_WRITE_BUFFER_LOW_WATERMARK = "server.write-buffer.low-watermark";
+    String ENV_KEY_SERVER_IDLE_TIMEOUT = "server.idle-timeout";
+    String ENV_KEY_SERVER_HEADER_READ_TIMEOUT = "server.header-read-timeout";
+    String ENV_KEY_SERVER_BODY_READ_TIMEOUT = "server.body-read-timeout";
+    String ENV_KEY_SERVER_RECYCLE_ENABLE = "server.recycle.enable";
+    String ENV_KEY_SERVER_RECYCLE_MAX_CACHED = "server.recycle.max-cached";
+    String ENV_KEY_SERVER_RECYCLE_LEAK_DETECTION = "server.recycle.leak-detection";
 
     int DEFAULT_SO_BACKLOG = 1024;
     int DEFAULT_ACCEPT_THREAD_COUNT = 1;
-    int DEFAULT_IO_THREAD_COUNT = 1;
-    //int DEFAULT_IO_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    int DEFAULT_ACCEPT_BATCH_SIZE = 64;
+    int DEFAULT_IO_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    String DEFAULT_IO_THREAD_CHOOSER = "round-robin";
+    String DEFAULT_EXECUTE_MODE = "io";
+    int DEFAULT_WORKER_THREAD_COUNT = Runtime.getRuntime().availableProcessors() * 2;
+    int DEFAULT_WORKER_QUEUE_SIZE = 1024;
+    int DEFAULT_MAX_INITIAL_LINE_LENGTH = 8 * 1024;
+    int DEFAULT_MAX_HEADER_SIZE = 16 * 1024;
+    long DEFAULT_MAX_CONTENT_LENGTH = Integer.MAX_VALUE - 8;
+    int DEFAULT_MAX_PIPELINED_REQUESTS = 16;
+    long DEFAULT_BODY_SPOOL_THRESHOLD = 1024 * 1024;
+    int DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 100;
+    int DEFAULT_HTTP2_INITIAL_WINDOW_SIZE = 1024 * 1024;
+    int DEFAULT_WEBSOCKET_MAX_MESSAGE_SIZE = 1024 * 1024;
+    int DEFAULT_WRITE_BUFFER_HIGH_WATERMARK = 64 * 1024;
+    int DEFAULT_WRITE_BUFFER_LOW_WATERMARK = 32 * 1024;
+    long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+    long DEFAULT_HEADER_READ_TIMEOUT = 20 * 1000;
+    long DEFAULT_BODY_READ_TIMEOUT = 30 * 1000;
+    int DEFAULT_RECYCLE_MAX_CACHED = 256;
+    long DEFAULT_GZIP_MIN_LENGTH = 1024;
+    String DEFAULT_GZIP_MIME_TYPES = "text/*,application/json,application/javascript,application/xml,application/xhtml+xml,image/svg+xml";
 
     String NEW_LINE = "\r\n";
 
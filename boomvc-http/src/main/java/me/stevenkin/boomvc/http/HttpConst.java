@@ -18,6 +18,8 @@ public interface HttpConst {
     String CONTENT_LENGTH   = "Content-Length";
     String CONTENT_TYPE     = "Content-Type";
     String CONTENT_ENCODING = "Content-Encoding";
+    String TRANSFER_ENCODING = "Transfer-Encoding";
+    String VARY             = "Vary";
     String DATE             = "Date";
     String LOCATION         = "Location";
     String X_POWER_BY       = "X-Powered-By";
@@ -39,6 +39,11 @@ public interface HttpResponse {
 
     void body(String body) throws Exception;
 
+    /**
+     * the array is sent as it is, it must not be changed afterwards
+     */
+    void body(byte[] body) throws Exception;
+
     default void text(String text) throws Exception{
         if (null == text) return;
         this.contentType("text/plain; charset=UTF-8");
@@ -59,6 +64,10 @@ public interface HttpResponse {
 
     void download(File file) throws Exception;
 
+    /**
+     * a flush of the stream (or of writer()) commits the response: the status line and the headers
+     * are sent and the body written so far follows, chunked unless a Content-Length was set
+     */
     OutputStream outputStream();
 
     void redirect(String newUri);
@@ -69,6 +78,22 @@ public interface HttpResponse {
 
     void flush() throws Exception;
 
+    /**
+     * the status line and the headers have been sent, they can not be changed any more
+     */
+    boolean isCommitted();
+
+    /**
+     * keep the response open after the handler returns, it ends with AsyncContext.complete
+     */
+    default AsyncContext startAsync(){
+        throw new UnsupportedOperationException("async response is not supported");
+    }
+
+    default boolean isAsync(){
+        return false;
+    }
+
 
 
 }
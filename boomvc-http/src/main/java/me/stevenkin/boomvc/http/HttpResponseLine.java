@@ -2,10 +2,55 @@ package me.stevenkin.boomvc.http;
 
 public class HttpResponseLine {
 
+    private static final String[] REASONS = new String[600];
+
+    static {
+        REASONS[100] = "Continue";
+        REASONS[101] = "Switching Protocols";
+        REASONS[200] = "OK";
+        REASONS[201] = "Created";
+        REASONS[202] = "Accepted";
+        REASONS[204] = "No Content";
+        REASONS[206] = "Partial Content";
+        REASONS[301] = "Moved Permanently";
+        REASONS[302] = "Found";
+        REASONS[303] = "See Other";
+        REASONS[304] = "Not Modified";
+        REASONS[307] = "Temporary Redirect";
+        REASONS[308] = "Permanent Redirect";
+        REASONS[400] = "Bad Request";
+        REASONS[401] = "Unauthorized";
+        REASONS[403] = "Forbidden";
+        REASONS[404] = "Not Found";
+        REASONS[405] = "Method Not Allowed";
+        REASONS[406] = "Not Acceptable";
+        REASONS[408] = "Request Timeout";
+        REASONS[409] = "Conflict";
+        REASONS[410] = "Gone";
+        REASONS[411] = "Length Required";
+        REASONS[412] = "Precondition Failed";
+        REASONS[413] = "Payload Too Large";
+        REASONS[414] = "URI Too Long";
+        REASONS[415] = "Unsupported Media Type";
+        REASONS[417] = "Expectation Failed";
+        REASONS[426] = "Upgrade Required";
+        REASONS[429] = "Too Many Requests";
+        REASONS[431] = "Request Header Fields Too Large";
+        REASONS[500] = "Internal Server Error";
+        REASONS[501] = "Not Implemented";
+        REASONS[502] = "Bad Gateway";
+        REASONS[503] = "Service Unavailable";
+        REASONS[504] = "Gateway Timeout";
+        REASONS[505] = "HTTP Version Not Supported";
+    }
+
     private String httpVersion;
 
     private int status = 200;
 
+    /**
+     * null until set, the standard reason of the status is sent then
+     */
     private String reason;
 
     public HttpResponseLine(String httpVersion, int status, String reason) {
@@ -17,7 +62,13 @@ public class HttpResponseLine {
     public HttpResponseLine() {
         this.httpVersion = "HTTP/1.1";
         this.status = 200;
-        this.reason = "OK";
+    }
+
+    /**
+     * the standard reason phrase of a status, null for a status without a well known one
+     */
+    public static String reasonPhrase(int status) {
+        return status >= 0 && status < REASONS.length ? REASONS[status] : null;
     }
 
     public String httpVersion() {
@@ -37,7 +88,11 @@ public class HttpResponseLine {
     }
 
     public String reason() {
-        return reason;
+        if (reason != null) {
+            return reason;
+        }
+        String phrase = reasonPhrase(status);
+        return phrase == null ? "Unknown" : phrase;
     }
 
     public void reason(String reason) {
@@ -46,6 +101,6 @@ public class HttpResponseLine {
 
     @Override
     public String toString() {
-        return httpVersion + " " + Integer.toString(status) + " " + reason;
+        return httpVersion + " " + Integer.toString(status) + " " + reason();
     }
 }
@@ -1,9 +1,6 @@
 package me.stevenkin.boomvc.http.cookie;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import me.stevenkin.boomvc.http.kit.DateKit;
 
 public class HttpCookie {
 
@@ -86,20 +83,25 @@ public class HttpCookie {
         this.httpOnly = httpOnly;
     }
 
+    /**
+     * the value of a Set-Cookie header, a max age of 0 or more also sets the expiry date for the
+     * clients that only know Expires
+     */
     public String cookieString(){
-        DateFormat formater = new SimpleDateFormat(
-                "Wdy, DD-MM-YYYY HH:MM:SS", Locale.US);
         StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append(this.name).append("=").append(this.value).append("; ");
+        stringBuilder.append(this.name).append("=").append(this.value);
         if(this.domain != null)
-            stringBuilder.append("domain=").append(this.domain).append("; ");
-        if(this.maxAge > 0)
-            stringBuilder.append("expires=").append(formater.format(new Date(new Date().getTime() + this.maxAge))).append("; ");
-        stringBuilder.append("path=").append(this.path).append("; ");
+            stringBuilder.append("; Domain=").append(this.domain);
+        if(this.maxAge >= 0) {
+            stringBuilder.append("; Max-Age=").append(this.maxAge);
+            stringBuilder.append("; Expires=").append(DateKit.httpDate(System.currentTimeMillis() + this.maxAge * 1000));
+        }
+        if(this.path != null)
+            stringBuilder.append("; Path=").append(this.path);
         if(this.secure)
-            stringBuilder.append("secure; ");
+            stringBuilder.append("; Secure");
         if(this.httpOnly)
-            stringBuilder.append("HttpOnly");
+            stringBuilder.append("; HttpOnly");
         return stringBuilder.toString();
     }
 }
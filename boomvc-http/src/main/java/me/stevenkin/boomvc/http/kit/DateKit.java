@@ -0,0 +1,63 @@
+package me.stevenkin.boomvc.http.kit;
+
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * dates the way http headers carry them (rfc 7231 IMF-fixdate), always in GMT
+ */
+public class DateKit {
+
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * the date of the current second, made once a second whatever the number of threads asking
+     */
+    private static volatile CachedDate current = new CachedDate(0);
+
+    public static String httpDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    public static String currentHttpDate() {
+        return cachedDate().text;
+    }
+
+    /**
+     * the current date in iso-8859-1, shared: it must not be written to
+     */
+    public static byte[] currentHttpDateBytes() {
+        return cachedDate().bytes;
+    }
+
+    private static CachedDate cachedDate() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate date = current;
+        if (date.second != second) {
+            date = new CachedDate(second);
+            current = date;
+        }
+        return date;
+    }
+
+    private static class CachedDate {
+
+        private final long second;
+
+        private final String text;
+
+        private final byte[] bytes;
+
+        private CachedDate(long second) {
+            this.second = second;
+            this.text = httpDate(second * 1000);
+            this.bytes = this.text.getBytes(ISO_8859_1);
+        }
+    }
+}
@@ -27,11 +27,25 @@ public class PathKit {
         return VAR_FIXPATH_PATTERN.matcher(path).replaceAll("%20");
     }
 
+    /**
+     * collapse repeated slashes, a clean path is returned as it is
+     */
     public static String cleanPath(String path) {
         if (path == null) {
             return null;
         }
-        return path.replaceAll("[/]+", SLASH);
+        int i = path.indexOf("//");
+        if (i < 0) {
+            return path;
+        }
+        StringBuilder sb = new StringBuilder(path.length()).append(path, 0, i + 1);
+        for (i++; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c != '/' || path.charAt(i - 1) != '/') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
     }
 
     public static String getCurrentClassPath() {
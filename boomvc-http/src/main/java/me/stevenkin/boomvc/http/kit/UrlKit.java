@@ -0,0 +1,68 @@
+package me.stevenkin.boomvc.http.kit;
+
+import java.nio.charset.Charset;
+
+/**
+ * percent decoding of a part of a request target or of a form body. the chars of the string up
+ * to 0xff are taken as the bytes the client sent, the way the parsers read them, so the bytes of
+ * the escapes and those sent raw are decoded with the charset together
+ */
+public class UrlKit {
+
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * a path segment, '+' stays as it is
+     */
+    public static String decodePath(String s) {
+        return decode(s, 0, s.length(), false, UTF8);
+    }
+
+    /**
+     * a name or a value of a query string or of a form body, '+' is a space
+     */
+    public static String decodeComponent(String s, int start, int end, Charset charset) {
+        return decode(s, start, end, true, charset);
+    }
+
+    /**
+     * the string is returned as it is, or a part of it, when there is nothing to decode
+     * @throws IllegalArgumentException on a '%' not followed by two hex digits
+     */
+    public static String decode(String s, int start, int end, boolean plusAsSpace, Charset charset) {
+        int i = start;
+        while(i < end) {
+            char c = s.charAt(i);
+            if(c == '%' || (plusAsSpace && c == '+') || c > 0x7f)
+                break;
+            i++;
+        }
+        if(i == end)
+            return start == 0 && end == s.length() ? s : s.substring(start, end);
+        byte[] bytes = new byte[(end - start) * 3];
+        int length = 0;
+        for(int j = start; j < i; j++)
+            bytes[length++] = (byte) s.charAt(j);
+        while(i < end) {
+            char c = s.charAt(i++);
+            if(c == '%') {
+                if(i + 2 > end)
+                    throw new IllegalArgumentException("incomplete escape in " + s);
+                int high = Character.digit(s.charAt(i++), 16);
+                int low = Character.digit(s.charAt(i++), 16);
+                if(high < 0 || low < 0)
+                    throw new IllegalArgumentException("illegal escape in " + s);
+                bytes[length++] = (byte) ((high << 4) | low);
+            } else if(plusAsSpace && c == '+') {
+                bytes[length++] = ' ';
+            } else if(c <= 0xff) {
+                bytes[length++] = (byte) c;
+            } else {
+                byte[] encoded = String.valueOf(c).getBytes(UTF8);
+                System.arraycopy(encoded, 0, bytes, length, encoded.length);
+                length += encoded.length;
+            }
+        }
+        return new String(bytes, 0, length, charset);
+    }
+}
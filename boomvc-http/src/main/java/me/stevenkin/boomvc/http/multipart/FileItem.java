@@ -1,5 +1,15 @@
 package me.stevenkin.boomvc.http.multipart;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+
+/**
+ * an uploaded file, small ones are kept in memory and large ones in a temp file which is
+ * deleted when the request is answered unless it has been transferred
+ */
 public class FileItem {
 
     private String name;
@@ -7,6 +17,8 @@ public class FileItem {
     private String contentType;
     private long   length;
     private byte[] data;
+    private Path   file;
+    private boolean transferred = false;
 
     public FileItem(String name, String fileName, String contentType, long length, byte[] data) {
         this.name = name;
@@ -16,6 +28,74 @@ public class FileItem {
         this.data = data;
     }
 
+    public FileItem(String name, String fileName, String contentType, long length, Path file) {
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.length = length;
+        this.file = file;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public boolean isInMemory() {
+        return this.file == null;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if(this.file != null)
+            return new FileInputStream(this.file.toFile());
+        return new ByteArrayInputStream(this.data);
+    }
+
+    /**
+     * the content as an array, a file on disk is read back
+     */
+    public byte[] getData() throws IOException {
+        if(this.file != null)
+            return Files.readAllBytes(this.file);
+        return this.data;
+    }
+
+    /**
+     * move the content to the target, a temp file is renamed when the target is on the same file store
+     */
+    public void transferTo(Path target) throws IOException {
+        if(this.file == null) {
+            Files.write(target, this.data);
+            return;
+        }
+        try {
+            Files.move(this.file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(this.file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.file = target;
+        this.transferred = true;
+    }
+
+    /**
+     * delete the temp file, a transferred file is left alone
+     */
+    public void delete() throws IOException {
+        if(this.file != null && !this.transferred)
+            Files.deleteIfExists(this.file);
+    }
+
     @Override
     public String toString() {
         long kb = length / 1024;
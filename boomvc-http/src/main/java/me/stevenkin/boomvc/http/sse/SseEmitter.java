@@ -0,0 +1,149 @@
+package me.stevenkin.boomvc.http.sse;
+
+import me.stevenkin.boomvc.http.AsyncContext;
+import me.stevenkin.boomvc.http.HttpResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * a text/event-stream response returned by a route method, the connection stays open until
+ * complete is called or the client goes away. events may be sent from any thread, even before
+ * the route returns: each one is handed to the io thread of the connection and the sender
+ * never waits for the socket
+ */
+public class SseEmitter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final String CONTENT_TYPE = "text/event-stream; charset=UTF-8";
+
+    /**
+     * events sent before the response is bound
+     */
+    private List<byte[]> pending = new ArrayList<>();
+
+    private OutputStream outputStream;
+
+    private AsyncContext context;
+
+    private boolean isCompleted = false;
+
+    private volatile boolean isDisconnected = false;
+
+    private List<Runnable> disconnectListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * called once the route returned the emitter: the headers are sent and so are the events
+     * waiting for them
+     */
+    public synchronized void bind(HttpResponse response) throws IOException {
+        if(this.context != null)
+            throw new IllegalStateException("the emitter is already bound");
+        response.contentType(CONTENT_TYPE);
+        response.header("Cache-Control", "no-cache");
+        this.context = response.startAsync();
+        this.outputStream = response.outputStream();
+        for(byte[] event : this.pending)
+            this.outputStream.write(event);
+        this.pending = null;
+        this.outputStream.flush();
+        this.context.onDisconnect(this::disconnected);
+        if(this.isCompleted)
+            this.context.complete();
+    }
+
+    public void send(String data) throws IOException {
+        send(null, null, data);
+    }
+
+    public void send(String event, String data) throws IOException {
+        send(null, event, data);
+    }
+
+    /**
+     * @param id null when the event has none
+     * @param event null for a message event
+     * @throws IOException when the stream is completed or the client went away
+     */
+    public void send(String id, String event, String data) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if(id != null)
+            field(sb, "id", id);
+        if(event != null)
+            field(sb, "event", event);
+        for(String line : data.split("\r\n|\r|\n", -1))
+            sb.append("data: ").append(line).append('\n');
+        sb.append('\n');
+        write(sb.toString().getBytes(UTF8));
+    }
+
+    /**
+     * a line the client ignores, sent now and then it keeps proxies from closing an idle stream
+     */
+    public void comment(String comment) throws IOException {
+        write((": " + comment.replaceAll("[\r\n]", " ") + "\n\n").getBytes(UTF8));
+    }
+
+    /**
+     * how long the client waits before it reconnects
+     */
+    public void retry(long millis) throws IOException {
+        write(("retry: " + millis + "\n\n").getBytes(UTF8));
+    }
+
+    private static void field(StringBuilder sb, String name, String value){
+        if(value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)
+            throw new IllegalArgumentException("sse " + name + " can not contain a line break");
+        sb.append(name).append(": ").append(value).append('\n');
+    }
+
+    private synchronized void write(byte[] event) throws IOException {
+        if(this.isCompleted || this.isDisconnected)
+            throw new IOException("event stream is closed");
+        if(this.outputStream == null) {
+            this.pending.add(event);
+            return;
+        }
+        this.outputStream.write(event);
+        this.outputStream.flush();
+    }
+
+    /**
+     * end the stream, the events sent so far are still written
+     */
+    public synchronized void complete() {
+        if(this.isCompleted)
+            return;
+        this.isCompleted = true;
+        if(this.context != null)
+            this.context.complete();
+    }
+
+    /**
+     * run the listener when the client goes away, on the io thread of the connection. it must
+     * not block
+     */
+    public SseEmitter onDisconnect(Runnable listener) {
+        this.disconnectListeners.add(listener);
+        if(this.isDisconnected && this.disconnectListeners.remove(listener))
+            listener.run();
+        return this;
+    }
+
+    private void disconnected() {
+        this.isDisconnected = true;
+        for(Runnable listener : this.disconnectListeners){
+            if(this.disconnectListeners.remove(listener))
+                listener.run();
+        }
+    }
+
+    public boolean isOpen() {
+        return !this.isCompleted && !this.isDisconnected;
+    }
+}
@@ -0,0 +1,66 @@
+package me.stevenkin.boomvc.http.websocket;
+
+import me.stevenkin.boomvc.http.HttpRequest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * one open websocket connection, handed to the methods of a websocket endpoint. the send
+ * methods may be called from any thread, the messages are written in the order they were sent
+ */
+public interface WebSocketSession {
+
+    int NORMAL_CLOSURE = 1000;
+    int GOING_AWAY = 1001;
+    int PROTOCOL_ERROR = 1002;
+    int UNSUPPORTED_DATA = 1003;
+    int NO_STATUS_RECEIVED = 1005;
+    int ABNORMAL_CLOSURE = 1006;
+    int INVALID_PAYLOAD = 1007;
+    int POLICY_VIOLATION = 1008;
+    int MESSAGE_TOO_BIG = 1009;
+    int INTERNAL_ERROR = 1011;
+
+    String id();
+
+    /**
+     * the handshake request
+     */
+    HttpRequest request();
+
+    /**
+     * the subprotocol agreed on in the handshake, null when there is none
+     */
+    String subprotocol();
+
+    Map<String, Object> attributes();
+
+    boolean isOpen();
+
+    /**
+     * @throws IOException when the session is closed
+     */
+    void sendText(String text) throws IOException;
+
+    /**
+     * the buffer is handed over, the caller must not touch it any more
+     *
+     * @throws IOException when the session is closed
+     */
+    void sendBinary(ByteBuffer data) throws IOException;
+
+    default void sendBinary(byte[] data) throws IOException {
+        sendBinary(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * start the closing handshake, nothing can be sent after it
+     */
+    void close(int code, String reason) throws IOException;
+
+    default void close() throws IOException {
+        close(NORMAL_CLOSURE, "");
+    }
+}
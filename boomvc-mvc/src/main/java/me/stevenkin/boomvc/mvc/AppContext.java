@@ -49,11 +49,56 @@ public class AppContext {
         return threadLocal.get().response;
     }
 
+    /**
+     * the context of a thread is made once and reused for every request it runs
+     */
     public static void initAppContext(HttpRequest request, HttpResponse response){
-        threadLocal.set(new AppContext(request, response));
+        AppContext context = threadLocal.get();
+        if(context == null) {
+            threadLocal.set(new AppContext(request, response));
+            return;
+        }
+        context.request = request;
+        context.response = response;
     }
 
     public static void destroyAppContext(){
-        threadLocal.remove();
+        AppContext context = threadLocal.get();
+        if(context != null) {
+            context.request = null;
+            context.response = null;
+        }
+    }
+
+    /**
+     * carry the request context of the calling thread to the thread which runs the task,
+     * the context of that thread is restored after the task. the task gets a copy, the
+     * context of the calling thread is reused by its next request
+     */
+    public static Runnable wrap(Runnable task){
+        AppContext current = threadLocal.get();
+        if(current == null || current.request == null)
+            return task;
+        return wrap(current.request, current.response, task);
+    }
+
+    /**
+     * run the task with the context of the request, whichever thread runs it. the context that
+     * thread had is restored after the task
+     */
+    public static Runnable wrap(HttpRequest request, HttpResponse response, Runnable task){
+        AppContext context = new AppContext(request, response);
+        return ()->{
+            AppContext previous = threadLocal.get();
+            threadLocal.set(context);
+            try {
+                task.run();
+            } finally {
+                if(previous == null)
+                    threadLocal.remove();
+                else
+                    threadLocal.set(previous);
+            }
+        };
     }
 }
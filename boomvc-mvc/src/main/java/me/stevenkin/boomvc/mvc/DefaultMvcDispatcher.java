@@ -1,10 +1,12 @@
 package me.stevenkin.boomvc.mvc;
 
 import com.google.common.base.Splitter;
+import me.stevenkin.boomvc.common.compress.HttpCompression;
 import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
 import me.stevenkin.boomvc.common.interceptor.Interceptor;
 import me.stevenkin.boomvc.common.view.ModelAndView;
 import me.stevenkin.boomvc.common.view.View;
+import me.stevenkin.boomvc.http.AsyncContext;
 import me.stevenkin.boomvc.http.Const;
 import me.stevenkin.boomvc.http.HttpRequest;
 import me.stevenkin.boomvc.http.HttpResponse;
@@ -25,8 +27,12 @@ import me.stevenkin.boomvc.mvc.view.ViewResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import static me.stevenkin.boomvc.http.Const.ENV_KEY_CONTEXT_PATH;
 import static me.stevenkin.boomvc.http.Const.ENV_KEY_STATIC_LIST;
@@ -76,7 +82,7 @@ public class DefaultMvcDispatcher implements MvcDispatcher {
 
         //init static handler
         boolean showDir = Boolean.valueOf(environment.getValue(ENV_KEY_STATIC_LIST, "false"));
-        this.staticHandler = new DefaultStaticHandler(showDir);
+        this.staticHandler = new DefaultStaticHandler(showDir, HttpCompression.of(environment));
 
         this.contextPath = environment.getValue(ENV_KEY_CONTEXT_PATH, "/");
 
@@ -103,39 +109,127 @@ public class DefaultMvcDispatcher implements MvcDispatcher {
         }
         if(!bool)
             return;
+        RouteMethod routeMethod = null;
+        Object returnValue = null;
+        Exception exception = null;
+        try {
+            if(isStatic(request.uri())){
+                String uri = PathKit.cleanPath(request.uri().replace(this.contextPath, "/"));
+                staticHandler.handleStatic(uri, request, response);
+                return;
+            }
+            routeMethod = this.routeMapping.mappingRoute(request);
+            returnValue = this.routeMethodAdapter.invokeRoute(request, response, routeMethod);
+        } catch (Exception e) {
+            exception = e;
+        }
+        if(returnValue instanceof CompletionStage){
+            CompletionStage<?> stage = (CompletionStage<?>) returnValue;
+            if(!isDone(stage)) {
+                dispatchAsync(request, response, interceptors, routeMethod, stage);
+                return;
+            }
+            try {
+                returnValue = ((CompletableFuture<?>) stage).join();
+            } catch (Exception e) {
+                returnValue = null;
+                exception = unwrap(e);
+            }
+        }
+        complete(request, response, interceptors, routeMethod, returnValue, exception);
+    }
+
+    /**
+     * the route returned a stage which is not done yet: the thread is given back at once and the
+     * response is finished by the thread completing the stage, the server writes it on the io
+     * thread of the connection
+     */
+    private void dispatchAsync(HttpRequest request, HttpResponse response, List<Interceptor> interceptors,
+                               RouteMethod routeMethod, CompletionStage<?> stage){
+        AsyncContext context = response.startAsync();
+        // the stage may be completed by a thread running another request, or by this one when it
+        // is done before the callback is attached, their context is kept
+        stage.whenComplete((value, throwable) -> {
+            try {
+                AppContext.wrap(request, response, () -> {
+                    // nothing is rendered for a client which went away, the interceptors whose
+                    // preHandle ran are still told the request is over
+                    if(context.isDisconnected()) {
+                        afterCompletion(request, response, interceptors, new ClosedChannelException());
+                        return;
+                    }
+                    try {
+                        complete(request, response, interceptors, routeMethod, value, throwable == null ? null : unwrap(throwable));
+                    } catch (Exception e) {
+                        logger.error("", e);
+                    }
+                }).run();
+            } finally {
+                context.complete();
+            }
+        });
+    }
+
+    private void complete(HttpRequest request, HttpResponse response, List<Interceptor> interceptors,
+                          RouteMethod routeMethod, Object returnValue, Exception exception) throws Exception {
         try {
             ModelAndView modelAndView = null;
             View view = null;
-            Exception exception = null;
             try {
-                if(isStatic(request.uri())){
-                    String uri = PathKit.cleanPath(request.uri().replace(this.contextPath, "/"));
-                    staticHandler.handleStatic(uri, request, response);
-                    return;
-                }
-                RouteMethod routeMethod = this.routeMapping.mappingRoute(request);
-                modelAndView = this.routeMethodAdapter.handleRoute(request, response, routeMethod);
-                for(int index = interceptors.size() - 1; index >= 0; index--){
-                    interceptors.get(index).postHandle(request, response, modelAndView);
+                if(exception == null) {
+                    modelAndView = this.routeMethodAdapter.resolveReturnValue(returnValue, request, response, routeMethod);
+                    for (int index = interceptors.size() - 1; index >= 0; index--) {
+                        interceptors.get(index).postHandle(request, response, modelAndView);
+                    }
+                    if (!response.isCommitted())
+                        view = this.viewResolver.resolve(modelAndView);
                 }
-                view = this.viewResolver.resolve(modelAndView);
             } catch (Exception e) {
                 exception = e;
             }
             if(exception != null){
+                if(response.isCommitted())
+                    throw exception;
                 modelAndView = this.exceptionHandler.handleException(exception);
                 view = this.viewResolver.resolve(modelAndView);
             }
-            view.render(modelAndView, request, response);
+            if(view != null)
+                view.render(modelAndView, request, response);
             for(int index = interceptors.size() - 1; index >= 0; index--){
                 interceptors.get(index).afterCompletion(request, response, exception);
             }
         }catch (Exception e){
             logger.error("", e);
+            if(response.isCommitted())
+                throw e;
             renderError(e, request, response);
         }
+    }
+
+    private static void afterCompletion(HttpRequest request, HttpResponse response, List<Interceptor> interceptors,
+                                        Exception exception){
+        for(int index = interceptors.size() - 1; index >= 0; index--){
+            try {
+                interceptors.get(index).afterCompletion(request, response, exception);
+            } catch (Exception e) {
+                logger.error("", e);
+            }
+        }
+    }
 
+    private static boolean isDone(CompletionStage<?> stage){
+        return stage instanceof CompletableFuture && ((CompletableFuture<?>) stage).isDone();
+    }
 
+    /**
+     * the exception a stage failed with, not the wrapper the future puts around it
+     */
+    private static Exception unwrap(Throwable throwable){
+        if(throwable instanceof CompletionException && throwable.getCause() != null)
+            throwable = throwable.getCause();
+        if(throwable instanceof Exception)
+            return (Exception) throwable;
+        return new CompletionException(throwable);
     }
 
     private void renderError(Exception exception, HttpRequest request, HttpResponse response) throws Exception {
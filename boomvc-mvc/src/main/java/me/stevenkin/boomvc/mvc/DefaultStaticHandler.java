@@ -1,20 +1,50 @@
 package me.stevenkin.boomvc.mvc;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import me.stevenkin.boomvc.common.compress.HttpCompression;
+import me.stevenkin.boomvc.http.HttpConst;
+import me.stevenkin.boomvc.http.HttpHeader;
 import me.stevenkin.boomvc.http.HttpRequest;
 import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.http.kit.DateKit;
+import me.stevenkin.boomvc.http.kit.StringKit;
 import me.stevenkin.boomvc.mvc.exception.InternalErrorException;
 import me.stevenkin.boomvc.mvc.exception.NoFoundException;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.Optional;
 
 public class DefaultStaticHandler implements StaticHandler {
 
+    /**
+     * bigger files are sent from disk as they are
+     */
+    private static final long MAX_COMPRESSED_FILE_LENGTH = 1024 * 1024;
+
+    /**
+     * compressed bytes kept in all, the least recently used files go first
+     */
+    private static final long MAX_CACHED_BYTES = 16 * 1024 * 1024;
+
     private boolean showDir = false;
 
-    public DefaultStaticHandler(boolean showDir) {
+    private HttpCompression compression;
+
+    /**
+     * compressed variants of static files, keyed by encoding and path, dropped when the file changes
+     * or the cache is over its byte budget
+     */
+    private Cache<String, CompressedFile> compressedFiles = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_BYTES)
+            .<String, CompressedFile>weigher((key, compressedFile) -> compressedFile.bytes.length)
+            .build();
+
+    public DefaultStaticHandler(boolean showDir, HttpCompression compression) {
         this.showDir = showDir;
+        this.compression = compression;
     }
 
     @Override
@@ -68,10 +98,56 @@ public class DefaultStaticHandler implements StaticHandler {
             response.html(buf.toString());
             return;
         }
+        String contentType = StringKit.mimeType(file.getName());
+        // the compressed and the plain variant are cached alike
+        response.header(HttpConst.LAST_MODIFIED, DateKit.httpDate(file.lastModified()));
+        if (file.length() <= MAX_COMPRESSED_FILE_LENGTH && this.compression.isCompressible(contentType, file.length())) {
+            response.header(HttpConst.VARY, HttpConst.ACCEPT_ENCODING);
+            String encoding = this.compression.negotiate(request.firstHeader(HttpConst.ACCEPT_ENCODING).map(HttpHeader::value).orElse(null));
+            if (encoding != null) {
+                response.header(HttpConst.CONTENT_TYPE, contentType);
+                response.header(HttpConst.CONTENT_ENCODING, encoding);
+                response.body(compressed(file, encoding));
+                return;
+            }
+        }
         try {
             response.download(file);
         }catch (Exception e){
             throw new InternalErrorException("read file '" + file.getPath() + "' happen error", e);
         }
     }
+
+    private byte[] compressed(File file, String encoding) throws Exception {
+        String key = encoding + ":" + file.getPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CompressedFile compressedFile = this.compressedFiles.getIfPresent(key);
+        if (compressedFile == null || compressedFile.lastModified != lastModified || compressedFile.length != length) {
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(file.toPath());
+            } catch (Exception e) {
+                throw new InternalErrorException("read file '" + file.getPath() + "' happen error", e);
+            }
+            compressedFile = new CompressedFile(lastModified, length, this.compression.compress(encoding, bytes));
+            this.compressedFiles.put(key, compressedFile);
+        }
+        return compressedFile.bytes;
+    }
+
+    private static class CompressedFile {
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final byte[] bytes;
+
+        CompressedFile(long lastModified, long length, byte[] bytes) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -16,9 +16,11 @@ import me.stevenkin.boomvc.mvc.rount.RouteMethod;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 public class DefaultRouteMethodAdapter implements RouteMethodAdapter {
 
@@ -32,11 +34,14 @@ public class DefaultRouteMethodAdapter implements RouteMethodAdapter {
 
     @Override
     public ModelAndView handleRoute(HttpRequest request, HttpResponse response, RouteMethod routeMethod) throws Exception {
+        return resolveReturnValue(invokeRoute(request, response, routeMethod), request, response, routeMethod);
+    }
+
+    @Override
+    public Object invokeRoute(HttpRequest request, HttpResponse response, RouteMethod routeMethod) throws Exception {
         List<MethodParameter> parameters = parseMethodParameters(routeMethod.getMethod());
         List<ParameterResolver> parameterResolvers = Lists.newArrayList(this.defaultParameterResolver);
         parameterResolvers.addAll(this.customParameterResolver);
-        List<ReturnValueResolver> returnValueResolvers = Lists.newArrayList(this.defaultReturnValueResolver);
-        returnValueResolvers.addAll(this.customReturnValueResolver);
         List<Object> args = new ArrayList<>(parameters.size());
         for (MethodParameter parameter : parameters){
             ParameterResolver resolver = null;
@@ -50,8 +55,18 @@ public class DefaultRouteMethodAdapter implements RouteMethodAdapter {
                 throw new NoSuchParameterResolverException();
             args.add(resolver.resolve(parameter, request, response));
         }
-        Object object = routeMethod.invoke(args.toArray(new Object[args.size()]));
+        return routeMethod.invoke(args.toArray(new Object[args.size()]));
+    }
+
+    @Override
+    public ModelAndView resolveReturnValue(Object object, HttpRequest request, HttpResponse response, RouteMethod routeMethod) throws Exception {
+        if(response.isCommitted())
+            return null;
+        List<ReturnValueResolver> returnValueResolvers = Lists.newArrayList(this.defaultReturnValueResolver);
+        returnValueResolvers.addAll(this.customReturnValueResolver);
         Type returnType = routeMethod.getMethod().getReturnType();
+        if(CompletionStage.class.isAssignableFrom((Class<?>) returnType))
+            returnType = completionType(routeMethod.getMethod());
         ReturnValueResolver resolver = null;
         for (ReturnValueResolver resolver1 : returnValueResolvers){
             if(resolver1.support(returnType, routeMethod.getMethod())){
@@ -85,6 +100,22 @@ public class DefaultRouteMethodAdapter implements RouteMethodAdapter {
         });
     }
 
+    /**
+     * the raw class a CompletionStage returned by the method completes with, Object when the
+     * method does not tell
+     */
+    private Type completionType(Method method){
+        Type type = method.getGenericReturnType();
+        if(!(type instanceof ParameterizedType))
+            return Object.class;
+        Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+        if(argument instanceof ParameterizedType)
+            return ((ParameterizedType) argument).getRawType();
+        if(argument instanceof Class)
+            return argument;
+        return Object.class;
+    }
+
     private List<MethodParameter> parseMethodParameters(Method method){
         List<MethodParameter> methodParameters = new ArrayList<>();
         Class<?>[] parameterTypes = method.getParameterTypes();
@@ -10,6 +10,18 @@ public interface RouteMethodAdapter {
 
     ModelAndView handleRoute(HttpRequest request, HttpResponse response, RouteMethod routeMethod) throws Exception;
 
+    /**
+     * resolve the parameters and call the route, the value is returned as it is
+     */
+    Object invokeRoute(HttpRequest request, HttpResponse response, RouteMethod routeMethod) throws Exception;
+
+    /**
+     * turn what the route returned into a model and view, null when the route already committed
+     * the response. the value of a route returning a CompletionStage is resolved against the
+     * type the stage completes with
+     */
+    ModelAndView resolveReturnValue(Object returnValue, HttpRequest request, HttpResponse response, RouteMethod routeMethod) throws Exception;
+
     void registerParameterResolver(Ioc ioc);
 
     void registerReturnValueResolver(Ioc ioc);
@@ -0,0 +1,15 @@
+package me.stevenkin.boomvc.mvc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * a method with a String parameter takes the text messages, one with a byte[] or ByteBuffer
+ * parameter the binary ones
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OnMessage {
+}
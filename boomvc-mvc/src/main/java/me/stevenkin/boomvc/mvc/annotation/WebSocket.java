@@ -0,0 +1,24 @@
+package me.stevenkin.boomvc.mvc.annotation;
+
+import me.stevenkin.boomvc.ioc.annotation.Bean;
+
+import java.lang.annotation.*;
+
+/**
+ * a websocket endpoint, its OnOpen, OnMessage, OnClose and OnError methods run on the io
+ * thread of the connection and must not block
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Bean
+public @interface WebSocket {
+
+    String value();
+
+    /**
+     * the first of them offered by the client is agreed on
+     */
+    String[] subprotocols() default {};
+
+}
@@ -10,7 +10,6 @@ import me.stevenkin.boomvc.mvc.filter.FilterRegisterBean;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class DefaultFilterMapping implements FilterMapping {
 
@@ -18,6 +17,12 @@ public class DefaultFilterMapping implements FilterMapping {
 
     private MvcDispatcher dispatcher;
 
+    /**
+     * the chain of the requests no filter is mapped to, shared since a chain without filters
+     * keeps no state
+     */
+    private FilterChain dispatcherChain;
+
     private PatternThreadLocal patternThreadLocal = new PatternThreadLocal();
 
     @Override
@@ -28,14 +33,22 @@ public class DefaultFilterMapping implements FilterMapping {
     @Override
     public void registerDispatcher(MvcDispatcher dispatcher) {
         this.dispatcher = dispatcher;
+        this.dispatcherChain = new DefaultFilterChain().dispatcher(dispatcher);
     }
 
     @Override
     public FilterChain mappingFilters(HttpRequest request) {
-        List<FilterMappingInfo> mappedFilters = this.registeredFilters.stream()
-                .filter(filter->patternThreadLocal.get().match(filter.filterConfig().filterPathPattern(), request.uri()))
-                .sorted(Comparator.comparing((FilterMappingInfo f)->f.filterConfig().order()).reversed())
-                .collect(Collectors.toList());
+        List<FilterMappingInfo> mappedFilters = null;
+        for(FilterMappingInfo filter : this.registeredFilters){
+            if(patternThreadLocal.get().match(filter.filterConfig().filterPathPattern(), request.uri())) {
+                if(mappedFilters == null)
+                    mappedFilters = new ArrayList<>();
+                mappedFilters.add(filter);
+            }
+        }
+        if(mappedFilters == null)
+            return this.dispatcherChain;
+        mappedFilters.sort(Comparator.comparing((FilterMappingInfo f)->f.filterConfig().order()).reversed());
         FilterChain filterChain = new DefaultFilterChain();
         mappedFilters.forEach(f->filterChain.addFilter(f.filter()));
         filterChain.dispatcher(this.dispatcher);
@@ -5,6 +5,7 @@ import me.stevenkin.boomvc.common.view.ModelAndView;
 import me.stevenkin.boomvc.common.view.View;
 import me.stevenkin.boomvc.http.HttpRequest;
 import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.http.sse.SseEmitter;
 import me.stevenkin.boomvc.ioc.annotation.Bean;
 import me.stevenkin.boomvc.mvc.annotation.Restful;
 
@@ -19,7 +20,8 @@ public class CommonReturnValueResolver implements ReturnValueResolver {
     public boolean support(Type returnType, Method method) {
         return method.getAnnotation(Restful.class) == null && !String.class.equals(returnType)
                 && !Void.class.equals(returnType) && !ModelAndView.class.equals(returnType)
-                && !View.class.isAssignableFrom((Class<?>) returnType);
+                && !View.class.isAssignableFrom((Class<?>) returnType)
+                && !SseEmitter.class.isAssignableFrom((Class<?>) returnType);
     }
 
     @Override
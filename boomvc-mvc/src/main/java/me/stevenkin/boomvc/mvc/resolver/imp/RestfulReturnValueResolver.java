@@ -5,6 +5,7 @@ import me.stevenkin.boomvc.common.resolver.ReturnValueResolver;
 import me.stevenkin.boomvc.common.view.ModelAndView;
 import me.stevenkin.boomvc.http.HttpRequest;
 import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.http.sse.SseEmitter;
 import me.stevenkin.boomvc.ioc.annotation.Bean;
 import me.stevenkin.boomvc.mvc.annotation.RestPath;
 import me.stevenkin.boomvc.mvc.annotation.Restful;
@@ -21,7 +22,8 @@ public class RestfulReturnValueResolver implements ReturnValueResolver {
     public boolean support(Type returnType, Method method){
         return (method.getAnnotation(Restful.class) != null
                 || method.getDeclaringClass().getAnnotation(RestPath.class) != null)
-                && !Void.class.equals(returnType);
+                && !Void.class.equals(returnType)
+                && !SseEmitter.class.isAssignableFrom((Class<?>) returnType);
     }
 
     @Override
@@ -0,0 +1,31 @@
+package me.stevenkin.boomvc.mvc.resolver.imp;
+
+import me.stevenkin.boomvc.common.resolver.ReturnValueResolver;
+import me.stevenkin.boomvc.common.view.ModelAndView;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.http.sse.SseEmitter;
+import me.stevenkin.boomvc.ioc.annotation.Bean;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * the returned emitter takes the response over, it is committed here so no view is rendered
+ */
+@Bean
+public class SseEmitterReturnValueResolver implements ReturnValueResolver {
+
+    @Override
+    public boolean support(Type returnType, Method method) {
+        return returnType instanceof Class && SseEmitter.class.isAssignableFrom((Class<?>) returnType);
+    }
+
+    @Override
+    public ModelAndView resolve(Object returnValue, Method method, Type returnType, HttpRequest request, HttpResponse response) throws Exception {
+        if(returnValue == null)
+            throw new IllegalStateException("route " + method.getName() + " returned no emitter");
+        ((SseEmitter) returnValue).bind(response);
+        return null;
+    }
+}
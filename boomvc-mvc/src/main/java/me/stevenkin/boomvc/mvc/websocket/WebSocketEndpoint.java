@@ -0,0 +1,157 @@
+package me.stevenkin.boomvc.mvc.websocket;
+
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.kit.PathKit;
+import me.stevenkin.boomvc.http.websocket.WebSocketSession;
+import me.stevenkin.boomvc.mvc.annotation.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the methods of a websocket endpoint bean. the parameters of every method are filled by type:
+ * the session, the handshake request, the message, the close code and reason, the error
+ */
+public class WebSocketEndpoint {
+
+    private final String path;
+
+    private final Object target;
+
+    private final List<String> subprotocols;
+
+    private Method onOpen;
+
+    private Method onText;
+
+    private Method onBinary;
+
+    private Method onClose;
+
+    private Method onError;
+
+    public WebSocketEndpoint(String path, Object target, String[] subprotocols) {
+        this.path = path;
+        this.target = target;
+        this.subprotocols = Arrays.asList(subprotocols);
+    }
+
+    public static WebSocketEndpoint of(Class<?> clazz, Object target){
+        WebSocket webSocket = clazz.getAnnotation(WebSocket.class);
+        WebSocketEndpoint endpoint = new WebSocketEndpoint(normalize(webSocket.value()), target, webSocket.subprotocols());
+        for(Method method : clazz.getDeclaredMethods()){
+            if(method.getAnnotation(OnOpen.class) != null)
+                endpoint.onOpen = accessible(method);
+            if(method.getAnnotation(OnClose.class) != null)
+                endpoint.onClose = accessible(method);
+            if(method.getAnnotation(OnError.class) != null)
+                endpoint.onError = accessible(method);
+            if(method.getAnnotation(OnMessage.class) != null) {
+                List<Class<?>> types = Arrays.asList(method.getParameterTypes());
+                if(types.contains(String.class))
+                    endpoint.onText = accessible(method);
+                else if(types.contains(byte[].class) || types.contains(ByteBuffer.class))
+                    endpoint.onBinary = accessible(method);
+                else
+                    throw new IllegalArgumentException("OnMessage method " + method + " takes no String, byte[] or ByteBuffer");
+            }
+        }
+        return endpoint;
+    }
+
+    static String normalize(String path){
+        return PathKit.fixPath(PathKit.cleanPath(path));
+    }
+
+    private static Method accessible(Method method){
+        method.setAccessible(true);
+        return method;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    /**
+     * the first subprotocol of the endpoint the client offered, null when there is none
+     */
+    public String subprotocol(List<String> offered){
+        for(String subprotocol : this.subprotocols){
+            if(offered.contains(subprotocol))
+                return subprotocol;
+        }
+        return null;
+    }
+
+    public void open(WebSocketSession session) throws Exception {
+        invoke(this.onOpen, session, null, 0, null);
+    }
+
+    /**
+     * @return false when the endpoint takes no text messages
+     */
+    public boolean text(WebSocketSession session, String text) throws Exception {
+        invoke(this.onText, session, text, 0, null);
+        return this.onText != null;
+    }
+
+    /**
+     * @return false when the endpoint takes no binary messages
+     */
+    public boolean binary(WebSocketSession session, ByteBuffer data) throws Exception {
+        invoke(this.onBinary, session, data, 0, null);
+        return this.onBinary != null;
+    }
+
+    public void close(WebSocketSession session, int code, String reason) throws Exception {
+        invoke(this.onClose, session, reason, code, null);
+    }
+
+    /**
+     * @return false when the endpoint has no OnError method
+     */
+    public boolean error(WebSocketSession session, Throwable cause) throws Exception {
+        invoke(this.onError, session, null, 0, cause);
+        return this.onError != null;
+    }
+
+    private void invoke(Method method, WebSocketSession session, Object message, int code, Throwable cause) throws Exception {
+        if(method == null)
+            return;
+        Class<?>[] types = method.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for(int i = 0; i < types.length; i++){
+            Class<?> type = types[i];
+            if(type == WebSocketSession.class)
+                args[i] = session;
+            else if(type == HttpRequest.class)
+                args[i] = session.request();
+            else if(type == int.class || type == Integer.class)
+                args[i] = code;
+            else if(Throwable.class.isAssignableFrom(type))
+                args[i] = cause;
+            else if(type == String.class || type == ByteBuffer.class)
+                args[i] = message;
+            else if(type == byte[].class)
+                args[i] = bytes((ByteBuffer) message);
+        }
+        try {
+            method.invoke(this.target, args);
+        } catch (InvocationTargetException e) {
+            if(e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw (Error) e.getCause();
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer){
+        if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length)
+            return buffer.array();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
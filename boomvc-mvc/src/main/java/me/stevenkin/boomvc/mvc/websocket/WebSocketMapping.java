@@ -0,0 +1,40 @@
+package me.stevenkin.boomvc.mvc.websocket;
+
+import me.stevenkin.boomvc.ioc.Ioc;
+import me.stevenkin.boomvc.mvc.annotation.WebSocket;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the websocket endpoints of the ioc container by their path, filled once at startup and
+ * only read afterwards
+ */
+public class WebSocketMapping {
+
+    private Map<String, WebSocketEndpoint> endpoints = new HashMap<>();
+
+    public void registerEndpoint(Ioc ioc){
+        ioc.getBeanDefines().stream()
+                .filter(b->b.getClazz().getAnnotation(WebSocket.class) != null)
+                .forEach(b->registerEndpoint(WebSocketEndpoint.of(b.getClazz(), b.getObject())));
+    }
+
+    public void registerEndpoint(WebSocketEndpoint endpoint){
+        if(this.endpoints.putIfAbsent(endpoint.path(), endpoint) != null)
+            throw new IllegalStateException("duplicate websocket endpoint " + endpoint.path());
+    }
+
+    /**
+     * @return null when no endpoint is found
+     */
+    public WebSocketEndpoint mappingEndpoint(String uri){
+        if(this.endpoints.isEmpty())
+            return null;
+        return this.endpoints.get(WebSocketEndpoint.normalize(uri));
+    }
+
+    public boolean isEmpty(){
+        return this.endpoints.isEmpty();
+    }
+}
@@ -0,0 +1,152 @@
+package me.stevenkin.boomvc.server;
+
+import me.stevenkin.boomvc.ioc.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static me.stevenkin.boomvc.http.Const.*;
+
+/**
+ * options of the listening socket and of every accepted connection, read once from the
+ * environment. a buffer size of 0 keeps the one the os picks, so its autotuning still works
+ */
+public class SocketConfig {
+    private static final Logger logger = LoggerFactory.getLogger(SocketConfig.class);
+
+    /**
+     * StandardSocketOptions.SO_REUSEPORT, added by jdk 9. null on older jdks
+     */
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+    private final int backlog;
+
+    private final int acceptBatchSize;
+
+    private final boolean reuseAddress;
+
+    private final boolean reusePort;
+
+    private final int receiveBufferSize;
+
+    private final int sendBufferSize;
+
+    private final boolean keepAlive;
+
+    private final boolean tcpNoDelay;
+
+    public SocketConfig(int backlog, int acceptBatchSize, boolean reuseAddress, boolean reusePort, int receiveBufferSize,
+                        int sendBufferSize, boolean keepAlive, boolean tcpNoDelay) {
+        this.backlog = backlog;
+        this.acceptBatchSize = acceptBatchSize;
+        this.reuseAddress = reuseAddress;
+        this.reusePort = reusePort;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        this.keepAlive = keepAlive;
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public static SocketConfig of(Environment environment){
+        return new SocketConfig(
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_SO_BACKLOG, Integer.toString(DEFAULT_SO_BACKLOG))),
+                Math.max(1, Integer.parseInt(environment.getValue(ENV_KEY_SERVER_ACCEPT_BATCH_SIZE, Integer.toString(DEFAULT_ACCEPT_BATCH_SIZE)))),
+                Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_SO_REUSEADDR, "true")),
+                Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_SO_REUSEPORT, "false")),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_SO_RCVBUF, "0")),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_SO_SNDBUF, "0")),
+                Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_SO_KEEPALIVE, "false")),
+                Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_TCP_NODELAY, "true")));
+    }
+
+    /**
+     * called before bind: the receive buffer is set on the listening socket so the window of an
+     * accepted connection is known during the handshake
+     */
+    public void configure(ServerSocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, this.reuseAddress);
+        if(this.receiveBufferSize > 0)
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, this.receiveBufferSize);
+    }
+
+    /**
+     * turn SO_REUSEPORT on before bind, false when the jdk or the os does not support it
+     */
+    public boolean enableReusePort(ServerSocketChannel channel) {
+        if(SO_REUSEPORT == null || !channel.supportedOptions().contains(SO_REUSEPORT))
+            return false;
+        try {
+            channel.setOption(SO_REUSEPORT, true);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("can not set SO_REUSEPORT", e);
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption(){
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public void configure(SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, this.tcpNoDelay);
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, this.keepAlive);
+        if(this.sendBufferSize > 0)
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, this.sendBufferSize);
+        if(this.receiveBufferSize > 0)
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, this.receiveBufferSize);
+    }
+
+    /**
+     * connections waiting in the kernel for accept, the os may cap it (somaxconn on linux)
+     */
+    public int backlog() {
+        return backlog;
+    }
+
+    /**
+     * connections accepted at most each time the listening socket is selected, the loop goes
+     * back to the selector after that so the other keys are not starved
+     */
+    public int acceptBatchSize() {
+        return acceptBatchSize;
+    }
+
+    public boolean reuseAddress() {
+        return reuseAddress;
+    }
+
+    /**
+     * every io loop listens on a socket of its own bound to the same port and the kernel spreads
+     * the new connections over them, there is no accept thread
+     */
+    public boolean reusePort() {
+        return reusePort;
+    }
+
+    public int receiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int sendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public boolean keepAlive() {
+        return keepAlive;
+    }
+
+    public boolean tcpNoDelay() {
+        return tcpNoDelay;
+    }
+}
@@ -0,0 +1,78 @@
+package me.stevenkin.boomvc.server.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * size classed buffer pool owned by one event loop, it is only touched by the io thread of that loop
+ * so no lock is needed. buffers larger than the biggest size class are not pooled
+ */
+public class BufferPool {
+
+    private static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024};
+
+    private static final int DEFAULT_MAX_CACHED = 256;
+
+    private final Deque<ByteBuffer>[] pools;
+
+    private final int maxCached;
+
+    private final boolean direct;
+
+    public BufferPool() {
+        this(true, DEFAULT_MAX_CACHED);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(boolean direct, int maxCached) {
+        this.direct = direct;
+        this.maxCached = maxCached;
+        this.pools = new Deque[SIZE_CLASSES.length];
+        for(int i = 0; i < SIZE_CLASSES.length; i++)
+            this.pools[i] = new ArrayDeque<>();
+    }
+
+    public ByteBuffer acquire(int capacity){
+        int index = sizeClass(capacity);
+        if(index < 0)
+            return ByteBuffer.allocate(capacity);
+        ByteBuffer buffer = this.pools[index].pollFirst();
+        if(buffer == null)
+            buffer = this.direct ? ByteBuffer.allocateDirect(SIZE_CLASSES[index]) : ByteBuffer.allocate(SIZE_CLASSES[index]);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * copy the readable bytes of the buffer (in write mode) into a buffer at least twice as big,
+     * the old buffer is given back to the pool
+     */
+    public ByteBuffer grow(ByteBuffer buffer){
+        ByteBuffer newBuffer = acquire(buffer.capacity() * 2);
+        buffer.flip();
+        newBuffer.put(buffer);
+        release(buffer);
+        return newBuffer;
+    }
+
+    public void release(ByteBuffer buffer){
+        if(buffer == null || buffer.isDirect() != this.direct)
+            return;
+        int index = sizeClass(buffer.capacity());
+        if(index < 0 || SIZE_CLASSES[index] != buffer.capacity())
+            return;
+        Deque<ByteBuffer> pool = this.pools[index];
+        if(pool.size() < this.maxCached)
+            pool.offerFirst(buffer);
+    }
+
+    private static int sizeClass(int capacity){
+        for(int i = 0; i < SIZE_CLASSES.length; i++){
+            if(capacity <= SIZE_CLASSES[i])
+                return i;
+        }
+        return -1;
+    }
+
+}
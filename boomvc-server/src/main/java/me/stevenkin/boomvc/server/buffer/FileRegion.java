@@ -0,0 +1,102 @@
+package me.stevenkin.boomvc.server.buffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * a part of a file sent to the socket with FileChannel.transferTo (sendfile on linux), the
+ * bytes never enter the heap. the file is opened on the first transfer so a region which is
+ * never written holds no file handle
+ */
+public class FileRegion implements Closeable {
+
+    private final Path path;
+
+    private long position;
+
+    private long count;
+
+    private FileChannel fileChannel;
+
+    public FileRegion(Path path, long position, long count) {
+        this.path = path;
+        this.position = position;
+        this.count = count;
+    }
+
+    /**
+     * transfer as much as the target takes
+     *
+     * @return the number of bytes transferred
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        if(this.count == 0)
+            return 0;
+        if(this.fileChannel == null)
+            this.fileChannel = FileChannel.open(this.path, StandardOpenOption.READ);
+        long transferred = this.fileChannel.transferTo(this.position, this.count, target);
+        if(transferred == 0 && this.position >= this.fileChannel.size())
+            throw new IOException("file " + this.path + " is truncated");
+        this.position += transferred;
+        this.count -= transferred;
+        return transferred;
+    }
+
+    /**
+     * read the next bytes of the region into the buffer, for a protocol which has to frame them itself
+     *
+     * @return the number of bytes read
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if(this.count == 0)
+            return 0;
+        if(this.fileChannel == null)
+            this.fileChannel = FileChannel.open(this.path, StandardOpenOption.READ);
+        int limit = dst.limit();
+        if(dst.remaining() > this.count)
+            dst.limit(dst.position() + (int) this.count);
+        int read;
+        try {
+            read = this.fileChannel.read(dst, this.position);
+        } finally {
+            dst.limit(limit);
+        }
+        if(read < 0)
+            throw new IOException("file " + this.path + " is truncated");
+        this.position += read;
+        this.count -= read;
+        return read;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    /**
+     * the bytes not transferred yet
+     */
+    public long count() {
+        return count;
+    }
+
+    public boolean isDone() {
+        return this.count == 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.fileChannel != null) {
+            this.fileChannel.close();
+            this.fileChannel = null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package me.stevenkin.boomvc.server.buffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * the bytes waiting to be written to one connection, only touched by the io thread owning
+ * the connection. pending buffers are written with one gathering write so a response made of
+ * a header buffer and many body segments costs one syscall, file regions are transferred
+ * straight from the file.
+ *
+ * the buffer stops being writable once more than the high watermark is pending, and becomes
+ * writable again when the socket took it down to the low watermark. the connection is not read
+ * meanwhile, so a client which does not read its responses can not make them pile up
+ */
+public class OutboundBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundBuffer.class);
+
+    private static final int MAX_GATHERING = 64;
+
+    /**
+     * ByteBuffer or FileRegion, in write order
+     */
+    private Deque<Object> entries = new ArrayDeque<>();
+
+    private ByteBuffer[] gathering = new ByteBuffer[MAX_GATHERING];
+
+    private long pendingBytes = 0;
+
+    private final long highWatermark;
+
+    private final long lowWatermark;
+
+    private boolean writable = true;
+
+    public OutboundBuffer(long highWatermark, long lowWatermark) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    public void add(ByteBuffer buffer){
+        if(!buffer.hasRemaining())
+            return;
+        this.entries.addLast(buffer);
+        this.pendingBytes += buffer.remaining();
+        if(this.pendingBytes > this.highWatermark)
+            this.writable = false;
+    }
+
+    public void add(ByteBuffer[] buffers){
+        for(ByteBuffer buffer : buffers)
+            add(buffer);
+    }
+
+    public void add(FileRegion region){
+        this.entries.addLast(region);
+        this.pendingBytes += region.count();
+        if(this.pendingBytes > this.highWatermark)
+            this.writable = false;
+    }
+
+    /**
+     * write as much as the channel takes
+     *
+     * @return true when nothing is pending any more
+     */
+    public boolean writeTo(GatheringByteChannel channel) throws IOException {
+        while(!this.entries.isEmpty()){
+            Object first = this.entries.peekFirst();
+            long written;
+            if(first instanceof FileRegion){
+                FileRegion region = (FileRegion) first;
+                written = region.transferTo(channel);
+                if(region.isDone()) {
+                    this.entries.pollFirst();
+                    region.close();
+                }
+            } else {
+                written = writeBuffers(channel);
+            }
+            this.pendingBytes -= written;
+            if(this.pendingBytes <= this.lowWatermark)
+                this.writable = true;
+            if(written == 0 && !this.entries.isEmpty() && this.entries.peekFirst() == first)
+                return false;
+        }
+        return true;
+    }
+
+    private long writeBuffers(GatheringByteChannel channel) throws IOException {
+        int n = 0;
+        Iterator<Object> iterator = this.entries.iterator();
+        while(n < MAX_GATHERING && iterator.hasNext()){
+            Object entry = iterator.next();
+            if(!(entry instanceof ByteBuffer))
+                break;
+            this.gathering[n++] = (ByteBuffer) entry;
+        }
+        long written;
+        try {
+            written = channel.write(this.gathering, 0, n);
+        } finally {
+            Arrays.fill(this.gathering, 0, n, null);
+        }
+        while(!this.entries.isEmpty() && this.entries.peekFirst() instanceof ByteBuffer
+                && !((ByteBuffer) this.entries.peekFirst()).hasRemaining())
+            this.entries.pollFirst();
+        return written;
+    }
+
+    public boolean isEmpty(){
+        return this.entries.isEmpty();
+    }
+
+    public long pendingBytes(){
+        return this.pendingBytes;
+    }
+
+    /**
+     * false from the time the pending bytes went over the high watermark until they are down to
+     * the low one
+     */
+    public boolean isWritable(){
+        return this.writable;
+    }
+
+    public void clear(){
+        for(Object entry : this.entries){
+            if(entry instanceof FileRegion){
+                try {
+                    ((FileRegion) entry).close();
+                } catch (IOException e) {
+                    logger.error("", e);
+                }
+            }
+        }
+        this.entries.clear();
+        this.pendingBytes = 0;
+        this.writable = true;
+    }
+}
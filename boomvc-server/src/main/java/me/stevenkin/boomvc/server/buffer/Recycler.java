@@ -0,0 +1,137 @@
+package me.stevenkin.boomvc.server.buffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * a pool of reusable objects owned by one event loop, it is only touched by the io thread of that
+ * loop so no lock is needed. a disabled recycler makes a new object every time and drops the
+ * recycled ones.
+ *
+ * with leak detection every object handed out is tracked until it is recycled: an object recycled
+ * twice is refused, and an object collected by the gc without having been recycled is reported
+ * with the stack where it was acquired
+ */
+public class Recycler<T> {
+    private static final Logger logger = LoggerFactory.getLogger(Recycler.class);
+
+    private final String name;
+
+    private final Supplier<T> factory;
+
+    /**
+     * clears the state of an object before it goes back to the pool
+     */
+    private final Consumer<T> reset;
+
+    private final boolean enabled;
+
+    private final int maxCached;
+
+    private final Deque<T> pool = new ArrayDeque<>();
+
+    /**
+     * the objects out of the pool by identity, null without leak detection. the pooled classes
+     * keep the equals of Object
+     */
+    private final Map<T, Tracker<T>> borrowed;
+
+    /**
+     * the trackers of the borrowed objects, a tracker is cleared when its object is recycled so
+     * only the lost ones get to the queue
+     */
+    private final Set<Tracker<T>> trackers;
+
+    private final ReferenceQueue<T> collected;
+
+    public Recycler(String name, Supplier<T> factory, Consumer<T> reset, boolean enabled, int maxCached, boolean leakDetection) {
+        this.name = name;
+        this.factory = factory;
+        this.reset = reset;
+        this.enabled = enabled;
+        this.maxCached = maxCached;
+        boolean tracked = enabled && leakDetection;
+        this.borrowed = tracked ? new WeakHashMap<>() : null;
+        this.trackers = tracked ? new HashSet<>() : null;
+        this.collected = tracked ? new ReferenceQueue<>() : null;
+    }
+
+    public T acquire(){
+        if(!this.enabled)
+            return this.factory.get();
+        T object = this.pool.pollFirst();
+        if(object == null)
+            object = this.factory.get();
+        if(this.borrowed != null) {
+            reportLeaks();
+            Tracker<T> tracker = new Tracker<>(object, this.collected);
+            this.borrowed.put(object, tracker);
+            this.trackers.add(tracker);
+        }
+        return object;
+    }
+
+    /**
+     * give the object back, the caller must not touch it any more
+     */
+    public void recycle(T object){
+        if(!this.enabled || object == null)
+            return;
+        if(this.borrowed != null && !untrack(object)) {
+            logger.error("{} recycled twice or not acquired from this pool", this.name, new IllegalStateException());
+            return;
+        }
+        this.reset.accept(object);
+        if(this.pool.size() < this.maxCached)
+            this.pool.offerFirst(object);
+    }
+
+    /**
+     * the object is kept by someone else for good, it is neither recycled nor reported as a leak
+     */
+    public void discard(T object){
+        if(this.borrowed != null && object != null)
+            untrack(object);
+    }
+
+    private boolean untrack(T object){
+        Tracker<T> tracker = this.borrowed.remove(object);
+        if(tracker == null)
+            return false;
+        this.trackers.remove(tracker);
+        tracker.clear();
+        return true;
+    }
+
+    private void reportLeaks(){
+        Tracker<?> tracker;
+        while((tracker = (Tracker<?>) this.collected.poll()) != null){
+            if(this.trackers.remove(tracker))
+                logger.error("{} was garbage collected without being recycled, acquired at", this.name, tracker.acquiredAt);
+        }
+    }
+
+    public int cached(){
+        return this.pool.size();
+    }
+
+    private static class Tracker<T> extends WeakReference<T> {
+
+        private final Throwable acquiredAt = new Throwable("acquired");
+
+        private Tracker(T referent, ReferenceQueue<T> queue) {
+            super(referent, queue);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package me.stevenkin.boomvc.server.exception;
+
+/**
+ * an http/2 error, a stream id of 0 is a connection error which ends the connection with
+ * GOAWAY, any other id only resets that stream
+ */
+public class Http2Exception extends ProtocolParserException {
+
+    public static final int NO_ERROR = 0x0;
+    public static final int PROTOCOL_ERROR = 0x1;
+    public static final int INTERNAL_ERROR = 0x2;
+    public static final int FLOW_CONTROL_ERROR = 0x3;
+    public static final int STREAM_CLOSED = 0x5;
+    public static final int FRAME_SIZE_ERROR = 0x6;
+    public static final int REFUSED_STREAM = 0x7;
+    public static final int CANCEL = 0x8;
+    public static final int COMPRESSION_ERROR = 0x9;
+    public static final int ENHANCE_YOUR_CALM = 0xb;
+
+    private final int errorCode;
+
+    private final int streamId;
+
+    public Http2Exception(int errorCode, String message) {
+        this(errorCode, 0, message);
+    }
+
+    public Http2Exception(int errorCode, int streamId, String message) {
+        super(message);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    public int errorCode() {
+        return errorCode;
+    }
+
+    public int streamId() {
+        return streamId;
+    }
+}
@@ -2,6 +2,10 @@ package me.stevenkin.boomvc.server.exception;
 
 public class ProtocolParserException extends Exception {
 
+    public ProtocolParserException(String message) {
+        super(message);
+    }
+
     public ProtocolParserException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,19 @@
+package me.stevenkin.boomvc.server.exception;
+
+/**
+ * a websocket protocol error, the connection is closed with the close code after the close
+ * frame carrying it is written
+ */
+public class WebSocketException extends ProtocolParserException {
+
+    private final int closeCode;
+
+    public WebSocketException(int closeCode, String message) {
+        super(message);
+        this.closeCode = closeCode;
+    }
+
+    public int closeCode() {
+        return closeCode;
+    }
+}
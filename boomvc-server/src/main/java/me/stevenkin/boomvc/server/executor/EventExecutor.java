@@ -1,6 +1,8 @@
 package me.stevenkin.boomvc.server.executor;
 
 import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
 import me.stevenkin.boomvc.server.session.SessionManager;
 import me.stevenkin.boomvc.server.task.EventLoop;
 import me.stevenkin.boomvc.server.task.Task;
@@ -8,10 +10,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.Selector;
-import java.util.concurrent.Semaphore;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 
 public class EventExecutor {
@@ -29,37 +31,46 @@ public class EventExecutor {
 
     private Runnable task;
 
-    private Semaphore semaphore = new Semaphore(1);
+    private BufferPool bufferPool = new BufferPool();
 
 
-    public EventExecutor(ThreadFactory threadName, EventExecutorGroup childGroup, MvcDispatcher dispatcher, SessionManager sessionManager) throws IOException {
+    public EventExecutor(ThreadFactory threadName, EventExecutorGroup childGroup, MvcDispatcher dispatcher, WebSocketMapping webSocketMapping,
+                         SessionManager sessionManager, Executor businessExecutor) throws IOException {
         this.threadName = threadName;
         this.childGroup = childGroup;
         this.dispatcher = dispatcher;
         this.selector = Selector.open();
-        this.task = new EventLoop(selector, this.childGroup, this.dispatcher, sessionManager, semaphore);
+        this.task = new EventLoop(selector, this.childGroup, this.dispatcher, webSocketMapping, sessionManager, businessExecutor, this.bufferPool);
         this.ioThread = threadName.newThread(this.task);
     }
 
-    public void register(SelectableChannel channel, int ops) throws ClosedChannelException {
-        channel.register(this.selector, ops);
+    /**
+     * queue the registration to the io thread, the thread calling it never waits for the selector
+     */
+    public void register(SelectableChannel channel, int ops) {
+        register(channel, ops, null);
     }
 
-    public void register(SelectableChannel channel, int ops, Object att) throws ClosedChannelException {
-        /* 将接收的连接注册到selector上
-        // 发现无法直接注册，一直获取不到锁
-        // 这是由于 io 线程正阻塞在 select() 方法上，直接注册会造成死锁
-        // 如果这时直接调用 wakeup，有可能还没有注册成功又阻塞了，可以使用信号量从 select 返回后先阻塞，等注册完后在执行
-        */
-        try {
-            this.semaphore.acquire();
-            this.selector.wakeup();
-            channel.register(this.selector, ops, att);
-        }catch (InterruptedException e){
-            logger.error("", e);
-        }finally {
-            this.semaphore.release();
-        }
+    public void register(SelectableChannel channel, int ops, Object att) {
+        EventLoop eventLoop = eventLoop();
+        if(channel instanceof SocketChannel)
+            eventLoop.connectionOpened();
+        eventLoop.execute(()->eventLoop.register(channel, ops, att));
+    }
+
+    public EventLoop eventLoop(){
+        return (EventLoop) this.task;
+    }
+
+    /**
+     * connections registered to this executor and not closed yet
+     */
+    public int connectionCount(){
+        return eventLoop().connectionCount();
+    }
+
+    public BufferPool bufferPool(){
+        return this.bufferPool;
     }
 
     public void start(){
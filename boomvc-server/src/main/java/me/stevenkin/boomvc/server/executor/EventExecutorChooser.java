@@ -0,0 +1,85 @@
+package me.stevenkin.boomvc.server.executor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * pick the executor a new channel is registered to, called by the accepting thread without a lock
+ *
+ * round-robin: a counter masked by the executor count when it is a power of two, modulo otherwise
+ * least-connections: the executor with the fewest open connections, ties go round robin
+ */
+public interface EventExecutorChooser {
+
+    String ROUND_ROBIN = "round-robin";
+
+    String LEAST_CONNECTIONS = "least-connections";
+
+    EventExecutor next();
+
+    static EventExecutorChooser newChooser(String strategy, EventExecutor[] executors){
+        if(LEAST_CONNECTIONS.equalsIgnoreCase(strategy))
+            return new LeastConnectionsChooser(executors);
+        if(!ROUND_ROBIN.equalsIgnoreCase(strategy))
+            throw new IllegalArgumentException("unknown executor chooser " + strategy);
+        if((executors.length & -executors.length) == executors.length)
+            return new PowerOfTwoChooser(executors);
+        return new GenericChooser(executors);
+    }
+
+    class PowerOfTwoChooser implements EventExecutorChooser {
+        private final AtomicInteger index = new AtomicInteger();
+
+        private final EventExecutor[] executors;
+
+        PowerOfTwoChooser(EventExecutor[] executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public EventExecutor next() {
+            return this.executors[this.index.getAndIncrement() & this.executors.length - 1];
+        }
+    }
+
+    class GenericChooser implements EventExecutorChooser {
+        private final AtomicInteger index = new AtomicInteger();
+
+        private final EventExecutor[] executors;
+
+        GenericChooser(EventExecutor[] executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public EventExecutor next() {
+            return this.executors[Math.abs(this.index.getAndIncrement() % this.executors.length)];
+        }
+    }
+
+    class LeastConnectionsChooser implements EventExecutorChooser {
+        private final AtomicInteger index = new AtomicInteger();
+
+        private final EventExecutor[] executors;
+
+        LeastConnectionsChooser(EventExecutor[] executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public EventExecutor next() {
+            int length = this.executors.length;
+            int start = Math.abs(this.index.getAndIncrement() % length);
+            EventExecutor chosen = this.executors[start];
+            int min = chosen.connectionCount();
+            for(int i = 1; i < length && min > 0; i++){
+                EventExecutor executor = this.executors[(start + i) % length];
+                int count = executor.connectionCount();
+                if(count < min){
+                    min = count;
+                    chosen = executor;
+                }
+            }
+            return chosen;
+        }
+    }
+}
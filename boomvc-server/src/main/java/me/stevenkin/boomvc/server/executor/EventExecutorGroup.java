@@ -1,14 +1,16 @@
 package me.stevenkin.boomvc.server.executor;
 
 import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
 import me.stevenkin.boomvc.server.session.SessionManager;
 import me.stevenkin.boomvc.server.task.Task;
 
 import java.io.IOException;
-import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.stream.IntStream;
 
@@ -18,7 +20,7 @@ public class EventExecutorGroup implements Task {
 
     private List<EventExecutor> executorList;
 
-    private int index;
+    private EventExecutorChooser chooser;
 
     private ThreadFactory threadName;
 
@@ -27,39 +29,42 @@ public class EventExecutorGroup implements Task {
     private MvcDispatcher dispatcher;
 
 
-    public EventExecutorGroup(int threadNum, ThreadFactory threadName, EventExecutorGroup childGroup, MvcDispatcher dispatcher, SessionManager sessionManager) {
+    public EventExecutorGroup(int threadNum, ThreadFactory threadName, EventExecutorGroup childGroup, MvcDispatcher dispatcher,
+                              WebSocketMapping webSocketMapping, SessionManager sessionManager, Executor businessExecutor, String chooserStrategy) {
         this.threadNum = threadNum;
         this.threadName = threadName;
         this.childGroup = childGroup;
         this.dispatcher = dispatcher;
         this.executorList = new ArrayList<>(this.threadNum);
-        IntStream.of(this.threadNum)
+        IntStream.range(0, this.threadNum)
                 .forEach(i-> {
                     try {
-                        this.executorList.add(new EventExecutor(this.threadName, this.childGroup, this.dispatcher, sessionManager));
+                        this.executorList.add(new EventExecutor(this.threadName, this.childGroup, this.dispatcher, webSocketMapping, sessionManager, businessExecutor));
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
                 });
-        this.index = 0;
+        this.chooser = EventExecutorChooser.newChooser(chooserStrategy, this.executorList.toArray(new EventExecutor[0]));
     }
 
-    public void register(SelectableChannel channel, int ops) throws ClosedChannelException {
-        int index1 = 0;
-        synchronized (this){
-            index1 = this.index%this.threadNum;
-            this.index++;
-        }
-        this.executorList.get(index1).register(channel, ops);
+    public EventExecutor next(){
+        return this.chooser.next();
     }
 
-    public void register(SelectableChannel channel, int ops, Object att) throws ClosedChannelException {
-        int index1 = 0;
-        synchronized (this){
-            index1 = this.index%this.threadNum;
-            this.index++;
-        }
-        this.executorList.get(index1).register(channel, ops, att);
+    public List<EventExecutor> executors(){
+        return Collections.unmodifiableList(this.executorList);
+    }
+
+    public int threadNum(){
+        return this.threadNum;
+    }
+
+    public void register(SelectableChannel channel, int ops) {
+        next().register(channel, ops);
+    }
+
+    public void register(SelectableChannel channel, int ops, Object att) {
+        next().register(channel, ops, att);
     }
 
     @Override
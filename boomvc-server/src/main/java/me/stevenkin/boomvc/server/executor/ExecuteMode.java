@@ -0,0 +1,32 @@
+package me.stevenkin.boomvc.server.executor;
+
+/**
+ * where a parsed request is dispatched
+ *
+ * IO: the filter chain, the dispatcher and the view run on the selector thread
+ * WORKER: they run on a bounded business pool, the selector thread only parses and writes
+ * VIRTUAL: every request runs on its own virtual thread, falls back to WORKER when the jdk has no virtual thread
+ */
+public enum ExecuteMode {
+    IO("io"),
+    WORKER("worker"),
+    VIRTUAL("virtual");
+
+    private String text;
+
+    ExecuteMode(String text){
+        this.text = text;
+    }
+
+    public String text(){
+        return this.text;
+    }
+
+    public static ExecuteMode getExecuteMode(String modeStr){
+        for(ExecuteMode mode : values()){
+            if(mode.text.equalsIgnoreCase(modeStr))
+                return mode;
+        }
+        throw new IllegalArgumentException("unknown execute mode " + modeStr);
+    }
+}
@@ -0,0 +1,68 @@
+package me.stevenkin.boomvc.server.executor;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * unbounded lock-free queue for many producers and one consumer, the io thread of an event loop
+ * is the only consumer. a producer pays one getAndSet, the consumer never does a cas
+ */
+public class MpscQueue<E> {
+
+    private final AtomicReference<Node<E>> tail;
+
+    /**
+     * the stub node, its next is the first element, only read and written by the consumer
+     */
+    private Node<E> head;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    public void offer(E e){
+        if(e == null)
+            throw new NullPointerException();
+        Node<E> node = new Node<>(e);
+        Node<E> prev = this.tail.getAndSet(node);
+        prev.lazySetNext(node);
+    }
+
+    /**
+     * called by the consumer only, may return null while a producer is linking its node
+     */
+    public E poll(){
+        Node<E> next = this.head.next;
+        if(next == null)
+            return null;
+        E value = next.value;
+        next.value = null;
+        this.head = next;
+        return value;
+    }
+
+    public boolean isEmpty(){
+        return this.tail.get() == this.head;
+    }
+
+    private static final class Node<E> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        private E value;
+
+        private volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        void lazySetNext(Node<E> next){
+            NEXT.lazySet(this, next);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * the headers of a request or a response in parallel arrays, looked up by name without regard
+ * to case. the http/1.1 parser appends the header bytes to the block of the table as it scans and
+ * the strings of a header are only made when they are asked for, headers added as strings keep them
+ */
+public class HeaderTable {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int size;
+
+    /**
+     * hash of the lower case name
+     */
+    private int[] hashes;
+
+    /**
+     * name start, name end, value start and value end in the block, four of them for every header
+     */
+    private int[] positions;
+
+    private String[] names;
+
+    private String[] values;
+
+    private byte[] block;
+
+    private int blockLength;
+
+    /**
+     * the header being appended by the parser: where it starts, where its name ends (-1 until the
+     * colon) and the hash of its name so far
+     */
+    private int pendingStart;
+
+    private int pendingNameEnd = -1;
+
+    private int pendingHash;
+
+    public HeaderTable() {
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.positions = new int[INITIAL_CAPACITY * 4];
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * the hash a name is looked up with, the same for every case of it
+     */
+    public static int hash(String name){
+        int hash = 0;
+        for(int i = 0; i < name.length(); i++)
+            hash = 31 * hash + toLower(name.charAt(i));
+        return hash;
+    }
+
+    private static int toLower(int c){
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+
+    /**
+     * append a byte of the header being parsed, to its name until nameParsed and to its value after
+     */
+    public void append(byte b){
+        if(this.block == null)
+            this.block = new byte[256];
+        else if(this.blockLength == this.block.length)
+            this.block = Arrays.copyOf(this.block, this.blockLength * 2);
+        this.block[this.blockLength++] = b;
+        if(this.pendingNameEnd < 0)
+            this.pendingHash = 31 * this.pendingHash + toLower(b & 0xff);
+    }
+
+    /**
+     * bytes appended to the name, or to the value once the name is parsed
+     */
+    public int pendingLength(){
+        return this.blockLength - (this.pendingNameEnd < 0 ? this.pendingStart : this.pendingNameEnd);
+    }
+
+    public void nameParsed(){
+        this.pendingNameEnd = this.blockLength;
+    }
+
+    /**
+     * the header being parsed is complete, the blanks after its value are dropped
+     * @return the index of the header
+     */
+    public int valueParsed(){
+        int valueEnd = this.blockLength;
+        while(valueEnd > this.pendingNameEnd && (this.block[valueEnd - 1] == ' ' || this.block[valueEnd - 1] == '\t'))
+            valueEnd--;
+        int index = grow();
+        this.hashes[index] = this.pendingHash;
+        this.positions[index * 4] = this.pendingStart;
+        this.positions[index * 4 + 1] = this.pendingNameEnd;
+        this.positions[index * 4 + 2] = this.pendingNameEnd;
+        this.positions[index * 4 + 3] = valueEnd;
+        this.blockLength = valueEnd;
+        this.pendingStart = valueEnd;
+        this.pendingNameEnd = -1;
+        this.pendingHash = 0;
+        return index;
+    }
+
+    public void add(String name, String value){
+        int index = grow();
+        this.hashes[index] = hash(name);
+        this.names[index] = name;
+        this.values[index] = value;
+    }
+
+    private int grow(){
+        if(this.size == this.hashes.length) {
+            int capacity = this.size * 2;
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.positions = Arrays.copyOf(this.positions, capacity * 4);
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        return this.size++;
+    }
+
+    /**
+     * remove every header with the name
+     */
+    public void remove(String name){
+        int hash = hash(name);
+        int to = 0;
+        for(int from = 0; from < this.size; from++){
+            if(this.hashes[from] == hash && nameEquals(from, name))
+                continue;
+            if(to != from) {
+                this.hashes[to] = this.hashes[from];
+                System.arraycopy(this.positions, from * 4, this.positions, to * 4, 4);
+                this.names[to] = this.names[from];
+                this.values[to] = this.values[from];
+            }
+            to++;
+        }
+        Arrays.fill(this.names, to, this.size, null);
+        Arrays.fill(this.values, to, this.size, null);
+        this.size = to;
+    }
+
+    /**
+     * drop every header, the arrays and the block are kept for the next request
+     */
+    public void clear(){
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+        this.blockLength = 0;
+        this.pendingStart = 0;
+        this.pendingNameEnd = -1;
+        this.pendingHash = 0;
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    public boolean isEmpty(){
+        return this.size == 0;
+    }
+
+    public String name(int index){
+        String name = this.names[index];
+        if(name == null) {
+            name = new String(this.block, this.positions[index * 4], this.positions[index * 4 + 1] - this.positions[index * 4], ISO_8859_1);
+            this.names[index] = name;
+        }
+        return name;
+    }
+
+    public String value(int index){
+        String value = this.values[index];
+        if(value == null) {
+            value = new String(this.block, this.positions[index * 4 + 2], this.positions[index * 4 + 3] - this.positions[index * 4 + 2], ISO_8859_1);
+            this.values[index] = value;
+        }
+        return value;
+    }
+
+    public int hash(int index){
+        return this.hashes[index];
+    }
+
+    public int indexOf(String name){
+        return indexOf(name, hash(name), 0);
+    }
+
+    /**
+     * @param hash the hash of the name, well known names keep theirs in a constant
+     * @return the index of the first header with the name at or after from, -1 when there is none
+     */
+    public int indexOf(String name, int hash, int from){
+        for(int i = from; i < this.size; i++){
+            if(this.hashes[i] == hash && nameEquals(i, name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * the name of the header is the given one, whatever its case
+     */
+    public boolean nameEquals(int index, String name){
+        String s = this.names[index];
+        if(s != null)
+            return s.equalsIgnoreCase(name);
+        int start = this.positions[index * 4];
+        if(this.positions[index * 4 + 1] - start != name.length())
+            return false;
+        for(int i = 0; i < name.length(); i++){
+            if(toLower(this.block[start + i] & 0xff) != toLower(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    public boolean contains(String name){
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * the value of the first header with the name, null when there is none
+     */
+    public String get(String name){
+        int index = indexOf(name);
+        return index < 0 ? null : value(index);
+    }
+
+    public List<HttpHeader> list(){
+        List<HttpHeader> headers = new ArrayList<>(this.size);
+        for(int i = 0; i < this.size; i++)
+            headers.add(new HttpHeader(name(i), value(i)));
+        return Collections.unmodifiableList(headers);
+    }
+
+    public List<HttpHeader> list(String name){
+        int hash = hash(name);
+        List<HttpHeader> headers = new ArrayList<>(1);
+        for(int i = indexOf(name, hash, 0); i >= 0; i = indexOf(name, hash, i + 1))
+            headers.add(new HttpHeader(name(i), value(i)));
+        return Collections.unmodifiableList(headers);
+    }
+
+    /**
+     * the names in the order they came, the case of the first header with a name is kept
+     */
+    public Set<String> names(){
+        Set<String> names = new LinkedHashSet<>();
+        for(int i = 0; i < this.size; i++){
+            if(indexOf(name(i), this.hashes[i], 0) == i)
+                names.add(name(i));
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * bytes of the header lines as http/1.1 sends them, the blank line after them not included
+     */
+    public int encodedLength(){
+        int length = 0;
+        for(int i = 0; i < this.size; i++)
+            length += name(i).length() + value(i).length() + 4;
+        return length;
+    }
+
+    /**
+     * write the header lines in iso-8859-1, a char outside of it becomes '?'
+     * @return the position after the last line
+     */
+    public int encode(byte[] bytes, int position){
+        for(int i = 0; i < this.size; i++){
+            position = encode(name(i), bytes, position);
+            bytes[position++] = ':';
+            bytes[position++] = ' ';
+            position = encode(value(i), bytes, position);
+            bytes[position++] = '\r';
+            bytes[position++] = '\n';
+        }
+        return position;
+    }
+
+    private static int encode(String s, byte[] bytes, int position){
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            bytes[position++] = c > 0xff ? (byte) '?' : (byte) c;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,108 @@
+package me.stevenkin.boomvc.server.http;
+
+import com.google.common.collect.Multimap;
+import me.stevenkin.boomvc.http.HttpQueryParameter;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpRequestLine;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.http.multipart.FileItem;
+import me.stevenkin.boomvc.server.buffer.Recycler;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+
+import java.net.SocketAddress;
+import java.util.Map;
+
+/**
+ * the http/1.1 requests, their header tables and the responses of the connections of one event
+ * loop, only touched by its io thread. a request goes back once its handler is done with it, a
+ * response once it has been moved to the outbound buffer or its connection is closed
+ */
+public class HttpObjectPool {
+
+    private final Recycler<HeaderTable> headerTables;
+
+    private final Recycler<TinyHttpRequest> requests;
+
+    private final Recycler<TinyHttpResponse> responses;
+
+    public HttpObjectPool(boolean enabled, int maxCached, boolean leakDetection) {
+        this.headerTables = new Recycler<>("header table", HeaderTable::new, HeaderTable::clear, enabled, maxCached, leakDetection);
+        this.requests = new Recycler<>("request", TinyHttpRequest::new, TinyHttpRequest::recycle, enabled, maxCached, leakDetection);
+        this.responses = new Recycler<>("response", TinyHttpResponse::new, TinyHttpResponse::recycle, enabled, maxCached, leakDetection);
+    }
+
+    public HeaderTable headerTable(){
+        return this.headerTables.acquire();
+    }
+
+    /**
+     * @throws IllegalArgumentException on a bad escape in the path
+     */
+    public TinyHttpRequest request(HttpRequestLine requestLine, HeaderTable requestHeader, SocketAddress remoteAddress, String contextPath){
+        TinyHttpRequest request = this.requests.acquire();
+        try {
+            return request.init(requestLine, requestHeader, remoteAddress, contextPath);
+        } catch (RuntimeException e) {
+            this.requests.recycle(request);
+            throw e;
+        }
+    }
+
+    public TinyHttpRequest request(HttpRequestLine requestLine, HeaderTable requestHeader, RequestBody requestBody, SocketAddress remoteAddress, String contextPath) throws ProtocolParserException {
+        TinyHttpRequest request = request(requestLine, requestHeader, remoteAddress, contextPath);
+        try {
+            return request.body(requestBody);
+        } catch (ProtocolParserException e) {
+            this.requests.recycle(request);
+            throw e;
+        }
+    }
+
+    public TinyHttpRequest request(HttpRequestLine requestLine, HeaderTable requestHeader, Multimap<String, HttpQueryParameter> formParameters,
+                                   Map<String, FileItem> fileItems, SocketAddress remoteAddress, String contextPath){
+        return request(requestLine, requestHeader, remoteAddress, contextPath).multipart(formParameters, fileItems);
+    }
+
+    public TinyHttpResponse response(){
+        return this.responses.acquire();
+    }
+
+    /**
+     * give the request and its header table back, the body must have been released
+     */
+    public void recycle(HttpRequest request){
+        if(!(request instanceof TinyHttpRequest))
+            return;
+        TinyHttpRequest tinyHttpRequest = (TinyHttpRequest) request;
+        this.headerTables.recycle(tinyHttpRequest.headerTable());
+        this.requests.recycle(tinyHttpRequest);
+    }
+
+    public void recycle(HttpResponse response){
+        if(response instanceof TinyHttpResponse)
+            this.responses.recycle((TinyHttpResponse) response);
+    }
+
+    public void recycle(HeaderTable headerTable){
+        this.headerTables.recycle(headerTable);
+    }
+
+    /**
+     * the request is kept by the connection it was upgraded to
+     */
+    public void discard(HttpRequest request){
+        if(!(request instanceof TinyHttpRequest))
+            return;
+        TinyHttpRequest tinyHttpRequest = (TinyHttpRequest) request;
+        this.headerTables.discard(tinyHttpRequest.headerTable());
+        this.requests.discard(tinyHttpRequest);
+    }
+
+    public void discard(HttpResponse response){
+        if(!(response instanceof TinyHttpResponse))
+            return;
+        TinyHttpResponse tinyHttpResponse = (TinyHttpResponse) response;
+        tinyHttpResponse.endCompression();
+        this.responses.discard(tinyHttpResponse);
+    }
+}
@@ -0,0 +1,141 @@
+package me.stevenkin.boomvc.server.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * the body of one request, kept in memory up to the spool threshold and written to a temp file
+ * through a FileChannel beyond it, so a large upload costs no more heap than a small one.
+ * the temp file is deleted when the body is closed
+ */
+public class RequestBody implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(RequestBody.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long threshold;
+
+    /**
+     * the content length, -1 when it is not known
+     */
+    private final long expectedLength;
+
+    private final Path spoolDirectory;
+
+    private byte[] bytes;
+
+    private long size = 0;
+
+    private Path file;
+
+    private FileChannel fileChannel;
+
+    /**
+     * the array grows with the bytes actually received, a client announcing a large body and
+     * sending nothing costs no more than one sending a small one
+     *
+     * @param expectedLength the content length, -1 when it is not known (chunked)
+     */
+    public RequestBody(long expectedLength, long threshold, Path spoolDirectory) throws IOException {
+        this.threshold = threshold;
+        this.expectedLength = expectedLength;
+        this.spoolDirectory = spoolDirectory;
+        if(expectedLength > threshold)
+            spool();
+        else
+            this.bytes = new byte[expectedLength < 0 ? INITIAL_CAPACITY : (int) Math.min(expectedLength, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * append the readable bytes of the buffer, a direct buffer goes to the file without passing the heap
+     */
+    public void write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if(this.fileChannel == null && this.file == null && this.size + length > this.threshold)
+            spool();
+        if(this.fileChannel != null) {
+            while(src.hasRemaining())
+                this.fileChannel.write(src);
+        } else {
+            if(this.size + length > this.bytes.length)
+                this.bytes = Arrays.copyOf(this.bytes, (int) Math.max(this.size + length, Math.min(this.bytes.length * 2L, maxCapacity())));
+            src.get(this.bytes, (int) this.size, length);
+        }
+        this.size += length;
+    }
+
+    /**
+     * no more bytes will be written
+     */
+    public void finish() throws IOException {
+        if(this.fileChannel != null){
+            this.fileChannel.close();
+            this.fileChannel = null;
+        }
+    }
+
+    private long maxCapacity(){
+        return this.expectedLength < 0 ? this.threshold : this.expectedLength;
+    }
+
+    private void spool() throws IOException {
+        this.file = Files.createTempFile(this.spoolDirectory, "boomvc-body-", ".tmp");
+        this.fileChannel = FileChannel.open(this.file, StandardOpenOption.WRITE);
+        if(this.bytes != null && this.size > 0)
+            this.fileChannel.write(ByteBuffer.wrap(this.bytes, 0, (int) this.size));
+        this.bytes = null;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isSpooled() {
+        return this.file != null;
+    }
+
+    /**
+     * the temp file holding the body, null when the body is in memory
+     */
+    public Path file() {
+        return file;
+    }
+
+    public InputStream inputStream() throws IOException {
+        if(this.file != null)
+            return new FileInputStream(this.file.toFile());
+        return new ByteArrayInputStream(this.bytes, 0, (int) this.size);
+    }
+
+    /**
+     * the whole body as an array, a spooled body is read back from its file
+     */
+    public byte[] bytes() throws IOException {
+        if(this.file != null)
+            return Files.readAllBytes(this.file);
+        if(this.bytes.length == this.size)
+            return this.bytes;
+        return Arrays.copyOf(this.bytes, (int) this.size);
+    }
+
+    @Override
+    public void close() {
+        try {
+            finish();
+            if(this.file != null)
+                Files.deleteIfExists(this.file);
+        } catch (IOException e) {
+            logger.error("", e);
+        }
+        this.file = null;
+        this.bytes = null;
+    }
+}
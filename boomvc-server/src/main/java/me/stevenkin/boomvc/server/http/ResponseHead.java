@@ -0,0 +1,138 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.http.Const;
+import me.stevenkin.boomvc.http.HttpConst;
+import me.stevenkin.boomvc.http.HttpResponseLine;
+import me.stevenkin.boomvc.http.kit.DateKit;
+import me.stevenkin.boomvc.http.sse.SseEmitter;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * writes the status line and the header lines of an http/1.1 response straight into bytes. the
+ * status lines of the usual statuses, the well known header names and values and the Date of the
+ * current second are encoded once and copied, everything else is written char by char
+ */
+final class ResponseHead {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    private static final byte[] DATE = bytes(HttpConst.DATE + ": ");
+
+    /**
+     * "HTTP/1.1 200 OK\r\n" and the like by status, with the standard reason
+     */
+    private static final byte[][] STATUS_LINES = new byte[600][];
+
+    /**
+     * "Content-Type: " and the like, looked up with the name exactly as the handler gave it
+     */
+    private static final Map<String, byte[]> NAMES = new HashMap<>();
+
+    private static final Map<String, byte[]> VALUES = new HashMap<>();
+
+    static {
+        for(int status = 0; status < STATUS_LINES.length; status++){
+            String reason = HttpResponseLine.reasonPhrase(status);
+            if(reason != null)
+                STATUS_LINES[status] = bytes(HTTP_1_1 + " " + status + " " + reason + "\r\n");
+        }
+        for(String name : new String[]{HttpConst.CONTENT_LENGTH, HttpConst.CONTENT_TYPE, HttpConst.CONTENT_ENCODING,
+                HttpConst.TRANSFER_ENCODING, HttpConst.CONNECTION, HttpConst.VARY, HttpConst.LOCATION,
+                HttpConst.CACHE_CONTROL, HttpConst.LAST_MODIFIED, HttpConst.EXPIRES, HttpConst.SERVER,
+                HttpConst.SET_COOKIE, "Keep-Alive", "Content-Disposition", "Upgrade"})
+            NAMES.put(name, bytes(name + ": "));
+        for(String value : new String[]{"chunked", "gzip", "deflate", "close", "keep-alive", "no-cache",
+                HttpConst.ACCEPT_ENCODING, HttpConst.CONTENT_TYPE_HTML, Const.CONTENT_TYPE_JSON, Const.CONTENT_TYPE_TEXT,
+                SseEmitter.CONTENT_TYPE, "application/octet-stream", "0"})
+            VALUES.put(value, bytes(value));
+    }
+
+    private ResponseHead() {
+    }
+
+    private static byte[] bytes(String s){
+        return s.getBytes(ISO_8859_1);
+    }
+
+    /**
+     * the head in one array sized up front, ending with the blank line. the Date of the current
+     * second is added when the handler did not set one
+     */
+    static byte[] encode(HttpResponseLine responseLine, HeaderTable headers){
+        byte[] statusLine = statusLine(responseLine);
+        byte[] date = headers.contains(HttpConst.DATE) ? null : DateKit.currentHttpDateBytes();
+        int length = statusLine.length + headers.encodedLength() + 2;
+        if(date != null)
+            length += DATE.length + date.length + 2;
+        byte[] head = new byte[length];
+        System.arraycopy(statusLine, 0, head, 0, statusLine.length);
+        int position = statusLine.length;
+        if(date != null) {
+            position = copy(DATE, head, position);
+            position = copy(date, head, position);
+            head[position++] = '\r';
+            head[position++] = '\n';
+        }
+        for(int i = 0; i < headers.size(); i++){
+            String name = headers.name(i);
+            byte[] encodedName = NAMES.get(name);
+            if(encodedName != null) {
+                position = copy(encodedName, head, position);
+            } else {
+                position = encode(name, head, position);
+                head[position++] = ':';
+                head[position++] = ' ';
+            }
+            String value = headers.value(i);
+            byte[] encodedValue = VALUES.get(value);
+            position = encodedValue != null ? copy(encodedValue, head, position) : encode(value, head, position);
+            head[position++] = '\r';
+            head[position++] = '\n';
+        }
+        head[position++] = '\r';
+        head[position] = '\n';
+        return head;
+    }
+
+    /**
+     * the pre-encoded line when the version and the reason are the standard ones
+     */
+    static byte[] statusLine(HttpResponseLine responseLine){
+        int status = responseLine.status();
+        String reason = responseLine.reason();
+        if(status >= 0 && status < STATUS_LINES.length && STATUS_LINES[status] != null
+                && HTTP_1_1.equals(responseLine.httpVersion()) && reason.equals(HttpResponseLine.reasonPhrase(status)))
+            return STATUS_LINES[status];
+        byte[] line = new byte[responseLine.httpVersion().length() + reason.length() + 16];
+        int position = encode(responseLine.httpVersion(), line, 0);
+        line[position++] = ' ';
+        position = encode(Integer.toString(status), line, position);
+        line[position++] = ' ';
+        position = encode(reason, line, position);
+        line[position++] = '\r';
+        line[position++] = '\n';
+        return Arrays.copyOf(line, position);
+    }
+
+    private static int copy(byte[] src, byte[] bytes, int position){
+        System.arraycopy(src, 0, bytes, position, src.length);
+        return position + src.length;
+    }
+
+    /**
+     * iso-8859-1, a char outside of it becomes '?'
+     */
+    private static int encode(String s, byte[] bytes, int position){
+        for(int i = 0; i < s.length(); i++){
+            char c = s.charAt(i);
+            bytes[position++] = c > 0xff ? (byte) '?' : (byte) c;
+        }
+        return position;
+    }
+}
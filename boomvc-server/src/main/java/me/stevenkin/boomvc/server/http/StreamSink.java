@@ -0,0 +1,18 @@
+package me.stevenkin.boomvc.server.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * takes the parts of a committed response to the connection, called from the thread
+ * running the request
+ */
+public interface StreamSink {
+
+    /**
+     * the buffers are handed over, the caller must not touch them any more
+     *
+     * @throws IOException when the connection is already closed
+     */
+    void write(ByteBuffer[] buffers) throws IOException;
+}
@@ -0,0 +1,83 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.http.AsyncContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * a response kept open after its handler returned. a response whose connection is closed is
+ * completed by the server, the handler may never do it
+ */
+public class TinyAsyncContext implements AsyncContext {
+    private static final Logger logger = LoggerFactory.getLogger(TinyAsyncContext.class);
+
+    /**
+     * ends the response and gives its slot back, run once by whichever thread completes
+     */
+    private final Runnable completer;
+
+    private final AtomicBoolean isCompleted = new AtomicBoolean(false);
+
+    private volatile boolean isDisconnected = false;
+
+    private List<Runnable> listeners = new ArrayList<>();
+
+    public TinyAsyncContext(Runnable completer) {
+        this.completer = completer;
+    }
+
+    @Override
+    public void complete() {
+        if(this.isCompleted.compareAndSet(false, true))
+            this.completer.run();
+    }
+
+    @Override
+    public boolean isCompleted() {
+        return this.isCompleted.get();
+    }
+
+    @Override
+    public void onDisconnect(Runnable listener) {
+        synchronized (this) {
+            if(!this.isDisconnected) {
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        run(listener);
+    }
+
+    @Override
+    public boolean isDisconnected() {
+        return this.isDisconnected;
+    }
+
+    /**
+     * the connection is closed, called on the io thread
+     */
+    void disconnect(){
+        List<Runnable> listeners;
+        synchronized (this) {
+            if(this.isDisconnected || this.isCompleted.get())
+                return;
+            this.isDisconnected = true;
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+        listeners.forEach(TinyAsyncContext::run);
+        complete();
+    }
+
+    private static void run(Runnable listener){
+        try {
+            listener.run();
+        } catch (Exception e) {
+            logger.error("", e);
+        }
+    }
+}
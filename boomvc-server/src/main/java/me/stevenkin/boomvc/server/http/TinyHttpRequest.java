@@ -1,45 +1,71 @@
 package me.stevenkin.boomvc.server.http;
 
-import com.google.common.base.Splitter;
 import com.google.common.collect.*;
 import me.stevenkin.boomvc.http.*;
 import me.stevenkin.boomvc.http.cookie.HttpCookie;
 import me.stevenkin.boomvc.http.kit.PathKit;
-import me.stevenkin.boomvc.http.multipart.FileInfo;
+import me.stevenkin.boomvc.http.kit.UrlKit;
 import me.stevenkin.boomvc.http.multipart.FileItem;
 import me.stevenkin.boomvc.http.session.HttpSession;
 import me.stevenkin.boomvc.server.exception.ProtocolParserException;
-import me.stevenkin.boomvc.server.stream.LineByteArrayInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.SocketAddress;
-import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.util.*;
 
+/**
+ * the query string, the form body, the cookies and the uri without the context path are parsed
+ * the first time they are asked for
+ */
 public class TinyHttpRequest implements HttpRequest {
+    private static final Logger logger = LoggerFactory.getLogger(TinyHttpRequest.class);
 
-    private String  remoteAddress;
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private SocketAddress remoteAddress;
 
     private String contextPath;
 
+    /**
+     * the decoded path of the request target
+     */
+    private String path;
+
+    /**
+     * the path without the context path, null until asked for
+     */
     private String  uri;
 
+    /**
+     * the request target as the client sent it
+     */
     private String  url;
 
     private String  protocol;
 
+    /**
+     * not decoded, null until asked for
+     */
     private String queryString;
 
+    /**
+     * the charset of an application/x-www-form-urlencoded body, null when the request has none
+     */
+    private Charset formCharset;
+
     private String  method;
 
     private boolean keepAlive;
 
     private HttpRequestLine requestLine;
 
-    private Multimap<String, HttpHeader> headers;
+    private HeaderTable headers;
 
     private Multimap<String, HttpQueryParameter> parameters;
 
@@ -51,12 +77,18 @@ public class TinyHttpRequest implements HttpRequest {
 
     private Map<String, Object> attributes = new HashMap<>();
 
-    private byte[] rawBody;
+    private RequestBody rawBody;
 
-    private TinyHttpRequest(){}
+    TinyHttpRequest(){}
 
     @Override
     public String uri() {
+        if(this.uri == null) {
+            String uri = this.path;
+            if(!"/".equals(this.contextPath) && uri.startsWith(this.contextPath))
+                uri = PathKit.cleanPath("/" + uri.substring(this.contextPath.length()));
+            this.uri = uri;
+        }
         return this.uri;
     }
 
@@ -75,24 +107,46 @@ public class TinyHttpRequest implements HttpRequest {
         return this.contextPath;
     }
 
+    /**
+     * the form body for an application/x-www-form-urlencoded post, only a get has its query
+     * string here
+     */
     @Override
     public String queryString() {
+        if(this.queryString == null) {
+            if(this.formCharset != null) {
+                try {
+                    this.queryString = new String(this.rawBody.bytes(), ISO_8859_1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                int i = this.url.indexOf('?');
+                this.queryString = i < 0 || this.requestLine.method() != HttpMethod.GET ? "" : this.url.substring(i + 1);
+            }
+        }
         return this.queryString;
     }
 
+    private Multimap<String, HttpQueryParameter> parameterMap() {
+        if(this.parameters == null)
+            this.parameters = parseQueryParameter(queryString(), this.formCharset == null ? UrlKit.UTF8 : this.formCharset);
+        return this.parameters;
+    }
+
     @Override
     public List<HttpQueryParameter> parameters() {
-        return ImmutableList.copyOf(this.parameters.values());
+        return ImmutableList.copyOf(parameterMap().values());
     }
 
     @Override
     public Set<String> parameterNames() {
-        return ImmutableSet.copyOf(this.parameters.keys());
+        return ImmutableSet.copyOf(parameterMap().keySet());
     }
 
     @Override
     public List<HttpQueryParameter> parameters(String name) {
-        return Lists.newArrayList(this.parameters.get(name));
+        return Lists.newArrayList(parameterMap().get(name));
     }
 
     @Override
@@ -111,29 +165,48 @@ public class TinyHttpRequest implements HttpRequest {
         return this;
     }
 
+    private Map<String, HttpCookie> cookieMap() {
+        if(this.cookies == null)
+            this.cookies = parseCookie(this.headers.get(HttpConst.COOKIE_STRING));
+        return this.cookies;
+    }
+
     @Override
     public List<HttpCookie> cookies() {
-        return ImmutableList.copyOf(this.cookies.values());
+        return ImmutableList.copyOf(cookieMap().values());
     }
 
     @Override
     public Optional<HttpCookie> cookieRaw(String name) {
-        return Optional.ofNullable(this.cookies.get(name));
+        return Optional.ofNullable(cookieMap().get(name));
     }
 
     @Override
     public List<HttpHeader> headers() {
-        return ImmutableList.copyOf(this.headers.values());
+        return this.headers.list();
     }
 
     @Override
     public Set<String> headerNames() {
-        return ImmutableSet.copyOf(this.headers.keySet());
+        return this.headers.names();
     }
 
     @Override
     public List<HttpHeader> headers(String name) {
-        return ImmutableList.copyOf(this.headers.get(name));
+        return this.headers.list(name);
+    }
+
+    @Override
+    public Optional<HttpHeader> firstHeader(String name) {
+        int index = this.headers.indexOf(name);
+        return index < 0 ? Optional.empty() : Optional.of(new HttpHeader(this.headers.name(index), this.headers.value(index)));
+    }
+
+    /**
+     * the value of the first header with the name, null when there is none
+     */
+    public String header(String name) {
+        return this.headers.get(name);
     }
 
     @Override
@@ -148,32 +221,33 @@ public class TinyHttpRequest implements HttpRequest {
 
     @Override
     public boolean isAjax() {
-        Optional<HttpHeader> header = this.firstHeader("x-requested-with");
-        return header.isPresent() && header.get().value().equalsIgnoreCase("XMLHttpRequest");
+        String header = header("x-requested-with");
+        return header != null && header.equalsIgnoreCase("XMLHttpRequest");
     }
 
     @Override
     public boolean isForm() {
-        Optional<HttpHeader> header = this.firstHeader("Content-Type");
-        return header.isPresent() && header.get().value().startsWith("application/x-www-form-urlencoded");
+        return contentTypeStartsWith("application/x-www-form-urlencoded");
     }
 
     @Override
     public boolean isJson() {
-        Optional<HttpHeader> header = this.firstHeader("Content-Type");
-        return header.isPresent() && header.get().value().startsWith("application/json");
+        return contentTypeStartsWith("application/json");
     }
 
     @Override
     public boolean isText() {
-        Optional<HttpHeader> header = this.firstHeader("Content-Type");
-        return header.isPresent() && header.get().value().startsWith("text/plain");
+        return contentTypeStartsWith("text/plain");
     }
 
     @Override
     public boolean isHtml() {
-        Optional<HttpHeader> header = this.firstHeader("Content-Type");
-        return header.isPresent() && header.get().value().startsWith("text/html");
+        return contentTypeStartsWith("text/html");
+    }
+
+    private boolean contentTypeStartsWith(String prefix) {
+        String header = header(HttpConst.CONTENT_TYPE_STRING);
+        return header != null && header.startsWith(prefix);
     }
 
     @Override
@@ -193,185 +267,180 @@ public class TinyHttpRequest implements HttpRequest {
 
     @Override
     public Map<String, FileItem> fileItems() {
-        return null;
+        return this.fileItems == null ? Collections.emptyMap() : Collections.unmodifiableMap(this.fileItems);
     }
 
     @Override
     public Optional<FileItem> fileItem(String name) {
-        return Optional.empty();
+        return this.fileItems == null ? Optional.empty() : Optional.ofNullable(this.fileItems.get(name));
     }
 
     @Override
     public InputStream body() {
-        return new ByteArrayInputStream(this.rawBody);
-    }
-
-    public static TinyHttpRequest of(HttpRequestLine requestLine, Multimap<String, HttpHeader> requestHeader, SocketAddress remoteAddress, String contextPath){
-        TinyHttpRequest request = new TinyHttpRequest();
-        request.requestLine = requestLine;
-        request.contextPath = contextPath;
-        request.headers =   ImmutableListMultimap.copyOf(requestHeader);
-        request.remoteAddress = remoteAddress.toString();
-
-        request.url = request.requestLine.url();
-        int pathEndPos = request.url.indexOf('?');
-        request.uri = pathEndPos < 0 ? request.url : request.url.substring(0, pathEndPos);
-        request.queryString = "";
-        if(request.requestLine.method() == HttpMethod.GET){
-            request.queryString = pathEndPos < 0 ? "" : request.url.substring(pathEndPos+1);
-        }
-        request.protocol = request.requestLine.protocol();
-        request.method = request.requestLine.method().text();
-
-        List<HttpHeader> headers = new ArrayList<>(request.headers.get("Connection"));
-        if(headers.size() == 1 && headers.get(0).value().equalsIgnoreCase("close")){
-            request.keepAlive = false;
-        }else
-            request.keepAlive = true;
-        request.parameters = parseQueryParameter(request.queryString);
-        request.cookies = parseCookie(request.firstHeader("Cookie").map(h->h.value()).orElse(""));
-
-        String cleanUri = request.uri;
-        if (!"/".equals(request.contextPath())) {
-            cleanUri = PathKit.cleanPath(cleanUri.replaceFirst(request.contextPath(), "/"));
-            request.uri = cleanUri;
+        if(this.rawBody == null)
+            return new ByteArrayInputStream(new byte[0]);
+        try {
+            return this.rawBody.inputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        return request;
-    }
-
-    public static TinyHttpRequest of(HttpRequestLine requestLine, Multimap<String, HttpHeader> requestHeader, byte[] requestBody, SocketAddress remoteAddress, String contextPath) throws IOException, ProtocolParserException {
-        TinyHttpRequest request = of(requestLine, requestHeader, remoteAddress, contextPath);
-        request.rawBody = requestBody;
-        request.queryString = "";
-        Optional<HttpHeader> headerList = request.firstHeader("Content-Type");
-        String contentType = headerList.map(h->h.value()).orElse("");
-        int i = contentType.indexOf("; ");
-        if(request.method().equalsIgnoreCase("POST")){
-            if(contentType.startsWith("application/x-www-form-urlencoded")){
-                String encoding = "UTF-8";
-                if(i > -1)
-                    encoding = contentType.substring(i + 2);
-                request.queryString = URLDecoder.decode(request.bodyToString(), encoding);
-                request.parameters = parseQueryParameter(request.queryString);
-            }else if(contentType.startsWith("multipart/form-data")){
-                String boundary;
-                if(i < 0)
-                    throw new ProtocolParserException();
-                String boundaryStr = contentType.substring(i + 2);
-                List<String> list = Splitter.on('=').trimResults().omitEmptyStrings().splitToList(boundaryStr);
-                boundary = list.get(1);
-                request.fileItems = parseFileItem(request, boundary);
+    /**
+     * delete the spooled body and the uploaded files left in the temp directory, called once the request is answered
+     */
+    public void release(){
+        if(this.rawBody != null)
+            this.rawBody.close();
+        if(this.fileItems != null) {
+            for(FileItem fileItem : this.fileItems.values()) {
+                try {
+                    fileItem.delete();
+                } catch (IOException e) {
+                    logger.error("", e);
+                }
             }
         }
-        return request;
     }
 
-    private static Multimap<String, HttpQueryParameter> parseQueryParameter(String queryString){
-        List<String> strings = Splitter.on("&").omitEmptyStrings().splitToList(queryString);
-        Multimap<String, HttpQueryParameter> multimap = LinkedListMultimap.create();
-        strings.forEach(s->{
-            List<String> strings1 = Splitter.on("=").omitEmptyStrings().splitToList(s);
-            multimap.put(strings1.get(0),new HttpQueryParameter(strings1.get(0), strings1.get(1)));
-        });
-        return multimap;
+    /**
+     * only the path is decoded here
+     * @throws IllegalArgumentException on a bad escape in the path
+     */
+    public static TinyHttpRequest of(HttpRequestLine requestLine, HeaderTable requestHeader, SocketAddress remoteAddress, String contextPath){
+        return new TinyHttpRequest().init(requestLine, requestHeader, remoteAddress, contextPath);
     }
 
-    private static Map<String, HttpCookie> parseCookie(String cookieString){
-        Map<String, HttpCookie> map = new HashMap<>();
-        Splitter.on("; ").trimResults().omitEmptyStrings().split(cookieString)
-                .forEach(s->{
-                    List<String> strings = Splitter.on('=').trimResults().omitEmptyStrings().splitToList(s);
-                    map.put(strings.get(0), new HttpCookie(strings.get(0), strings.get(1)));
-                });
-        return map;
+    public static TinyHttpRequest of(HttpRequestLine requestLine, HeaderTable requestHeader, RequestBody requestBody, SocketAddress remoteAddress, String contextPath) throws IOException, ProtocolParserException {
+        return new TinyHttpRequest().init(requestLine, requestHeader, remoteAddress, contextPath).body(requestBody);
     }
 
-    private static Map<String, FileItem> parseFileItem(TinyHttpRequest request, String boundary){
-        Map<String, FileItem> map = new HashMap<>();
-        byte[] body = request.rawBody;
-        byte[] bytes = boundary.getBytes(Charset.forName("ISO-8859-1"));
-        byte[] boundaryLine = new byte[bytes.length + 2];
-        boundaryLine[0] = '-';
-        boundaryLine[1] = '-';
-        System.arraycopy(bytes, 0, boundaryLine, 2, bytes.length);
-        byte[] endLine = new byte[boundaryLine.length + 2];
-        System.arraycopy(boundaryLine, 0, endLine, 2, boundaryLine.length);
-        endLine[endLine.length - 2] = '-';
-        endLine[endLine.length - 1] = '-';
-
-
-        LineByteArrayInputStream inputStream = new LineByteArrayInputStream(body);
-        byte[] bounLine = inputStream.readLineBytes();
-        byte[] line;
-        while(byteArrayEquals(bounLine, boundaryLine)){
-            StringBuilder stringBuilder = new StringBuilder();
-            while((line=inputStream.readLineBytes()).length > 0){
-                stringBuilder.append(new String(line, Charset.forName("ISO-8859-1"))).append("\r\n");
-            }
-            byte[] fileBody = inputStream.readLineBytes();
-            FileInfo fileInfo = parseFileInfo(stringBuilder.toString(), fileBody.length);
-            map.put(fileInfo.getFileName(), parseFileItem(fileBody, fileInfo));
-            bounLine = inputStream.readLineBytes();
-        }
-        return map;
+    /**
+     * a multipart/form-data request, the body has already been split into fields and files while it was read
+     */
+    public static TinyHttpRequest of(HttpRequestLine requestLine, HeaderTable requestHeader, Multimap<String, HttpQueryParameter> formParameters,
+                                     Map<String, FileItem> fileItems, SocketAddress remoteAddress, String contextPath) {
+        return new TinyHttpRequest().init(requestLine, requestHeader, remoteAddress, contextPath).multipart(formParameters, fileItems);
     }
 
-    private static boolean byteArrayEquals(byte[] bytes1, byte[] bytes2){
-        if(bytes1 == bytes2)
-            return true;
-        if(bytes1 == null || bytes2 == null)
-            return false;
-        if(bytes1.length != bytes2.length)
-            return false;
-        int length = bytes1.length;
-        for(int i = 0; i < length; i++){
-            if(bytes1[i] != bytes2[i])
-                return false;
-        }
-        return true;
+    TinyHttpRequest init(HttpRequestLine requestLine, HeaderTable requestHeader, SocketAddress remoteAddress, String contextPath){
+        this.requestLine = requestLine;
+        this.contextPath = contextPath;
+        this.headers = requestHeader;
+        this.remoteAddress = remoteAddress;
+
+        this.url = requestLine.url();
+        int pathEndPos = this.url.indexOf('?');
+        this.path = UrlKit.decode(this.url, 0, pathEndPos < 0 ? this.url.length() : pathEndPos, false, UrlKit.UTF8);
+        this.protocol = requestLine.protocol();
+        this.method = requestLine.method().text();
+
+        int connection = this.headers.indexOf(HttpConst.CONNECTION);
+        this.keepAlive = connection < 0 || !this.headers.value(connection).equalsIgnoreCase("close")
+                || this.headers.indexOf(HttpConst.CONNECTION, this.headers.hash(connection), connection + 1) >= 0;
+        return this;
     }
 
-    private static FileItem parseFileItem(byte[] body, FileInfo fileInfo){
-        return new FileItem(fileInfo.getName(), fileInfo.getFileName(), fileInfo.getContentType(), fileInfo.getLength(), body);
+    TinyHttpRequest body(RequestBody requestBody) throws ProtocolParserException {
+        this.rawBody = requestBody;
+        String contentType = header(HttpConst.CONTENT_TYPE_STRING);
+        if(this.requestLine.method() == HttpMethod.POST && contentType != null && contentType.startsWith("application/x-www-form-urlencoded"))
+            this.formCharset = charset(contentType);
+        return this;
     }
 
-    private static FileInfo parseFileInfo(String  fileInfo, long length){
-        List<String> list = Splitter.on("\r\n").trimResults().omitEmptyStrings().splitToList(fileInfo);
-        String disposition = null;
-        String contentType = null;
-        for(String string : list){
-            if(string.startsWith("Content-Disposition: ")){
-                disposition = string;
-            }
-            if(string.startsWith("Content-Type: ")){
-                contentType = string;
-            }
+    TinyHttpRequest multipart(Multimap<String, HttpQueryParameter> formParameters, Map<String, FileItem> fileItems){
+        this.queryString = "";
+        this.parameters = formParameters;
+        this.fileItems = fileItems;
+        return this;
+    }
+
+    /**
+     * forget the request before it is reused, release() has already been called
+     */
+    void recycle(){
+        this.remoteAddress = null;
+        this.contextPath = null;
+        this.path = null;
+        this.uri = null;
+        this.url = null;
+        this.protocol = null;
+        this.queryString = null;
+        this.formCharset = null;
+        this.method = null;
+        this.keepAlive = false;
+        this.requestLine = null;
+        this.headers = null;
+        this.parameters = null;
+        this.cookies = null;
+        this.fileItems = null;
+        this.session = null;
+        this.attributes.clear();
+        this.rawBody = null;
+    }
+
+    HeaderTable headerTable(){
+        return this.headers;
+    }
+
+    private static Charset charset(String contentType) throws ProtocolParserException {
+        int i = contentType.toLowerCase().indexOf("charset=");
+        if(i < 0)
+            return UrlKit.UTF8;
+        int end = contentType.indexOf(';', i);
+        String name = contentType.substring(i + 8, end < 0 ? contentType.length() : end).trim().replace("\"", "");
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolParserException("unsupported charset " + name, e);
         }
-        String subDisposition = "";
-        String subContentType = null;
-        String name = null;
-        String fileName = null;
-        if(disposition != null)
-            subDisposition = disposition.substring("Content-Disposition: ".length());
-        if(contentType != null)
-            subContentType = contentType.substring("Content-Type: ".length());
-        List<String> list1 = Splitter.on("; ").trimResults().omitEmptyStrings().splitToList(subDisposition);
-        if(list1.size() > 0){
-            List<String> list2 = Splitter.on('=').trimResults().omitEmptyStrings().splitToList(list1.get(1));
-            if(list2.size() == 2)
-                name = list2.get(1);
-            if(list1.size() > 2){
-                List<String> list3 = Splitter.on('=').trimResults().omitEmptyStrings().splitToList(list1.get(2));
-                if(list3.size() == 2)
-                    fileName = list3.get(1);
+    }
+
+    /**
+     * names and values are decoded one by one, so an escaped '&' or '=' stays in its value.
+     * a name without '=' gets an empty value
+     */
+    private static Multimap<String, HttpQueryParameter> parseQueryParameter(String queryString, Charset charset){
+        if(queryString.isEmpty())
+            return ImmutableListMultimap.of();
+        Multimap<String, HttpQueryParameter> multimap = LinkedListMultimap.create();
+        int start = 0;
+        while(start < queryString.length()) {
+            int end = queryString.indexOf('&', start);
+            if(end < 0)
+                end = queryString.length();
+            int eq = queryString.indexOf('=', start);
+            if(eq < 0 || eq > end)
+                eq = end;
+            if(eq > start) {
+                String name = UrlKit.decodeComponent(queryString, start, eq, charset);
+                String value = eq == end ? "" : UrlKit.decodeComponent(queryString, eq + 1, end, charset);
+                multimap.put(name, new HttpQueryParameter(name, value));
             }
+            start = end + 1;
         }
-        return new FileInfo(name, fileName, subContentType, length);
-
+        return multimap;
     }
 
-
-
+    private static Map<String, HttpCookie> parseCookie(String cookieString){
+        if(cookieString == null || cookieString.isEmpty())
+            return Collections.emptyMap();
+        Map<String, HttpCookie> map = new HashMap<>();
+        int start = 0;
+        while(start < cookieString.length()) {
+            int end = cookieString.indexOf(';', start);
+            if(end < 0)
+                end = cookieString.length();
+            int eq = cookieString.indexOf('=', start);
+            if(eq > start && eq < end) {
+                String name = cookieString.substring(start, eq).trim();
+                if(!name.isEmpty())
+                    map.put(name, new HttpCookie(name, cookieString.substring(eq + 1, end).trim()));
+            }
+            start = end + 1;
+        }
+        return map;
+    }
 
 }
@@ -1,40 +1,186 @@
 package me.stevenkin.boomvc.server.http;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
+import me.stevenkin.boomvc.common.compress.Compressor;
+import me.stevenkin.boomvc.common.compress.HttpCompression;
 import me.stevenkin.boomvc.http.*;
 import me.stevenkin.boomvc.http.cookie.HttpCookie;
 import me.stevenkin.boomvc.http.kit.StringKit;
+import me.stevenkin.boomvc.server.buffer.FileRegion;
 import me.stevenkin.boomvc.server.exception.NotFoundException;
+import me.stevenkin.boomvc.server.stream.ByteBufferOutputStream;
 
 import java.io.*;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class TinyHttpResponse implements HttpResponse {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] CRLF = {13, 10};
+
+    private static final byte[] LAST_CHUNK = {'0', 13, 10, 13, 10};
+
     private HttpResponseLine responseLine;
 
-    private Multimap<String, HttpHeader> headers;
+    private HeaderTable headers;
 
     private Map<String, HttpCookie> cookies;
 
-    private ByteArrayOutputStream rawOutputStream;
+    private ByteBufferOutputStream rawBodyOutputStream;
 
-    private ByteArrayOutputStream rawBodyOutputStream;
+    /**
+     * the header buffer followed by the body segments, ready after flush
+     */
+    private ByteBuffer[] byteBuffers;
+
+    /**
+     * a downloaded file, sent after the body segments without being read into the heap
+     */
+    private FileRegion fileRegion;
 
     private boolean isSetBody = false;
 
+    /**
+     * where a flushed body goes before the response is complete, null when the response can only
+     * be sent as a whole
+     */
+    private StreamSink streamSink;
+
+    private boolean isCommitted = false;
+
+    private boolean isChunked = false;
+
+    /**
+     * the client reads chunked transfer-encoding, an http/1.0 client does not
+     */
+    private boolean isChunkable = true;
+
+    /**
+     * the streamed body ends when the connection is closed
+     */
+    private boolean isCloseDelimited = false;
+
+    /**
+     * set while the response is completed, a flush of the writer then must not send a part of its own
+     */
+    private boolean isFlushing = false;
+
+    private HttpCompression compression;
+
+    /**
+     * the encoding negotiated with the client, null when the body must not be compressed
+     */
+    private String encoding;
+
+    /**
+     * the parts of the committed response are compressed
+     */
+    private boolean isCompressed = false;
+
+    /**
+     * compresses the parts of a committed response, its Deflater holds native memory until it is
+     * ended. guarded by the response since an abort ends it on the io thread
+     */
+    private Compressor streamCompressor;
+
+    /**
+     * the connection is closed, guarded by the response
+     */
+    private boolean isAborted = false;
+
+    private OutputStream outputStream;
+
+    private PrintWriter writer;
+
+    /**
+     * ends an async response, null when the response can only end with its handler
+     */
+    private Runnable asyncCompleter;
+
+    /**
+     * set by the thread running the handler, read by the io thread
+     */
+    private volatile TinyAsyncContext asyncContext;
+
+    /**
+     * the protocol frames the body itself (http/2): no status line, no header buffer and no chunk encoding
+     */
+    private final boolean isFramed;
+
     public TinyHttpResponse() {
+        this(false);
+    }
+
+    public TinyHttpResponse(boolean isFramed) {
+        this.isFramed = isFramed;
         this.responseLine = new HttpResponseLine();
-        this.headers = LinkedListMultimap.create();
+        this.headers = new HeaderTable();
         this.cookies = new HashMap<>();
-        this.rawOutputStream = new ByteArrayOutputStream();
-        this.rawBodyOutputStream = new ByteArrayOutputStream();
+        this.rawBodyOutputStream = new ByteBufferOutputStream();
+        this.outputStream = new BodyOutputStream();
+    }
+
+    /**
+     * forget the response before it is reused. the buffers it handed to the outbound buffer are
+     * not touched, the next response writes into new ones
+     */
+    void recycle() {
+        this.responseLine.httpVersion("HTTP/1.1");
+        this.responseLine.status(200);
+        this.responseLine.reason(null);
+        this.headers.clear();
+        this.cookies.clear();
+        this.rawBodyOutputStream.reset();
+        this.byteBuffers = null;
+        this.fileRegion = null;
+        this.isSetBody = false;
+        this.streamSink = null;
+        this.isCommitted = false;
+        this.isChunked = false;
+        this.isChunkable = true;
+        this.isCloseDelimited = false;
+        this.isFlushing = false;
+        this.compression = null;
+        this.encoding = null;
+        this.isCompressed = false;
+        endCompression();
+        synchronized (this) {
+            this.isAborted = false;
+        }
+        this.writer = null;
+        this.asyncCompleter = null;
+        this.asyncContext = null;
+    }
+
+    public void streamSink(StreamSink streamSink) {
+        this.streamSink = streamSink;
+    }
 
+    public void asyncCompleter(Runnable asyncCompleter) {
+        this.asyncCompleter = asyncCompleter;
+    }
+
+    public void compression(HttpCompression compression, String encoding) {
+        this.compression = compression;
+        this.encoding = encoding;
+    }
+
+    /**
+     * a streamed body to a client which can not read chunks is sent as it is and ended by closing
+     * the connection
+     */
+    public void chunkable(boolean isChunkable) {
+        this.isChunkable = isChunkable;
     }
 
     @Override
@@ -63,7 +209,7 @@ public class TinyHttpResponse implements HttpResponse {
     public HttpResponse header(String name, String value) {
         if (this.isSetBody)
             throw new UnsupportedOperationException("already set body !");
-        this.headers.put(name, new HttpHeader(name, value));
+        this.headers.add(name, value);
         return this;
     }
 
@@ -71,7 +217,7 @@ public class TinyHttpResponse implements HttpResponse {
     public HttpResponse removeHeader(String name) {
         if (this.isSetBody)
             throw new UnsupportedOperationException("already set body !");
-        this.headers.removeAll(name);
+        this.headers.remove(name);
         return this;
     }
 
@@ -89,7 +235,7 @@ public class TinyHttpResponse implements HttpResponse {
             throw new UnsupportedOperationException("already set body !");
         HttpCookie cookie = new HttpCookie(name, value);
         cookie.maxAge(maxAge);
-        this.cookies.put(name, new HttpCookie(name, value));
+        this.cookies.put(name, cookie);
         return this;
     }
 
@@ -100,7 +246,7 @@ public class TinyHttpResponse implements HttpResponse {
         HttpCookie cookie = new HttpCookie(name, value);
         cookie.maxAge(maxAge);
         cookie.secure(secured);
-        this.cookies.put(name, new HttpCookie(name, value));
+        this.cookies.put(name, cookie);
         return this;
     }
 
@@ -112,7 +258,7 @@ public class TinyHttpResponse implements HttpResponse {
         cookie.maxAge(maxAge);
         cookie.secure(secured);
         cookie.path(path);
-        this.cookies.put(name, new HttpCookie(name, value));
+        this.cookies.put(name, cookie);
         return this;
     }
 
@@ -128,7 +274,14 @@ public class TinyHttpResponse implements HttpResponse {
     public void body(String body) throws Exception{
         if (this.isSetBody)
             throw new UnsupportedOperationException("already set body !");
-        this.rawBodyOutputStream.write(body.getBytes(Charset.forName("UTF-8")));
+        this.rawBodyOutputStream.write(ByteBuffer.wrap(body.getBytes(UTF8)));
+    }
+
+    @Override
+    public void body(byte[] body) throws Exception {
+        if (this.isSetBody)
+            throw new UnsupportedOperationException("already set body !");
+        this.rawBodyOutputStream.write(ByteBuffer.wrap(body));
     }
 
     @Override
@@ -139,51 +292,295 @@ public class TinyHttpResponse implements HttpResponse {
             throw new NotFoundException("Not found file: " + file.getPath());
         }
         String contentType = StringKit.mimeType(file.getName());
-        headers.put(HttpConst.CONTENT_LENGTH, new HttpHeader(HttpConst.CONTENT_LENGTH, String.valueOf(file.length())));
-        headers.put(HttpConst.CONTENT_TYPE_STRING, new HttpHeader(HttpConst.CONTENT_TYPE_STRING, contentType));
-        this.rawBodyOutputStream.write(Files.readAllBytes(file.toPath()));
+        this.headers.add(HttpConst.CONTENT_LENGTH, String.valueOf(file.length()));
+        this.headers.add(HttpConst.CONTENT_TYPE_STRING, contentType);
+        this.fileRegion = new FileRegion(file.toPath(), 0, file.length());
     }
 
     @Override
     public OutputStream outputStream(){
-        if (this.isSetBody)
+        if (this.byteBuffers != null)
             throw new UnsupportedOperationException("already set body !");
-        return this.rawBodyOutputStream;
+        return this.outputStream;
     }
 
     @Override
     public void redirect(String newUri) {
         if (this.isSetBody)
             throw new UnsupportedOperationException("already set body !");
-        headers.put(HttpConst.LOCATION, new HttpHeader(HttpConst.LOCATION, newUri));
+        this.headers.add(HttpConst.LOCATION, newUri);
         this.status(302);
     }
 
     @Override
     public PrintWriter writer(){
-        return new PrintWriter(outputStream());
+        if (this.writer == null)
+            this.writer = new PrintWriter(new OutputStreamWriter(outputStream(), UTF8));
+        return this.writer;
     }
 
+    /**
+     * complete the response, a committed response only sends the rest of its body
+     */
     public void flush() throws Exception {
-        String responseLine = this.responseLine.toString();
-        StringBuilder stringBuilder = new StringBuilder(responseLine).append("\r\n");
-        byte[] body = this.rawBodyOutputStream.toByteArray();
-        if(!this.headers.containsKey(HttpConst.CONTENT_LENGTH))
-            header(HttpConst.CONTENT_LENGTH, Integer.toString(body.length));
-        cookies.values().stream().forEach(cookie->header("Set-Cookie", cookie.cookieString()));
-        this.headers.values().stream().forEach(h->
-                stringBuilder.append(h.toString()).append("\r\n")
-        );
-        stringBuilder.append("\r\n");
-        this.rawOutputStream.write(stringBuilder.toString().getBytes(Charset.forName("ISO-8859-1")));
-        this.rawOutputStream.write(body);
+        if(this.writer != null) {
+            this.isFlushing = true;
+            this.writer.flush();
+        }
+        if(this.isCommitted) {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            appendBody(buffers, this.rawBodyOutputStream.segments(), true);
+            if(this.isChunked)
+                buffers.add(ByteBuffer.wrap(LAST_CHUNK));
+            this.byteBuffers = buffers.toArray(new ByteBuffer[0]);
+            return;
+        }
+        List<ByteBuffer> body = this.rawBodyOutputStream.segments();
+        long length = this.rawBodyOutputStream.size();
+        if(this.fileRegion == null && !this.headers.contains(HttpConst.CONTENT_LENGTH) && isCompressible(length)) {
+            header(HttpConst.VARY, HttpConst.ACCEPT_ENCODING);
+            if(this.encoding != null) {
+                body = this.compression.compress(this.encoding, body);
+                length = size(body);
+                header(HttpConst.CONTENT_ENCODING, this.encoding);
+            }
+        }
+        if(!this.headers.contains(HttpConst.CONTENT_LENGTH))
+            header(HttpConst.CONTENT_LENGTH, Long.toString(length + (this.fileRegion == null ? 0 : this.fileRegion.count())));
+        if(this.isFramed) {
+            cookieHeaders();
+            this.byteBuffers = body.toArray(new ByteBuffer[0]);
+            this.isSetBody = true;
+            return;
+        }
+        ByteBuffer[] byteBuffers = new ByteBuffer[body.size() + 1];
+        byteBuffers[0] = head();
+        for(int i = 0; i < body.size(); i++)
+            byteBuffers[i + 1] = body.get(i);
+        this.byteBuffers = byteBuffers;
         this.isSetBody = true;
     }
 
+    private void cookieHeaders(){
+        for(HttpCookie cookie : this.cookies.values())
+            header(HttpConst.SET_COOKIE, cookie.cookieString());
+    }
+
+    /**
+     * the status line and the header lines in one array sized up front
+     */
+    private ByteBuffer head(){
+        cookieHeaders();
+        return ByteBuffer.wrap(ResponseHead.encode(this.responseLine, this.headers));
+    }
+
+    /**
+     * send the headers, if not sent yet, and the body written since the last flush
+     */
+    private void flushBody() throws IOException {
+        if(this.streamSink == null || this.isFlushing || this.byteBuffers != null)
+            return;
+        List<ByteBuffer> buffers = new ArrayList<>();
+        boolean isCommitting = !this.isCommitted;
+        if(isCommitting) {
+            boolean isStreamed = !this.headers.contains(HttpConst.CONTENT_LENGTH);
+            this.isChunked = isStreamed && !this.isFramed && this.isChunkable;
+            this.isCloseDelimited = isStreamed && !this.isFramed && !this.isChunkable;
+            if(this.isChunked)
+                header(HttpConst.TRANSFER_ENCODING, "chunked");
+            if(this.isCloseDelimited) {
+                this.headers.remove(HttpConst.CONNECTION);
+                header(HttpConst.CONNECTION, "close");
+            }
+            if(isStreamed && isCompressible(-1)) {
+                header(HttpConst.VARY, HttpConst.ACCEPT_ENCODING);
+                if(this.encoding != null) {
+                    startCompression();
+                    header(HttpConst.CONTENT_ENCODING, this.encoding);
+                }
+            }
+            if(this.isFramed)
+                cookieHeaders();
+            else
+                buffers.add(head());
+            this.isSetBody = true;
+            this.isCommitted = true;
+        }
+        appendBody(buffers, this.rawBodyOutputStream.drain(), false);
+        if(!buffers.isEmpty() || isCommitting)
+            this.streamSink.write(buffers.toArray(new ByteBuffer[0]));
+    }
+
+    private void appendBody(List<ByteBuffer> buffers, List<ByteBuffer> body, boolean last) throws IOException {
+        if(this.isCompressed) {
+            if(body.isEmpty() && !last)
+                return;
+            body = compress(body, last);
+        }
+        long size = size(body);
+        if(size == 0)
+            return;
+        if(this.isChunked)
+            buffers.add(ByteBuffer.wrap((Long.toHexString(size) + "\r\n").getBytes(ISO_8859_1)));
+        buffers.addAll(body);
+        if(this.isChunked)
+            buffers.add(ByteBuffer.wrap(CRLF));
+    }
+
+    private synchronized void startCompression() throws IOException {
+        if(this.isAborted)
+            throw new ClosedChannelException();
+        this.streamCompressor = new Compressor(this.encoding);
+        this.isCompressed = true;
+    }
+
+    /**
+     * the compressor is ended with the last part, or by an abort while the handler still streams
+     */
+    private synchronized List<ByteBuffer> compress(List<ByteBuffer> body, boolean last) throws IOException {
+        if(this.streamCompressor == null)
+            throw new ClosedChannelException();
+        List<ByteBuffer> compressed = this.streamCompressor.compress(body, last);
+        if(last)
+            endCompression();
+        return compressed;
+    }
+
+    /**
+     * free the native memory of the stream compressor, called when the response is done with,
+     * also when it is given up without being recycled
+     */
+    synchronized void endCompression() {
+        if(this.streamCompressor != null) {
+            this.streamCompressor.end();
+            this.streamCompressor = null;
+        }
+    }
+
+    /**
+     * compression is left to the handler when it set an encoding of its own, responses without
+     * a body are never compressed
+     */
+    private boolean isCompressible(long length){
+        int status = this.responseLine.status();
+        return this.compression != null && status >= 200 && status != 204 && status != 304
+                && !this.headers.contains(HttpConst.CONTENT_ENCODING)
+                && this.compression.isCompressible(contentType(), length);
+    }
+
+    private String contentType(){
+        return this.headers.get(HttpConst.CONTENT_TYPE);
+    }
+
+    private static long size(List<ByteBuffer> buffers){
+        long size = 0;
+        for(ByteBuffer buffer : buffers)
+            size += buffer.remaining();
+        return size;
+    }
+
+    public HttpResponseLine responseLine() {
+        return this.responseLine;
+    }
+
+    /**
+     * the headers as they are sent, Set-Cookie included once the response is flushed or committed
+     */
+    public HeaderTable headers() {
+        return this.headers;
+    }
+
+    /**
+     * no other response may follow this one on the connection
+     */
+    public boolean isCloseDelimited() {
+        return this.isCloseDelimited;
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return this.isCommitted;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        if(this.asyncCompleter == null || this.streamSink == null)
+            throw new UnsupportedOperationException("async response is not supported");
+        if(this.asyncContext == null)
+            this.asyncContext = new TinyAsyncContext(this.asyncCompleter);
+        return this.asyncContext;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return this.asyncContext != null;
+    }
+
+    /**
+     * the connection is closed before the response is complete, called on the io thread
+     */
+    public void abort() {
+        TinyAsyncContext asyncContext = this.asyncContext;
+        if(asyncContext != null)
+            asyncContext.disconnect();
+        synchronized (this) {
+            this.isAborted = true;
+            endCompression();
+        }
+    }
+
+    /**
+     * the response as it goes to the socket, the buffers are not copied. a framed response
+     * only has its body here
+     */
+    public ByteBuffer[] byteBuffers() {
+        return this.byteBuffers;
+    }
+
+    public FileRegion fileRegion() {
+        return this.fileRegion;
+    }
+
     @Override
     public byte[] rawByte() {
-        return this.rawOutputStream.toByteArray();
+        if(this.byteBuffers == null)
+            return new byte[0];
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for(ByteBuffer buffer : this.byteBuffers){
+            ByteBuffer duplicate = buffer.duplicate();
+            byte[] bytes = new byte[duplicate.remaining()];
+            duplicate.get(bytes);
+            outputStream.write(bytes, 0, bytes.length);
+        }
+        if(this.fileRegion != null) {
+            try {
+                outputStream.write(Files.readAllBytes(this.fileRegion.path()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return outputStream.toByteArray();
     }
 
+    /**
+     * the body stream handed to the handler, a flush streams what has been written so far
+     */
+    private class BodyOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            rawBodyOutputStream.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            rawBodyOutputStream.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBody();
+        }
+    }
 
 }
@@ -5,10 +5,16 @@ import me.stevenkin.boomvc.ioc.Environment;
 import me.stevenkin.boomvc.ioc.Ioc;
 import me.stevenkin.boomvc.mvc.DefaultMvcDispatcher;
 import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
 import me.stevenkin.boomvc.server.Boom;
 import me.stevenkin.boomvc.server.Server;
+import me.stevenkin.boomvc.server.SocketConfig;
+import me.stevenkin.boomvc.server.executor.EventExecutor;
+import me.stevenkin.boomvc.server.executor.EventExecutorChooser;
 import me.stevenkin.boomvc.server.executor.EventExecutorGroup;
+import me.stevenkin.boomvc.server.executor.ExecuteMode;
 import me.stevenkin.boomvc.server.kit.NameThreadFactory;
+import me.stevenkin.boomvc.server.kit.VirtualThreadKit;
 import me.stevenkin.boomvc.server.session.SessionCleaner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +23,13 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static me.stevenkin.boomvc.http.Const.*;
 
@@ -30,6 +43,8 @@ public class TinyServer implements Server {
 
     private MvcDispatcher dispatcher;
 
+    private WebSocketMapping webSocketMapping;
+
     private Environment environment;
 
     private EventExecutorGroup boss;
@@ -38,6 +53,8 @@ public class TinyServer implements Server {
 
     private Thread cleanSession;
 
+    private ExecutorService businessExecutor;
+
 
     @Override
     public void init(Boom boom) {
@@ -46,50 +63,138 @@ public class TinyServer implements Server {
         this.environment = boom.environment();
         this.dispatcher = new DefaultMvcDispatcher();
         this.dispatcher.init(this.ioc, this.environment, this.boom.viewTemplate());
+        this.webSocketMapping = new WebSocketMapping();
+        this.webSocketMapping.registerEndpoint(this.ioc);
         String contextPath = this.environment.getValue(ENV_KEY_CONTEXT_PATH, "/");
         logger.info("app context path is {}", contextPath);
         AppContext.init(ioc, environment, contextPath);
+        ExecuteMode executeMode = ExecuteMode.getExecuteMode(this.environment.getValue(ENV_KEY_SERVER_EXECUTE_MODE, DEFAULT_EXECUTE_MODE));
+        this.businessExecutor = newBusinessExecutor(executeMode);
+        String chooser = this.environment.getValue(ENV_KEY_SERVER_IO_THREAD_CHOOSER, DEFAULT_IO_THREAD_CHOOSER);
         this.workers = new EventExecutorGroup(
                 Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_IO_THREAD_COUNT, Integer.toString(DEFAULT_IO_THREAD_COUNT))),
                 new NameThreadFactory("@worker"),
                 null,
                 this.dispatcher,
-                this.boom.sessionManager());
-        this.boss = new EventExecutorGroup(
-                Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_ACCEPT_THREAD_COUNT, Integer.toString(DEFAULT_ACCEPT_THREAD_COUNT))),
-                new NameThreadFactory("@boss"),
-                this.workers,
-                null,
-                this.boom.sessionManager());
-        ServerSocketChannel serverSocketChannel;
+                this.webSocketMapping,
+                this.boom.sessionManager(),
+                this.businessExecutor,
+                chooser);
+        SocketConfig socketConfig = SocketConfig.of(this.environment);
+        InetSocketAddress address = new InetSocketAddress(this.environment.getValue(ENV_KEY_SERVER_ADDRESS, DEFAULT_SERVER_ADDRESS),
+                Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_PORT, DEFAULT_SERVER_PORT)));
         try {
-            serverSocketChannel = ServerSocketChannel.open();
-            serverSocketChannel.configureBlocking(false);
-            serverSocketChannel.bind(new InetSocketAddress(this.environment.getValue(ENV_KEY_SERVER_ADDRESS, DEFAULT_SERVER_ADDRESS),
-                    Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_PORT, DEFAULT_SERVER_PORT))));
-            this.boss.register(serverSocketChannel, SelectionKey.OP_ACCEPT);
+            if(socketConfig.reusePort() && bindEach(socketConfig, address)) {
+                logger.info("so_reuseport is on, every io thread accepts, backlog is {}, accept batch size is {}",
+                        socketConfig.backlog(), socketConfig.acceptBatchSize());
+            } else {
+                if(socketConfig.reusePort())
+                    logger.warn("so_reuseport is not supported by jdk {} on {}, fall back to accept thread",
+                            System.getProperty("java.version"), System.getProperty("os.name"));
+                bindBoss(socketConfig, address);
+                logger.info("accept thread num is {}, backlog is {}, accept batch size is {}",
+                        this.boss.threadNum(), socketConfig.backlog(), socketConfig.acceptBatchSize());
+            }
         } catch (IOException e) {
             logger.error("", e);
             throw new RuntimeException(e);
         }
         this.cleanSession = new Thread(new SessionCleaner(this.boom.sessionManager()));
-        logger.info("accept thread num is {}", this.environment.getValue(ENV_KEY_SERVER_ACCEPT_THREAD_COUNT, "1"));
-        logger.info("io thread num is {}", this.environment.getValue(ENV_KEY_SERVER_IO_THREAD_COUNT ,"1"));
+        logger.info("io thread num is {}, chooser is {}", this.workers.threadNum(), chooser);
+        logger.info("execute mode is {}", executeMode.text());
         logger.info("server bind port is {}", this.environment.getValue(ENV_KEY_SERVER_PORT, DEFAULT_SERVER_PORT));
         logger.info("server bind address is {}", this.environment.getValue(ENV_KEY_SERVER_ADDRESS, DEFAULT_SERVER_ADDRESS));
     }
 
+    /**
+     * one listening socket accepted by the boss group, which hands the connections to the io threads
+     */
+    private void bindBoss(SocketConfig socketConfig, InetSocketAddress address) throws IOException {
+        this.boss = new EventExecutorGroup(
+                Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_ACCEPT_THREAD_COUNT, Integer.toString(DEFAULT_ACCEPT_THREAD_COUNT))),
+                new NameThreadFactory("@boss"),
+                this.workers,
+                null,
+                this.webSocketMapping,
+                this.boom.sessionManager(),
+                null,
+                EventExecutorChooser.ROUND_ROBIN);
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.configureBlocking(false);
+        socketConfig.configure(serverSocketChannel);
+        serverSocketChannel.bind(address, socketConfig.backlog());
+        this.boss.register(serverSocketChannel, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * a SO_REUSEPORT socket for every io thread, false when the option is not supported and
+     * nothing is bound
+     */
+    private boolean bindEach(SocketConfig socketConfig, InetSocketAddress address) throws IOException {
+        List<EventExecutor> executors = this.workers.executors();
+        List<ServerSocketChannel> channels = new ArrayList<>(executors.size());
+        try {
+            for(int i = 0; i < executors.size(); i++) {
+                ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+                channels.add(serverSocketChannel);
+                if(!socketConfig.enableReusePort(serverSocketChannel)) {
+                    close(channels);
+                    return false;
+                }
+                serverSocketChannel.configureBlocking(false);
+                socketConfig.configure(serverSocketChannel);
+                serverSocketChannel.bind(address, socketConfig.backlog());
+            }
+        } catch (IOException e) {
+            close(channels);
+            throw e;
+        }
+        for(int i = 0; i < executors.size(); i++)
+            executors.get(i).register(channels.get(i), SelectionKey.OP_ACCEPT);
+        return true;
+    }
+
+    private static void close(List<ServerSocketChannel> channels){
+        for(ServerSocketChannel channel : channels){
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("", e);
+            }
+        }
+    }
+
     @Override
     public void start() {
-        this.boss.start();
+        if(this.boss != null)
+            this.boss.start();
         this.workers.start();
         this.cleanSession.start();
     }
 
     @Override
     public void stop() {
-        this.boss.stop();
+        if(this.boss != null)
+            this.boss.stop();
         this.workers.stop();
+        if(this.businessExecutor != null)
+            this.businessExecutor.shutdown();
+    }
+
+    private ExecutorService newBusinessExecutor(ExecuteMode executeMode){
+        if(executeMode == ExecuteMode.IO)
+            return null;
+        if(executeMode == ExecuteMode.VIRTUAL){
+            Optional<ExecutorService> executor = VirtualThreadKit.newVirtualThreadPerTaskExecutor("@virtual");
+            if(executor.isPresent())
+                return executor.get();
+            logger.warn("virtual thread is not supported by jdk {}, fall back to worker pool", System.getProperty("java.version"));
+        }
+        int threadNum = Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_WORKER_THREAD_COUNT, Integer.toString(DEFAULT_WORKER_THREAD_COUNT)));
+        int queueSize = Integer.parseInt(this.environment.getValue(ENV_KEY_SERVER_WORKER_QUEUE_SIZE, Integer.toString(DEFAULT_WORKER_QUEUE_SIZE)));
+        logger.info("business thread num is {}, queue size is {}", threadNum, queueSize);
+        return new ThreadPoolExecutor(threadNum, threadNum, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new NameThreadFactory("@business"), new ThreadPoolExecutor.AbortPolicy());
     }
 
 }
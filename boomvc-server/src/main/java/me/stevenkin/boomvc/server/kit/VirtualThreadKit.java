@@ -0,0 +1,42 @@
+package me.stevenkin.boomvc.server.kit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * virtual threads are looked up by reflection so the server still compiles and runs on jdk 8
+ */
+public class VirtualThreadKit {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadKit.class);
+
+    public static Optional<ThreadFactory> virtualThreadFactory(String prefix){
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return Optional.of((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Optional.empty();
+        }
+    }
+
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor(String prefix){
+        Optional<ThreadFactory> threadFactory = virtualThreadFactory(prefix);
+        if(!threadFactory.isPresent())
+            return Optional.empty();
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return Optional.of((ExecutorService) method.invoke(null, threadFactory.get()));
+        } catch (ReflectiveOperationException e) {
+            logger.error("", e);
+            return Optional.empty();
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package me.stevenkin.boomvc.server.parser;
+
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.server.parser.http.ResponseSlot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a protocol carrying http requests, http/1.1 or http/2. the requests it parses are dispatched
+ * and their responses go back through it, in the order the protocol needs
+ */
+public interface HttpRequestParser extends ProtocolParser {
+
+    HttpRequest takeHttpRequest();
+
+    HttpResponse genHttpResponse();
+
+    /**
+     * take the place of the request in the response order
+     */
+    ResponseSlot reserve(HttpRequest request, HttpResponse response);
+
+    void complete(ResponseSlot slot);
+
+    /**
+     * the handler is done with the request and the response of the slot, the parser may reuse
+     * what it made. called on the io thread, also after the connection is closed
+     */
+    default void recycle(HttpRequest request, ResponseSlot slot){
+    }
+
+    /**
+     * a part of a committed response
+     */
+    void stream(ResponseSlot slot, ByteBuffer[] buffers);
+
+}
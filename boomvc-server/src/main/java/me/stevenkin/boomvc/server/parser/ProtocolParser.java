@@ -1,11 +1,60 @@
 package me.stevenkin.boomvc.server.parser;
 
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
 import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.parser.http.ReadState;
+import me.stevenkin.boomvc.server.timer.Timeout;
 
+/**
+ * the protocol spoken on one connection, it turns the bytes read into requests or messages and
+ * what is sent back into bytes waiting in the outbound buffer. only touched by the io thread
+ * owning the connection
+ */
 public interface ProtocolParser {
 
     void parser() throws ProtocolParserException;
 
+    /**
+     * a request is waiting to be taken, never true for a protocol which is not a HttpRequestParser
+     */
     boolean parsed();
 
+    /**
+     * parse the bytes already read, called again when the connection has room for more requests
+     */
+    void resume() throws ProtocolParserException;
+
+    /**
+     * the parser taking the connection over when the client switched protocols, null while
+     * this one is in charge
+     */
+    ProtocolParser upgrade();
+
+    OutboundBuffer outboundBuffer();
+
+    ReadState readState();
+
+    Timeout timeout();
+
+    void timeout(Timeout timeout);
+
+    int pendingRequests();
+
+    boolean isPipelineFull();
+
+    /**
+     * no more request will be read from the connection
+     */
+    boolean isClosed();
+
+    /**
+     * the connection can be closed
+     */
+    boolean isFinished();
+
+    /**
+     * give the borrowed buffers back and drop what is not written, called when the connection is closed
+     */
+    void release();
+
 }
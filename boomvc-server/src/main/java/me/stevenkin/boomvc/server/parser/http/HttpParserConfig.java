@@ -0,0 +1,142 @@
+package me.stevenkin.boomvc.server.parser.http;
+
+import me.stevenkin.boomvc.ioc.Environment;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static me.stevenkin.boomvc.http.Const.*;
+
+/**
+ * limits checked by the http parser while it scans, read once from the environment
+ */
+public class HttpParserConfig {
+
+    private final int maxInitialLineLength;
+
+    private final int maxHeaderSize;
+
+    private final long maxContentLength;
+
+    private final int maxPipelinedRequests;
+
+    private final long bodySpoolThreshold;
+
+    private final Path bodySpoolDirectory;
+
+    private final boolean http2Enabled;
+
+    private final int http2MaxConcurrentStreams;
+
+    private final int http2InitialWindowSize;
+
+    private final int webSocketMaxMessageSize;
+
+    private final int writeBufferHighWatermark;
+
+    private final int writeBufferLowWatermark;
+
+    public HttpParserConfig(int maxInitialLineLength, int maxHeaderSize, long maxContentLength, int maxPipelinedRequests,
+                            long bodySpoolThreshold, Path bodySpoolDirectory, boolean http2Enabled,
+                            int http2MaxConcurrentStreams, int http2InitialWindowSize, int webSocketMaxMessageSize,
+                            int writeBufferHighWatermark, int writeBufferLowWatermark) {
+        this.maxInitialLineLength = maxInitialLineLength;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxContentLength = maxContentLength;
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        this.bodySpoolThreshold = bodySpoolThreshold;
+        this.bodySpoolDirectory = bodySpoolDirectory;
+        this.http2Enabled = http2Enabled;
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+        this.http2InitialWindowSize = http2InitialWindowSize;
+        this.webSocketMaxMessageSize = webSocketMaxMessageSize;
+        this.writeBufferHighWatermark = writeBufferHighWatermark;
+        this.writeBufferLowWatermark = Math.min(writeBufferLowWatermark, writeBufferHighWatermark);
+    }
+
+    public static HttpParserConfig of(Environment environment){
+        return new HttpParserConfig(
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_MAX_INITIAL_LINE_LENGTH, Integer.toString(DEFAULT_MAX_INITIAL_LINE_LENGTH))),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_MAX_HEADER_SIZE, Integer.toString(DEFAULT_MAX_HEADER_SIZE))),
+                Long.parseLong(environment.getValue(ENV_KEY_SERVER_MAX_CONTENT_LENGTH, Long.toString(DEFAULT_MAX_CONTENT_LENGTH))),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_MAX_PIPELINED_REQUESTS, Integer.toString(DEFAULT_MAX_PIPELINED_REQUESTS))),
+                Long.parseLong(environment.getValue(ENV_KEY_SERVER_BODY_SPOOL_THRESHOLD, Long.toString(DEFAULT_BODY_SPOOL_THRESHOLD))),
+                Paths.get(environment.getValue(ENV_KEY_SERVER_BODY_SPOOL_DIR, System.getProperty("java.io.tmpdir"))),
+                Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_HTTP2_ENABLE, "true")),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_HTTP2_MAX_CONCURRENT_STREAMS, Integer.toString(DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS))),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_HTTP2_INITIAL_WINDOW_SIZE, Integer.toString(DEFAULT_HTTP2_INITIAL_WINDOW_SIZE))),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_WEBSOCKET_MAX_MESSAGE_SIZE, Integer.toString(DEFAULT_WEBSOCKET_MAX_MESSAGE_SIZE))),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_WRITE_BUFFER_HIGH_WATERMARK, Integer.toString(DEFAULT_WRITE_BUFFER_HIGH_WATERMARK))),
+                Integer.parseInt(environment.getValue(ENV_KEY_SERVER_WRITE_BUFFER_LOW_WATERMARK, Integer.toString(DEFAULT_WRITE_BUFFER_LOW_WATERMARK))));
+    }
+
+    public int maxInitialLineLength() {
+        return maxInitialLineLength;
+    }
+
+    public int maxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    public long maxContentLength() {
+        return maxContentLength;
+    }
+
+    /**
+     * requests of one connection parsed but not answered yet, the parser stops and the
+     * connection is not read any more until some of them are written
+     */
+    public int maxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * a request body bigger than this is written to a temp file instead of the heap
+     */
+    public long bodySpoolThreshold() {
+        return bodySpoolThreshold;
+    }
+
+    public Path bodySpoolDirectory() {
+        return bodySpoolDirectory;
+    }
+
+    /**
+     * h2c is spoken when the client starts with the connection preface or asks for it with Upgrade
+     */
+    public boolean http2Enabled() {
+        return http2Enabled;
+    }
+
+    public int http2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    /**
+     * the receive window of every http/2 stream and of the connection as a whole
+     */
+    public int http2InitialWindowSize() {
+        return http2InitialWindowSize;
+    }
+
+    /**
+     * the largest websocket message, fragments included, the connection is closed with 1009 above it
+     */
+    public int webSocketMaxMessageSize() {
+        return webSocketMaxMessageSize;
+    }
+
+    /**
+     * the connection is not read any more once more than this waits to be written to it
+     */
+    public int writeBufferHighWatermark() {
+        return writeBufferHighWatermark;
+    }
+
+    /**
+     * the connection is read again once what waits to be written is down to this
+     */
+    public int writeBufferLowWatermark() {
+        return writeBufferLowWatermark;
+    }
+}
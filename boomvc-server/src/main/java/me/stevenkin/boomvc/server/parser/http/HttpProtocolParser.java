@@ -1,278 +1,758 @@
 package me.stevenkin.boomvc.server.parser.http;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
 import me.stevenkin.boomvc.http.*;
 import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketEndpoint;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
 import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.http.HeaderTable;
+import me.stevenkin.boomvc.server.http.HttpObjectPool;
+import me.stevenkin.boomvc.server.http.RequestBody;
 import me.stevenkin.boomvc.server.http.TinyHttpRequest;
 import me.stevenkin.boomvc.server.http.TinyHttpResponse;
-import me.stevenkin.boomvc.server.stream.SearchableByteArrayOutputStream;
+import me.stevenkin.boomvc.server.parser.HttpRequestParser;
 import me.stevenkin.boomvc.server.parser.ProtocolParser;
+import me.stevenkin.boomvc.server.parser.http2.Http2Connection;
+import me.stevenkin.boomvc.server.parser.multipart.MultipartParser;
+import me.stevenkin.boomvc.server.parser.websocket.WebSocketConnection;
+import me.stevenkin.boomvc.server.timer.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.Charset;
 import java.util.*;
 
 import static me.stevenkin.boomvc.server.parser.http.ParseStatus.*;
 
-public class HttpProtocolParser implements ProtocolParser {
+/**
+ * a resumable http/1.1 parser, every byte is looked at once: the scan position and the
+ * token being built survive between two readable events, so a request trickling in over
+ * many packets is never rescanned
+ */
+public class HttpProtocolParser implements HttpRequestParser {
     private static final Logger logger = LoggerFactory.getLogger(HttpProtocolParser.class);
 
-    private static final byte[] LINEEND = {13, 10};
+    private static final byte CR = 13;
 
-    private static final byte[] HEADERSEND = { 13, 10, 13, 10 };
+    private static final byte LF = 10;
+
+    private static final byte SP = 32;
+
+    private static final byte HT = 9;
+
+    private static final byte COLON = 58;
+
+    private static final byte SEMICOLON = 59;
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes();
+
+    private static final byte[] SWITCHING_PROTOCOLS = "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes();
+
+    /**
+     * the method token of the http/2 connection preface
+     */
+    private static final String PREFACE_METHOD = "PRI";
+
+    private static final String HTTP2_SETTINGS = "HTTP2-Settings";
+
+    private static final int CONTENT_LENGTH_HASH = HeaderTable.hash(HttpConst.CONTENT_LENGTH);
+
+    private static final int TRANSFER_ENCODING_HASH = HeaderTable.hash(HttpConst.TRANSFER_ENCODING);
+
+    private static final int CONNECTION_HASH = HeaderTable.hash(HttpConst.CONNECTION);
+
+    private static final int CONTENT_TYPE_HASH = HeaderTable.hash(HttpConst.CONTENT_TYPE_STRING);
+
+    private static final int EXPECT_HASH = HeaderTable.hash("Expect");
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    private static final int BODY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * reads of one connection per readable event, the other connections of the loop get their turn after
+     */
+    private static final int MAX_READS_PER_EVENT = 16;
 
     private SocketChannel socketChannel;
 
-    private SearchableByteArrayOutputStream outputStream;
+    private BufferPool bufferPool;
+
+    private HttpObjectPool objectPool;
+
+    private HttpParserConfig config;
+
+    private WebSocketMapping webSocketMapping;
 
     private Queue<HttpRequest> requestQueue;
 
-    private List<ByteBuffer> responseBuffers;
+    /**
+     * dispatched requests in the order they were received
+     */
+    private Deque<ResponseSlot> responseSlots;
+
+    private OutboundBuffer outboundBuffer;
 
+    /**
+     * borrowed from the pool of the owning event loop while a request is in flight,
+     * kept in write mode: the readable bytes are [0, position)
+     */
     private ByteBuffer buffer;
 
+    /**
+     * scan position in the buffer, everything before it is consumed
+     */
+    private int position = 0;
+
     private ParseStatus status;
 
+    private StringBuilder token = new StringBuilder();
+
+    private int lineLength;
+
+    private int headerSize;
 
-    private byte[] line;
+    private HttpMethod method;
 
-    private byte[] headers;
+    private String url;
 
-    private byte[] body;
+    private String protocol;
 
-    private ByteArrayOutputStream bodyOutputStream = new ByteArrayOutputStream();
+    /**
+     * the header bytes are appended here while they are scanned
+     */
+    private HeaderTable requestHeaders;
 
-    private int contentLength;
+    private long contentLength;
 
-    private int chunkedLength;
+    private boolean hasContentLength;
 
     private boolean isChunked;
 
-    private int offset = 0;
+    private boolean hasTransferEncoding;
 
-    private HttpRequestLine requestLine;
+    private boolean expectContinue;
 
-    private Multimap<String, HttpHeader> requestHeaders;
+    /**
+     * responses to write before the 100 Continue of the request being read, -1 when none waits
+     */
+    private int continueAfter = -1;
 
+    private boolean keepAlive;
+
+    private long chunkedLength;
+
+    private long chunkedSize;
+
+    private RequestBody body;
+
+    private String contentType;
+
+    /**
+     * takes the place of the body when the request is multipart/form-data
+     */
+    private MultipartParser multipart;
+
+    private long bodyRemaining;
 
     private boolean isClosed = false;
 
-    public HttpProtocolParser(SocketChannel socketChannel) {
+    private boolean isEof = false;
+
+    /**
+     * a request asked to close the connection, the bytes after it are ignored
+     */
+    private boolean isCloseRequested = false;
+
+    private Timeout timeout;
+
+    /**
+     * requests parsed on the connection so far, the http/2 preface is only looked for before the first
+     */
+    private int requestCount = 0;
+
+    /**
+     * the rest of the connection speaks http/2 or websocket, nothing more is parsed here
+     */
+    private boolean isUpgrading = false;
+
+    /**
+     * the Upgrade: h2c or websocket request, null when the client sent the connection preface
+     */
+    private HttpRequest upgradeRequest;
+
+    private String http2Settings;
+
+    /**
+     * the endpoint the websocket handshake asked for
+     */
+    private WebSocketEndpoint webSocketEndpoint;
+
+    private ProtocolParser upgraded;
+
+    public HttpProtocolParser(SocketChannel socketChannel, BufferPool bufferPool, HttpObjectPool objectPool, HttpParserConfig config,
+                              WebSocketMapping webSocketMapping) {
         this.socketChannel = socketChannel;
-        this.responseBuffers = new LinkedList<>();
+        this.bufferPool = bufferPool;
+        this.objectPool = objectPool;
+        this.config = config;
+        this.webSocketMapping = webSocketMapping;
+        this.outboundBuffer = new OutboundBuffer(config.writeBufferHighWatermark(), config.writeBufferLowWatermark());
         this.requestQueue = new LinkedList<>();
-        this.outputStream = new SearchableByteArrayOutputStream();
-        this.buffer = ByteBuffer.allocate(1024);
-        this.status = PARSINGLINE;
-        this.contentLength = -1;
-        this.chunkedLength = -1;
-        this.isChunked = false;
+        this.responseSlots = new ArrayDeque<>();
+        reset();
     }
 
     @Override
     public void parser() throws ProtocolParserException {
-        boolean goon = true;
-        try {
-            read();
-        } catch (IOException e) {
-            logger.error("", e);
-            throw new ProtocolParserException("a io exception happened when readed data", e);
-        }
-        int index = -1;
-        while(goon && !this.isClosed) {
-            goon = false;
+        boolean filled;
+        int reads = 0;
+        do {
+            try {
+                filled = read();
+            } catch (IOException e) {
+                logger.error("", e);
+                throw new ProtocolParserException("a io exception happened when readed data", e);
+            }
+            resume();
+        } while(filled && ++reads < MAX_READS_PER_EVENT && !this.isClosed && !this.isUpgrading && !isPipelineFull());
+    }
+
+    /**
+     * parse the bytes already read, called again when the pipeline has room for more requests
+     */
+    @Override
+    public void resume() throws ProtocolParserException {
+        int limit = readable();
+        while(this.position < limit && !this.isCloseRequested && !this.isUpgrading && !isPipelineFull()) {
             switch (this.status) {
-                case PARSINGLINE:
-                    index = this.outputStream.search(LINEEND);
-                    if (index > -1) {
-                        this.line = this.outputStream.copy(this.offset, index);
-                        this.status = PARSINGHEADERS;
-                        this.offset = index + 2;
-                        goon = true;
-                        try {
-                            this.requestLine = parseHttpRequestLine(this.line);
-                        } catch (UnsupportedEncodingException e) {
-                            logger.error("", e);
-                            throw new ProtocolParserException("url encode error", e);
-                        }
-                    }
+                case PARSINGBODY:
+                    parseBody(limit);
                     break;
-                case PARSINGHEADERS:
-                    index = this.outputStream.search(HEADERSEND);
-                    if (index > -1) {
-                        this.headers = this.outputStream.copy(this.offset, index);
-                        this.status = PARSINGBODY;
-                        this.offset = index + 4;
-                        goon = true;
-                        try {
-                            this.requestHeaders = parseHttpRequestHeaders(this.headers);
-                        } catch (UnsupportedEncodingException e) {
-                            logger.error("", e);
-                            throw new ProtocolParserException("url encode error", e);
-                        }
-                    }
+                case PARSINGCHUNKEDBODY:
+                    parseChunkedBody(limit);
                     break;
-                case PARSINGBODY:
-                    HttpMethod httpMethod = this.requestLine.method();
-                    switch (httpMethod) {
-                        case GET:
-                            try {
-                                this.requestQueue.add(TinyHttpRequest.of(requestLine, requestHeaders, socketChannel.getRemoteAddress(), AppContext.contextPath()));
-                            } catch (IOException e) {
-                                logger.error("", e);
-                                 throw new ProtocolParserException(e);
-                            }
-                            clear();
-                            goon = true;
-                            break;
-                        case POST:
-                            if (this.contentLength == -1) {
-                                List<HttpHeader> headers = new ArrayList<>(this.requestHeaders.get("Content-Length"));
-                                if (headers != null && headers.size() > 0) {
-                                    this.contentLength = Integer.parseInt(headers.get(0).value());
-                                }
-                            }
-                            if (this.contentLength == -1) {
-                                if (!this.isChunked) {
-                                    List<HttpHeader> headers = new ArrayList<>(this.requestHeaders.get("Transfer-Encoding"));
-                                    if (headers != null && headers.size() > 0 && headers.get(0).value().equalsIgnoreCase("chunked")) {
-                                        this.isChunked = true;
-                                        this.status = PARSINGCHUNKEDLENGTH;
-                                    }
-                                    if (!this.isChunked)
-                                        throw new ProtocolParserException();
-                                }
-                            }
-                            if (this.contentLength > -1) {
-                                if (this.outputStream.count() - this.offset >= this.contentLength) {
-                                    this.body = this.outputStream.copy(this.offset, this.offset + this.contentLength);
-                                    this.offset = this.offset + this.contentLength;
-                                    try {
-                                        this.requestQueue.add(TinyHttpRequest.of(this.requestLine, this.requestHeaders, this.body, socketChannel.getRemoteAddress(), AppContext.contextPath()));
-                                    } catch (IOException e) {
-                                        logger.error("", e);
-                                        throw new ProtocolParserException(e);
-                                    }
-                                    clear();
-                                    goon = true;
-                                }
-                                break;
-                            } else {
-                                switch (this.status) {
-                                    case PARSINGCHUNKEDLENGTH:
-                                        int index1 = this.outputStream.search(LINEEND, this.offset);
-                                        if (index1 > -1) {
-                                            this.chunkedLength = Integer.decode("0x" + new String(this.outputStream.copy(this.offset, index1), Charset.forName("ISO-8859-1")));
-                                            this.offset = index1 + 2;
-                                            this.status = PARSINGCHUNKEDBODY;
-                                            goon = true;
-                                        }
-                                        break;
-                                    case PARSINGCHUNKEDBODY:
-                                        if (this.chunkedLength == 0) {
-                                            //discard some data
-                                            this.offset = this.outputStream.count();
-                                            this.body = this.bodyOutputStream.toByteArray();
-                                            try {
-                                                this.requestQueue.add(TinyHttpRequest.of(this.requestLine, this.requestHeaders, this.body, socketChannel.getRemoteAddress(), AppContext.contextPath()));
-                                            } catch (IOException e) {
-                                                logger.error("", e);
-                                                throw new ProtocolParserException(e);
-                                            }
-                                            clear();
-                                            goon = true;
-                                            break;
-                                        }
-                                        int index2 = this.outputStream.search(LINEEND, this.offset);
-                                        if (index2 < 0)
-                                            break;
-                                        byte[] chunkedBody = this.outputStream.copy(this.offset, index2);
-                                        if (chunkedBody.length != this.chunkedLength)
-                                            throw new ProtocolParserException();
-                                        try {
-                                            this.bodyOutputStream.write(chunkedBody);
-                                            this.offset = index2 + 2;
-                                            this.status = PARSINGCHUNKEDLENGTH;
-                                            goon = true;
-                                        } catch (IOException e) {
-                                            logger.error("", e);
-                                            throw new ProtocolParserException(e);
-                                        }
-                                        break;
-                                }
-                            }
-                            break;
-                    }
+                default:
+                    parse(this.buffer.get(this.position++));
                     break;
             }
         }
+        compact();
+    }
+
+    private void parse(byte b) throws ProtocolParserException {
+        switch (this.status) {
+            case PARSINGMETHOD:
+                if(b == SP && this.requestCount == 0 && this.config.http2Enabled() && PREFACE_METHOD.contentEquals(this.token)) {
+                    this.isUpgrading = true;
+                } else if(b == SP) {
+                    this.method = parseMethod();
+                    this.status = PARSINGURI;
+                } else if(!((b == CR || b == LF) && this.token.length() == 0)) {
+                    appendLine(b);
+                }
+                break;
+            case PARSINGURI:
+                if(b == SP) {
+                    this.url = takeToken();
+                    this.status = PARSINGVERSION;
+                } else {
+                    appendLine(b);
+                }
+                break;
+            case PARSINGVERSION:
+                if(b == CR) {
+                    this.status = PARSINGLINEEND;
+                } else if(b == LF) {
+                    lineParsed();
+                } else {
+                    appendLine(b);
+                }
+                break;
+            case PARSINGLINEEND:
+                expect(b, LF);
+                lineParsed();
+                break;
+            case PARSINGHEADERNAME:
+                if(this.requestHeaders.pendingLength() == 0 && b == CR) {
+                    this.status = PARSINGHEADERSEND;
+                } else if(this.requestHeaders.pendingLength() == 0 && b == LF) {
+                    headersParsed();
+                } else if(b == COLON) {
+                    this.requestHeaders.nameParsed();
+                    this.status = PARSINGHEADERVALUE;
+                } else if(b == CR || b == LF) {
+                    throw new ProtocolParserException("illegal header line");
+                } else {
+                    appendHeader(b);
+                }
+                break;
+            case PARSINGHEADERVALUE:
+                // optional whitespace is not part of the value: the leading one is skipped here,
+                // the trailing one is dropped by valueParsed before headerParsed looks at the value
+                if(b == CR) {
+                    this.status = PARSINGHEADERLINEEND;
+                } else if(b == LF) {
+                    headerParsed();
+                } else if(!((b == SP || b == HT) && this.requestHeaders.pendingLength() == 0)) {
+                    appendHeader(b);
+                }
+                break;
+            case PARSINGHEADERLINEEND:
+                expect(b, LF);
+                headerParsed();
+                break;
+            case PARSINGHEADERSEND:
+                expect(b, LF);
+                headersParsed();
+                break;
+            case PARSINGCHUNKEDLENGTH:
+                if(b == SEMICOLON) {
+                    this.status = PARSINGCHUNKEDEXTENSION;
+                } else if(b == CR) {
+                    this.status = PARSINGCHUNKEDLENGTHEND;
+                } else if(b == LF) {
+                    chunkedLengthParsed();
+                } else if(b != SP && b != HT) {
+                    int digit = Character.digit(b, 16);
+                    if(digit < 0 || this.chunkedLength > (Long.MAX_VALUE >> 4))
+                        throw new ProtocolParserException("illegal chunk size");
+                    this.chunkedLength = (this.chunkedLength << 4) + digit;
+                }
+                break;
+            case PARSINGCHUNKEDEXTENSION:
+                if(b == CR)
+                    this.status = PARSINGCHUNKEDLENGTHEND;
+                else if(b == LF)
+                    chunkedLengthParsed();
+                break;
+            case PARSINGCHUNKEDLENGTHEND:
+                expect(b, LF);
+                chunkedLengthParsed();
+                break;
+            case PARSINGCHUNKEDBODYEND:
+                if(b == LF)
+                    this.status = PARSINGCHUNKEDLENGTH;
+                else if(b != CR)
+                    throw new ProtocolParserException("illegal chunk end");
+                break;
+            case PARSINGTRAILERS:
+                if(b == LF) {
+                    if(this.lineLength == 0)
+                        requestParsed();
+                    else
+                        this.lineLength = 0;
+                } else if(b != CR) {
+                    this.lineLength++;
+                    if(++this.headerSize > this.config.maxHeaderSize())
+                        throw new ProtocolParserException("trailers are too large");
+                }
+                break;
+            default:
+                throw new IllegalStateException(this.status.name());
+        }
+    }
+
+    private void parseBody(int limit) throws ProtocolParserException {
+        int length = (int) Math.min(limit - this.position, this.bodyRemaining);
+        writeBody(length);
+        this.bodyRemaining -= length;
+        if(this.bodyRemaining == 0)
+            requestParsed();
+    }
 
+    private void parseChunkedBody(int limit) throws ProtocolParserException {
+        int length = (int) Math.min(limit - this.position, this.chunkedLength);
+        writeBody(length);
+        this.chunkedLength -= length;
+        if(this.chunkedLength == 0)
+            this.status = PARSINGCHUNKEDBODYEND;
     }
 
-    private void read() throws IOException {
-        int count;
-        SocketChannel channel = this.socketChannel;
-        do{
-            buffer.clear();
-            count = channel.read(this.buffer);
-            if(count < 0)
-                channel.close();
-            if(count > 0){
-                this.outputStream.write(this.buffer.array(), 0, count);
+    private void writeBody(int length) throws ProtocolParserException {
+        ByteBuffer duplicate = this.buffer.duplicate();
+        duplicate.limit(this.position + length).position(this.position);
+        try {
+            if(this.multipart != null)
+                this.multipart.write(duplicate);
+            else
+                this.body.write(duplicate);
+        } catch (IOException e) {
+            logger.error("", e);
+            throw new ProtocolParserException("can not write request body", e);
+        }
+        this.position += length;
+    }
+
+    private RequestBody newBody(long expectedLength) throws ProtocolParserException {
+        String boundary = this.method == HttpMethod.POST ? MultipartParser.boundary(this.contentType) : null;
+        if(boundary != null) {
+            this.multipart = new MultipartParser(boundary, this.config.maxHeaderSize(), this.config.bodySpoolThreshold(), this.config.bodySpoolDirectory());
+            return null;
+        }
+        try {
+            return new RequestBody(expectedLength, this.config.bodySpoolThreshold(), this.config.bodySpoolDirectory());
+        } catch (IOException e) {
+            logger.error("", e);
+            throw new ProtocolParserException("can not spool request body", e);
+        }
+    }
+
+    private void lineParsed() throws ProtocolParserException {
+        this.protocol = takeToken();
+        if(this.method == null || this.url == null || !this.protocol.startsWith("HTTP/"))
+            throw new ProtocolParserException("illegal request line");
+        this.keepAlive = !"HTTP/1.0".equals(this.protocol);
+        this.requestHeaders = this.objectPool.headerTable();
+        this.status = PARSINGHEADERNAME;
+    }
+
+    /**
+     * only the headers which drive the parser have their value made into a string here, the
+     * hash of the name is checked before the name itself
+     */
+    private void headerParsed() throws ProtocolParserException {
+        HeaderTable headers = this.requestHeaders;
+        int index = headers.valueParsed();
+        int hash = headers.hash(index);
+        if(hash == CONTENT_LENGTH_HASH && headers.nameEquals(index, HttpConst.CONTENT_LENGTH)) {
+            long contentLength;
+            try {
+                contentLength = Long.parseLong(headers.value(index));
+            } catch (NumberFormatException e) {
+                throw new ProtocolParserException("illegal content length", e);
+            }
+            if(contentLength < 0 || (this.hasContentLength && contentLength != this.contentLength))
+                throw new ProtocolParserException("illegal content length");
+            this.contentLength = contentLength;
+            this.hasContentLength = true;
+        } else if(hash == TRANSFER_ENCODING_HASH && headers.nameEquals(index, HttpConst.TRANSFER_ENCODING)) {
+            // the codings of several headers add up, only the last one of all counts
+            String value = headers.value(index);
+            String last = value.substring(value.lastIndexOf(',') + 1).trim();
+            if(!last.isEmpty())
+                this.isChunked = last.equalsIgnoreCase("chunked");
+            this.hasTransferEncoding = true;
+        } else if(hash == CONNECTION_HASH && headers.nameEquals(index, HttpConst.CONNECTION)) {
+            String value = headers.value(index);
+            if(value.equalsIgnoreCase("close"))
+                this.keepAlive = false;
+            else if(value.equalsIgnoreCase(HttpConst.KEEP_ALIVE))
+                this.keepAlive = true;
+        } else if(hash == CONTENT_TYPE_HASH && headers.nameEquals(index, HttpConst.CONTENT_TYPE_STRING)) {
+            this.contentType = headers.value(index);
+        } else if(hash == EXPECT_HASH && headers.nameEquals(index, "Expect")) {
+            this.expectContinue = headers.value(index).equalsIgnoreCase("100-continue");
+        }
+        this.status = PARSINGHEADERNAME;
+    }
+
+    /**
+     * a body whose end the server and a proxy in front of it could see differently is refused,
+     * it could smuggle a request in
+     */
+    private void headersParsed() throws ProtocolParserException {
+        if(this.hasTransferEncoding && !this.isChunked)
+            throw new ProtocolParserException("transfer-encoding without chunked as the last coding");
+        if(this.hasTransferEncoding && this.hasContentLength)
+            throw new ProtocolParserException("both content-length and transfer-encoding");
+        if(this.isChunked) {
+            this.contentLength = -1;
+            this.body = newBody(-1);
+            this.status = PARSINGCHUNKEDLENGTH;
+        } else if(this.contentLength > 0) {
+            if(this.contentLength > this.config.maxContentLength())
+                throw new ProtocolParserException("content length " + this.contentLength + " is too large");
+            this.body = newBody(this.contentLength);
+            this.bodyRemaining = this.contentLength;
+            this.status = PARSINGBODY;
+        } else {
+            requestParsed();
+            return;
+        }
+        if(this.expectContinue && this.position == readable())
+            sendContinue();
+    }
+
+    private void chunkedLengthParsed() throws ProtocolParserException {
+        if(this.chunkedLength == 0) {
+            this.lineLength = 0;
+            this.status = PARSINGTRAILERS;
+            return;
+        }
+        this.chunkedSize += this.chunkedLength;
+        if(this.chunkedSize > this.config.maxContentLength())
+            throw new ProtocolParserException("chunked body is too large");
+        this.status = PARSINGCHUNKEDBODY;
+    }
+
+    private void requestParsed() throws ProtocolParserException {
+        HttpRequestLine requestLine = new HttpRequestLine(this.method, this.url, this.protocol);
+        HttpRequest request;
+        try {
+            if(this.multipart != null) {
+                this.multipart.finish();
+                request = this.objectPool.request(requestLine, this.requestHeaders, this.multipart.parameters(), this.multipart.fileItems(), this.socketChannel.getRemoteAddress(), AppContext.contextPath());
+                this.multipart = null;
+            } else if(this.body != null) {
+                this.body.finish();
+                request = this.objectPool.request(requestLine, this.requestHeaders, this.body, this.socketChannel.getRemoteAddress(), AppContext.contextPath());
+                this.body = null;
+            } else {
+                request = this.objectPool.request(requestLine, this.requestHeaders, this.socketChannel.getRemoteAddress(), AppContext.contextPath());
             }
-        }while (!this.buffer.hasRemaining());
-    }
-
-    private HttpRequestLine parseHttpRequestLine(byte[] lineBytes) throws UnsupportedEncodingException {
-        String lineStr = new String(lineBytes, Charset.forName("ISO-8859-1"));
-        lineStr = URLDecoder.decode(lineStr,"UTF-8");
-        String[] strings = lineStr.split("\\s+");
-        HttpRequestLine requestLine = new HttpRequestLine(HttpMethod.getHttpMethod(strings[0]), strings[1], strings[2]);
-        return requestLine;
-    }
-
-    private Multimap<String, HttpHeader> parseHttpRequestHeaders(byte[] headersBytes) throws UnsupportedEncodingException {
-        String headersStr = new String(headersBytes, Charset.forName("ISO-8859-1"));
-        headersStr = URLDecoder.decode(headersStr,"UTF-8");
-        String[] strings = headersStr.split("\r\n");
-        Multimap<String, HttpHeader> headers = LinkedListMultimap.create();
-        Arrays.asList(strings).forEach(s->{
-            String[] strings1 = s.split(": ");
-            headers.put(strings1[0], new HttpHeader(strings1[0], strings1[1]));
-        });
-        return headers;
-    }
-
-    private void clear(){
-        List<HttpHeader> headers = new ArrayList<>(this.requestHeaders.get("Connection"));
-        String s = headers.get(0).value();
-        boolean b = s.equalsIgnoreCase("close");
-        if(headers.size() == 1 && s.equalsIgnoreCase("close")){
+        } catch (IOException e) {
+            logger.error("", e);
+            throw new ProtocolParserException(e);
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolParserException("url decode error", e);
+        }
+        this.requestCount++;
+        boolean isH2cUpgrade = isH2cUpgrade();
+        if(isH2cUpgrade)
+            this.http2Settings = this.requestHeaders.get(HTTP2_SETTINGS);
+        // the header table belongs to the request from here on
+        this.requestHeaders = null;
+        if(isH2cUpgrade) {
+            this.objectPool.discard(request);
+            this.upgradeRequest = request;
+            this.isUpgrading = true;
+            this.outboundBuffer.add(ByteBuffer.wrap(SWITCHING_PROTOCOLS));
+            reset();
+            return;
+        }
+        WebSocketEndpoint endpoint = webSocketEndpoint(request);
+        if(endpoint != null) {
+            this.objectPool.discard(request);
+            this.webSocketEndpoint = endpoint;
+            this.upgradeRequest = request;
+            this.isUpgrading = true;
+            reset();
+            return;
+        }
+        this.requestQueue.add(request);
+        if(!this.keepAlive) {
+            this.isCloseRequested = true;
             this.isClosed = true;
-            return ;
         }
-        this.status = PARSINGLINE;
-        this.body = new byte[0];
-        this.headers = new byte[0];
-        this.line = new byte[0];
-        this.bodyOutputStream.reset();
-        this.outputStream.reset(this.offset);
-        this.buffer.clear();
-        this.contentLength = -1;
-        this.chunkedLength = -1;
+        reset();
+    }
+
+    /**
+     * Upgrade: h2c with exactly one HTTP2-Settings header, only taken when no response is
+     * pending since the switching protocols response must be the next one written
+     */
+    private boolean isH2cUpgrade(){
+        HeaderTable headers = this.requestHeaders;
+        int settings = headers.indexOf(HTTP2_SETTINGS);
+        if(!this.config.http2Enabled() || settings < 0 || headers.indexOf(HTTP2_SETTINGS, headers.hash(settings), settings + 1) >= 0
+                || pendingRequests() > 0 || !this.outboundBuffer.isEmpty())
+            return false;
+        int hash = HeaderTable.hash("Upgrade");
+        for(int i = headers.indexOf("Upgrade", hash, 0); i >= 0; i = headers.indexOf("Upgrade", hash, i + 1)){
+            for(String protocol : headers.value(i).split(",")){
+                if(protocol.trim().equalsIgnoreCase("h2c"))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the endpoint of a websocket handshake, only taken when no response is pending since the
+     * switching protocols response must be the next one written
+     */
+    private WebSocketEndpoint webSocketEndpoint(HttpRequest request){
+        if(this.webSocketMapping == null || this.webSocketMapping.isEmpty() || pendingRequests() > 0
+                || !this.outboundBuffer.isEmpty() || !WebSocketConnection.isHandshake(request))
+            return null;
+        return this.webSocketMapping.mappingEndpoint(request.uri());
+    }
+
+    private void reset(){
+        this.status = PARSINGMETHOD;
+        this.token.setLength(0);
+        this.lineLength = 0;
+        this.headerSize = 0;
+        this.method = null;
+        this.url = null;
+        this.protocol = null;
+        if(this.requestHeaders != null) {
+            this.objectPool.recycle(this.requestHeaders);
+            this.requestHeaders = null;
+        }
+        this.contentLength = 0;
+        this.hasContentLength = false;
         this.isChunked = false;
-        this.offset = 0;
-        this.requestLine = null;
-        this.requestHeaders = null;
+        this.hasTransferEncoding = false;
+        this.expectContinue = false;
+        // the body came without it, or the connection is closed
+        this.continueAfter = -1;
+        this.keepAlive = true;
+        this.chunkedLength = 0;
+        this.bodyRemaining = 0;
+        this.chunkedSize = 0;
+        this.contentType = null;
+        if(this.body != null) {
+            this.body.close();
+            this.body = null;
+        }
+        if(this.multipart != null) {
+            this.multipart.close();
+            this.multipart = null;
+        }
+    }
+
+    private HttpMethod parseMethod() throws ProtocolParserException {
+        String methodStr = takeToken();
+        try {
+            return HttpMethod.getHttpMethod(methodStr);
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolParserException("unsupported method " + methodStr, e);
+        }
+    }
+
+    private void appendLine(byte b) throws ProtocolParserException {
+        if(++this.lineLength > this.config.maxInitialLineLength())
+            throw new ProtocolParserException("request line is too long");
+        this.token.append((char) (b & 0xff));
+    }
+
+    private void appendHeader(byte b) throws ProtocolParserException {
+        if(++this.headerSize > this.config.maxHeaderSize())
+            throw new ProtocolParserException("request headers are too large");
+        this.requestHeaders.append(b);
+    }
+
+    private String takeToken(){
+        String s = this.token.toString();
+        this.token.setLength(0);
+        return s;
+    }
+
+    private void expect(byte b, byte expected) throws ProtocolParserException {
+        if(b != expected)
+            throw new ProtocolParserException("unexpected byte " + b + " in " + this.status.name());
+    }
+
+    /**
+     * the 100 Continue goes to the outbound buffer right after the responses to the requests
+     * before this one
+     */
+    private void sendContinue(){
+        this.continueAfter = pendingRequests();
+        if(this.continueAfter == 0)
+            continued();
+    }
+
+    private void continued(){
+        this.outboundBuffer.add(ByteBuffer.wrap(CONTINUE));
+        this.continueAfter = -1;
+    }
+
+    /**
+     * one read into the free part of the buffer, the buffer only grows when the parser could not
+     * consume anything of a full buffer
+     *
+     * @return true when the buffer was filled up, more bytes may be waiting in the socket
+     */
+    private boolean read() throws IOException {
+        if(this.buffer == null)
+            this.buffer = this.bufferPool.acquire(readState() == ReadState.BODY ? BODY_BUFFER_SIZE : INITIAL_BUFFER_SIZE);
+        if(!this.buffer.hasRemaining())
+            this.buffer = this.bufferPool.grow(this.buffer);
+        int count = this.socketChannel.read(this.buffer);
+        if(count < 0) {
+            this.isEof = true;
+            this.isClosed = true;
+        }
+        return count > 0 && !this.buffer.hasRemaining();
+    }
+
+    private int readable(){
+        return this.buffer == null ? 0 : this.buffer.position();
+    }
+
+    /**
+     * drop the consumed bytes, the buffer goes back to the pool when nothing is left
+     */
+    private void compact(){
+        if(this.buffer == null)
+            return;
+        this.buffer.flip();
+        this.buffer.position(this.position);
+        this.buffer.compact();
+        this.position = 0;
+        if(this.buffer.position() == 0){
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    /**
+     * the http/2 or websocket connection taking over once the preface, an Upgrade: h2c request or
+     * a websocket handshake is parsed, it owns the unparsed bytes and the outbound buffer from then on
+     */
+    @Override
+    public ProtocolParser upgrade(){
+        if(!this.isUpgrading)
+            return null;
+        if(this.upgraded == null) {
+            try {
+                if(this.webSocketEndpoint != null)
+                    this.upgraded = WebSocketConnection.upgrade(this.socketChannel, this.bufferPool, this.config, this.outboundBuffer, this.buffer, this.upgradeRequest, this.webSocketEndpoint);
+                else if(this.upgradeRequest == null)
+                    this.upgraded = Http2Connection.priorKnowledge(this.socketChannel, this.bufferPool, this.config, this.outboundBuffer, this.buffer, PREFACE_METHOD.length() + 1);
+                else
+                    this.upgraded = Http2Connection.upgrade(this.socketChannel, this.bufferPool, this.config, this.outboundBuffer, this.buffer, this.upgradeRequest, this.http2Settings);
+            } catch (ProtocolParserException e) {
+                logger.debug("{} upgrade failed: {}", this.webSocketEndpoint != null ? "websocket" : "h2c", e.getMessage());
+                this.isClosed = true;
+                this.isUpgrading = false;
+                ((TinyHttpRequest) this.upgradeRequest).release();
+                this.upgradeRequest = null;
+                return null;
+            }
+            this.buffer = null;
+            this.upgradeRequest = null;
+        }
+        return this.upgraded;
+    }
+
+    /**
+     * give the borrowed buffer back and drop what is not written, called when the connection is closed
+     */
+    @Override
+    public void release(){
+        this.outboundBuffer.clear();
+        dropPending();
+        reset();
+        if(this.buffer != null){
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    /**
+     * abort the responses not written yet and forget the requests not dispatched yet
+     */
+    private void dropPending(){
+        for(ResponseSlot slot : this.responseSlots){
+            slot.abort();
+            // the handler of a slot not done yet gives its response back itself
+            if(slot.isDone())
+                recycle(slot.response());
+        }
+        this.responseSlots.clear();
+        HttpRequest request;
+        while((request = this.requestQueue.poll()) != null) {
+            ((TinyHttpRequest) request).release();
+            this.objectPool.recycle(request);
+        }
     }
 
     @Override
@@ -286,27 +766,169 @@ public class HttpProtocolParser implements ProtocolParser {
         return null;
     }
 
-    public ByteBuffer takeHttpResponseBuffer(){
-        try {
-            return this.responseBuffers.remove(0);
-        } catch (IndexOutOfBoundsException e){
-            return null;
+    /**
+     * take the place of the next request in the response order
+     */
+    @Override
+    public ResponseSlot reserve(HttpRequest request, HttpResponse response){
+        ResponseSlot slot = new ResponseSlot(response);
+        if(response instanceof TinyHttpResponse && "HTTP/1.0".equals(request.protocol()))
+            ((TinyHttpResponse) response).chunkable(false);
+        this.responseSlots.addLast(slot);
+        return slot;
+    }
+
+    /**
+     * mark the slot done and move every leading finished response to the outbound buffer,
+     * so ready responses go out together and always in request order
+     */
+    public void complete(ResponseSlot slot){
+        slot.done();
+        flushSlots();
+    }
+
+    /**
+     * a response is given back once it is in the outbound buffer, or here when its slot was
+     * dropped before it was done. an async request or response may still be held by its
+     * handler, it is left to the gc
+     */
+    @Override
+    public void recycle(HttpRequest request, ResponseSlot slot){
+        HttpResponse response = slot.response();
+        if(slot.isAborted() && !slot.isDone())
+            recycle(response);
+        if(response.isAsync())
+            this.objectPool.discard(request);
+        else
+            this.objectPool.recycle(request);
+    }
+
+    private void recycle(HttpResponse response){
+        if(response.isAsync())
+            this.objectPool.discard(response);
+        else
+            this.objectPool.recycle(response);
+    }
+
+    /**
+     * a part of a committed response, it goes to the outbound buffer at once when the response
+     * is the first one of the connection and waits in its slot otherwise
+     */
+    public void stream(ResponseSlot slot, ByteBuffer[] buffers){
+        slot.stream(buffers);
+        flushSlots();
+    }
+
+    private void flushSlots(){
+        ResponseSlot first;
+        while((first = this.responseSlots.peekFirst()) != null){
+            first.drainTo(this.outboundBuffer);
+            if(!first.isDone())
+                break;
+            this.responseSlots.pollFirst();
+            putHttpResponse(first.response());
+            boolean isCloseDelimited = isCloseDelimited(first.response());
+            recycle(first.response());
+            if(isCloseDelimited) {
+                // the client reads the body until the connection is closed, nothing may follow it
+                this.isCloseRequested = true;
+                this.isClosed = true;
+                this.continueAfter = -1;
+                dropPending();
+                break;
+            }
+            if(this.continueAfter > 0 && --this.continueAfter == 0)
+                continued();
         }
     }
 
-    public HttpResponse genHttpResponse(){
-        return new TinyHttpResponse();
+    private static boolean isCloseDelimited(HttpResponse response){
+        return response instanceof TinyHttpResponse && ((TinyHttpResponse) response).isCloseDelimited();
     }
 
-    public void putHttpResponse(HttpResponse response){
-        this.responseBuffers.add(ByteBuffer.wrap(response.rawByte()));
+    public ReadState readState(){
+        switch (this.status) {
+            case PARSINGMETHOD:
+                return this.lineLength == 0 ? ReadState.IDLE : ReadState.HEADERS;
+            case PARSINGURI:
+            case PARSINGVERSION:
+            case PARSINGLINEEND:
+            case PARSINGHEADERNAME:
+            case PARSINGHEADERVALUE:
+            case PARSINGHEADERLINEEND:
+            case PARSINGHEADERSEND:
+                return ReadState.HEADERS;
+            default:
+                return ReadState.BODY;
+        }
+    }
+
+    public Timeout timeout() {
+        return timeout;
+    }
+
+    public void timeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    public int pendingRequests(){
+        return this.requestQueue.size() + this.responseSlots.size();
+    }
+
+    /**
+     * too many requests wait for their responses, or the responses written wait for the client
+     */
+    public boolean isPipelineFull(){
+        return pendingRequests() >= this.config.maxPipelinedRequests() || !this.outboundBuffer.isWritable();
+    }
+
+    public OutboundBuffer outboundBuffer(){
+        return this.outboundBuffer;
     }
 
-    public void putResponseBuffer(ByteBuffer buffer){
-        this.responseBuffers.add(0, buffer);
+    public HttpResponse genHttpResponse(){
+        return this.objectPool.response();
+    }
+
+    public void putHttpResponse(HttpResponse response){
+        if(response instanceof TinyHttpResponse) {
+            TinyHttpResponse tinyHttpResponse = (TinyHttpResponse) response;
+            this.outboundBuffer.add(tinyHttpResponse.byteBuffers());
+            if(tinyHttpResponse.fileRegion() != null)
+                this.outboundBuffer.add(tinyHttpResponse.fileRegion());
+        } else
+            this.outboundBuffer.add(ByteBuffer.wrap(response.rawByte()));
     }
 
+    /**
+     * no more request will be read from the connection: the client asked to close it or
+     * shut down its output
+     */
     public boolean isClosed() {
         return isClosed;
     }
+
+    public boolean isEof() {
+        return isEof;
+    }
+
+    /**
+     * the connection can be closed once every parsed request has been answered, or at once when
+     * the client went away while an async response is pending
+     */
+    public boolean isFinished() {
+        return this.isClosed && ((this.requestQueue.isEmpty() && this.responseSlots.isEmpty() && this.outboundBuffer.isEmpty())
+                || (this.isEof && isAsyncPending()));
+    }
+
+    /**
+     * an async response may never end, nobody reads it once the client went away
+     */
+    private boolean isAsyncPending(){
+        for(ResponseSlot slot : this.responseSlots){
+            if(slot.response().isAsync())
+                return true;
+        }
+        return false;
+    }
 }
@@ -1,9 +1,19 @@
 package me.stevenkin.boomvc.server.parser.http;
 
 public enum ParseStatus {
-    PARSINGLINE,
-    PARSINGHEADERS,
+    PARSINGMETHOD,
+    PARSINGURI,
+    PARSINGVERSION,
+    PARSINGLINEEND,
+    PARSINGHEADERNAME,
+    PARSINGHEADERVALUE,
+    PARSINGHEADERLINEEND,
+    PARSINGHEADERSEND,
     PARSINGBODY,
     PARSINGCHUNKEDLENGTH,
-    PARSINGCHUNKEDBODY
+    PARSINGCHUNKEDEXTENSION,
+    PARSINGCHUNKEDLENGTHEND,
+    PARSINGCHUNKEDBODY,
+    PARSINGCHUNKEDBODYEND,
+    PARSINGTRAILERS
 }
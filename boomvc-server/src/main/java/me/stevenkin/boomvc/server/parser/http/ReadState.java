@@ -0,0 +1,10 @@
+package me.stevenkin.boomvc.server.parser.http;
+
+/**
+ * what the parser is waiting for, decides which read timeout applies to the connection
+ */
+public enum ReadState {
+    IDLE,
+    HEADERS,
+    BODY
+}
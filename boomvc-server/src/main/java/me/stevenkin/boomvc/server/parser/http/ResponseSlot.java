@@ -0,0 +1,76 @@
+package me.stevenkin.boomvc.server.parser.http;
+
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
+import me.stevenkin.boomvc.server.http.TinyHttpResponse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the place of a dispatched request in the response order of its connection, a response
+ * finished out of order waits in its slot until the responses before it are written, so do the
+ * streamed parts of a response which is not the first one
+ */
+public class ResponseSlot {
+
+    private HttpResponse response;
+
+    private boolean done = false;
+
+    private List<ByteBuffer> streamed;
+
+    /**
+     * set when the connection is closed, read by the thread streaming the response
+     */
+    private volatile boolean aborted = false;
+
+    public ResponseSlot(HttpResponse response) {
+        this.response = response;
+    }
+
+    public HttpResponse response() {
+        return response;
+    }
+
+    public void response(HttpResponse response) {
+        this.response = response;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    void done() {
+        this.done = true;
+    }
+
+    void stream(ByteBuffer[] buffers) {
+        if(this.streamed == null)
+            this.streamed = new ArrayList<>();
+        for(ByteBuffer buffer : buffers)
+            this.streamed.add(buffer);
+    }
+
+    void drainTo(OutboundBuffer outboundBuffer) {
+        if(this.streamed == null)
+            return;
+        for(ByteBuffer buffer : this.streamed)
+            outboundBuffer.add(buffer);
+        this.streamed = null;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * an async response hears of it at once, it may never end by itself
+     */
+    protected void abort() {
+        this.aborted = true;
+        if(this.response instanceof TinyHttpResponse)
+            ((TinyHttpResponse) this.response).abort();
+    }
+}
@@ -0,0 +1,992 @@
+package me.stevenkin.boomvc.server.parser.http2;
+
+import me.stevenkin.boomvc.http.*;
+import me.stevenkin.boomvc.http.kit.DateKit;
+import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
+import me.stevenkin.boomvc.server.exception.Http2Exception;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.http.HeaderTable;
+import me.stevenkin.boomvc.server.http.RequestBody;
+import me.stevenkin.boomvc.server.http.TinyHttpRequest;
+import me.stevenkin.boomvc.server.http.TinyHttpResponse;
+import me.stevenkin.boomvc.server.parser.HttpRequestParser;
+import me.stevenkin.boomvc.server.parser.ProtocolParser;
+import me.stevenkin.boomvc.server.parser.http.HttpParserConfig;
+import me.stevenkin.boomvc.server.parser.http.ReadState;
+import me.stevenkin.boomvc.server.parser.http.ResponseSlot;
+import me.stevenkin.boomvc.server.parser.http2.hpack.HpackDecoder;
+import me.stevenkin.boomvc.server.parser.http2.hpack.HpackEncoder;
+import me.stevenkin.boomvc.server.parser.multipart.MultipartParser;
+import me.stevenkin.boomvc.server.timer.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import static me.stevenkin.boomvc.server.exception.Http2Exception.*;
+
+/**
+ * an http/2 connection over clear text (h2c), entered with the connection preface or with an
+ * Upgrade: h2c request. every stream becomes one HttpRequest dispatched like an http/1.1 one,
+ * responses are sent as soon as they complete in any order. the bodies are cut into DATA frames
+ * round robin over the streams, as far as the flow control windows of the peer allow and only
+ * while little is waiting in the outbound buffer, so one large response does not hold the others
+ * back. server push is not supported and priorities are ignored
+ */
+public class Http2Connection implements HttpRequestParser {
+    private static final Logger logger = LoggerFactory.getLogger(Http2Connection.class);
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(ISO_8859_1);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+
+    private static final int MAX_FRAME_SIZE = 16777215;
+
+    private static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * DATA frames are only cut while less than this waits in the outbound buffer, the rest is
+     * framed when it has drained
+     */
+    private static final int MAX_OUTBOUND_DATA = 64 * 1024;
+
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    /**
+     * streams reset by the server which are remembered, the frames the peer sent before it saw
+     * the RST_STREAM are dropped without answering each of them with another one
+     */
+    private static final int MAX_RESET_STREAMS = 128;
+
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"));
+
+    private SocketChannel socketChannel;
+
+    private BufferPool bufferPool;
+
+    private HttpParserConfig config;
+
+    private OutboundBuffer outboundBuffer;
+
+    /**
+     * kept in write mode like the buffer of the http/1.1 parser: the readable bytes are [0, position)
+     */
+    private ByteBuffer buffer;
+
+    private int position = 0;
+
+    /**
+     * bytes of the client preface matched so far
+     */
+    private int prefaceIndex;
+
+    private boolean isSettingsReceived = false;
+
+    private HpackDecoder decoder;
+
+    private HpackEncoder encoder = new HpackEncoder();
+
+    private Map<Integer, Http2Stream> streams = new HashMap<>();
+
+    /**
+     * ids of the streams recently reset by the server, the oldest is forgotten first
+     */
+    private Set<Integer> resetStreams = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+            return size() > MAX_RESET_STREAMS;
+        }
+    });
+
+    private Queue<HttpRequest> requestQueue = new ArrayDeque<>();
+
+    /**
+     * the stream of every parsed request, until it is reserved
+     */
+    private Map<HttpRequest, Http2Stream> parsedStreams = new IdentityHashMap<>();
+
+    /**
+     * streams with something to send, served round robin
+     */
+    private Deque<Http2Stream> sending = new ArrayDeque<>();
+
+    /**
+     * streams dispatched and not completed yet
+     */
+    private int responding = 0;
+
+    private int lastStreamId = 0;
+
+    /**
+     * the stream of the header block being received, 0 when none is
+     */
+    private int headerStreamId = 0;
+
+    private boolean headerEndStream;
+
+    private ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    private int sendWindow = DEFAULT_WINDOW_SIZE;
+
+    private int recvWindow = DEFAULT_WINDOW_SIZE;
+
+    private int recvUnacked = 0;
+
+    private boolean isClosed = false;
+
+    private boolean isGoAwayReceived = false;
+
+    private Timeout timeout;
+
+    private Http2Connection(SocketChannel socketChannel, BufferPool bufferPool, HttpParserConfig config,
+                            OutboundBuffer outboundBuffer, ByteBuffer buffer, int prefaceIndex) {
+        this.socketChannel = socketChannel;
+        this.bufferPool = bufferPool;
+        this.config = config;
+        this.outboundBuffer = outboundBuffer;
+        this.buffer = buffer;
+        this.prefaceIndex = prefaceIndex;
+        this.decoder = new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE, config.maxHeaderSize());
+        sendSettings();
+    }
+
+    /**
+     * the client started with the connection preface, the first bytes of it are already consumed
+     *
+     * @param buffer the bytes read after them, owned by the connection from now on
+     */
+    public static Http2Connection priorKnowledge(SocketChannel socketChannel, BufferPool bufferPool, HttpParserConfig config,
+                                                 OutboundBuffer outboundBuffer, ByteBuffer buffer, int prefaceConsumed) {
+        return new Http2Connection(socketChannel, bufferPool, config, outboundBuffer, buffer, prefaceConsumed);
+    }
+
+    /**
+     * the client asked for h2c with an http/1.1 request, which is answered on stream 1. the
+     * switching protocols response must already be in the outbound buffer
+     *
+     * @param settings the base64url HTTP2-Settings header of the request
+     */
+    public static Http2Connection upgrade(SocketChannel socketChannel, BufferPool bufferPool, HttpParserConfig config,
+                                          OutboundBuffer outboundBuffer, ByteBuffer buffer, HttpRequest request,
+                                          String settings) throws ProtocolParserException {
+        Http2Connection connection = new Http2Connection(socketChannel, bufferPool, config, outboundBuffer, buffer, 0);
+        try {
+            connection.settings(ByteBuffer.wrap(Base64.getUrlDecoder().decode(settings.trim())));
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolParserException("illegal HTTP2-Settings header", e);
+        }
+        Http2Stream stream = new Http2Stream(1, connection.peerInitialWindowSize, config.http2InitialWindowSize());
+        stream.isRemoteClosed = true;
+        connection.streams.put(1, stream);
+        connection.lastStreamId = 1;
+        connection.requestQueue.add(request);
+        connection.parsedStreams.put(request, stream);
+        return connection;
+    }
+
+    @Override
+    public void parser() throws ProtocolParserException {
+        boolean filled;
+        int reads = 0;
+        do {
+            try {
+                filled = read();
+            } catch (IOException e) {
+                logger.error("", e);
+                throw new ProtocolParserException("a io exception happened when readed data", e);
+            }
+            resume();
+        } while(filled && ++reads < MAX_READS_PER_EVENT && !this.isClosed);
+    }
+
+    /**
+     * parse the frames read so far and frame the response bodies which may go out now
+     */
+    @Override
+    public void resume() {
+        try {
+            if(!this.isClosed)
+                parseFrames();
+        } catch (Http2Exception e) {
+            logger.debug("http/2 connection error {}: {}", e.errorCode(), e.getMessage());
+            goAway(e.errorCode());
+        }
+        compact();
+        flushData();
+    }
+
+    private void parseFrames() throws Http2Exception {
+        int limit = readable();
+        while(this.prefaceIndex < PREFACE.length && this.position < limit){
+            if(this.buffer.get(this.position++) != PREFACE[this.prefaceIndex++])
+                throw new Http2Exception(PROTOCOL_ERROR, "illegal connection preface");
+        }
+        while(!this.isClosed && limit - this.position >= FRAME_HEADER_LENGTH){
+            int length = (this.buffer.get(this.position) & 0xff) << 16 | (this.buffer.get(this.position + 1) & 0xff) << 8
+                    | (this.buffer.get(this.position + 2) & 0xff);
+            if(length > DEFAULT_MAX_FRAME_SIZE)
+                throw new Http2Exception(FRAME_SIZE_ERROR, "frame of " + length + " bytes is too large");
+            if(limit - this.position < FRAME_HEADER_LENGTH + length)
+                break;
+            int type = this.buffer.get(this.position + 3) & 0xff;
+            int flags = this.buffer.get(this.position + 4) & 0xff;
+            int streamId = this.buffer.getInt(this.position + 5) & 0x7fffffff;
+            ByteBuffer payload = this.buffer.duplicate();
+            payload.limit(this.position + FRAME_HEADER_LENGTH + length).position(this.position + FRAME_HEADER_LENGTH);
+            this.position += FRAME_HEADER_LENGTH + length;
+            if(!this.isSettingsReceived && type != SETTINGS)
+                throw new Http2Exception(PROTOCOL_ERROR, "the connection preface must end with SETTINGS");
+            try {
+                frame(type, flags, streamId, payload);
+            } catch (Http2Exception e) {
+                if(e.streamId() == 0)
+                    throw e;
+                logger.debug("http/2 stream {} error {}: {}", e.streamId(), e.errorCode(), e.getMessage());
+                resetStream(e.streamId(), e.errorCode());
+            }
+        }
+    }
+
+    private void frame(int type, int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if(this.headerStreamId != 0 && type != CONTINUATION)
+            throw new Http2Exception(PROTOCOL_ERROR, "header block of stream " + this.headerStreamId + " is interrupted");
+        switch (type) {
+            case DATA:
+                data(flags, streamId, payload);
+                break;
+            case HEADERS:
+                headers(flags, streamId, payload);
+                break;
+            case PRIORITY:
+                if(streamId == 0)
+                    throw new Http2Exception(PROTOCOL_ERROR, "PRIORITY on stream 0");
+                if(payload.remaining() != 5)
+                    throw new Http2Exception(FRAME_SIZE_ERROR, streamId, "illegal PRIORITY length");
+                break;
+            case RST_STREAM:
+                rstStream(streamId, payload);
+                break;
+            case SETTINGS:
+                if(streamId != 0)
+                    throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+                if((flags & FLAG_ACK) != 0) {
+                    if(payload.hasRemaining())
+                        throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS ack with a payload");
+                    break;
+                }
+                settings(payload);
+                this.isSettingsReceived = true;
+                writeFrame(SETTINGS, FLAG_ACK, 0);
+                break;
+            case PUSH_PROMISE:
+                throw new Http2Exception(PROTOCOL_ERROR, "PUSH_PROMISE from a client");
+            case PING:
+                if(streamId != 0)
+                    throw new Http2Exception(PROTOCOL_ERROR, "PING on stream " + streamId);
+                if(payload.remaining() != 8)
+                    throw new Http2Exception(FRAME_SIZE_ERROR, "illegal PING length");
+                if((flags & FLAG_ACK) == 0)
+                    writeFrame(PING, FLAG_ACK, 0, ByteBuffer.wrap(copy(payload)));
+                break;
+            case GOAWAY:
+                if(streamId != 0)
+                    throw new Http2Exception(PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+                this.isGoAwayReceived = true;
+                break;
+            case WINDOW_UPDATE:
+                windowUpdate(streamId, payload);
+                break;
+            case CONTINUATION:
+                if(streamId == 0 || streamId != this.headerStreamId)
+                    throw new Http2Exception(PROTOCOL_ERROR, "unexpected CONTINUATION on stream " + streamId);
+                headerFragment(flags, payload);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void data(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if(streamId == 0)
+            throw new Http2Exception(PROTOCOL_ERROR, "DATA on stream 0");
+        int length = payload.remaining();
+        this.recvWindow -= length;
+        if(this.recvWindow < 0)
+            throw new Http2Exception(FLOW_CONTROL_ERROR, "connection receive window exceeded");
+        consumed(null, length);
+        Http2Stream stream = this.streams.get(streamId);
+        if(stream == null && this.resetStreams.contains(streamId))
+            return;
+        if(stream == null || stream.isRemoteClosed) {
+            if(streamId > this.lastStreamId)
+                throw new Http2Exception(PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            throw new Http2Exception(STREAM_CLOSED, streamId, "DATA on closed stream");
+        }
+        stream.recvWindow -= length;
+        if(stream.recvWindow < 0)
+            throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "stream receive window exceeded");
+        unpad(flags, payload);
+        stream.received += payload.remaining();
+        if(stream.received > this.config.maxContentLength())
+            throw new Http2Exception(ENHANCE_YOUR_CALM, streamId, "request body is too large");
+        try {
+            if(stream.multipart != null)
+                stream.multipart.write(payload);
+            else if(stream.body != null)
+                stream.body.write(payload);
+        } catch (IOException | ProtocolParserException e) {
+            logger.error("", e);
+            throw new Http2Exception(CANCEL, streamId, "can not write request body");
+        }
+        if((flags & FLAG_END_STREAM) != 0)
+            requestParsed(stream);
+        else
+            consumed(stream, length);
+    }
+
+    /**
+     * hand the window back once half of it is consumed, so a sender is never stalled and
+     * WINDOW_UPDATE frames stay few
+     */
+    private void consumed(Http2Stream stream, int length){
+        int window = this.config.http2InitialWindowSize();
+        if(stream == null) {
+            this.recvUnacked += length;
+            if(this.recvUnacked >= window / 2) {
+                writeWindowUpdate(0, this.recvUnacked);
+                this.recvWindow += this.recvUnacked;
+                this.recvUnacked = 0;
+            }
+            return;
+        }
+        stream.recvUnacked += length;
+        if(stream.recvUnacked >= window / 2) {
+            writeWindowUpdate(stream.id, stream.recvUnacked);
+            stream.recvWindow += stream.recvUnacked;
+            stream.recvUnacked = 0;
+        }
+    }
+
+    private void headers(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if(streamId == 0)
+            throw new Http2Exception(PROTOCOL_ERROR, "HEADERS on stream 0");
+        unpad(flags, payload);
+        if((flags & FLAG_PRIORITY) != 0) {
+            if(payload.remaining() < 5)
+                throw new Http2Exception(PROTOCOL_ERROR, "illegal HEADERS priority");
+            payload.position(payload.position() + 5);
+        }
+        this.headerStreamId = streamId;
+        this.headerEndStream = (flags & FLAG_END_STREAM) != 0;
+        this.headerBlock.reset();
+        headerFragment(flags, payload);
+    }
+
+    private void headerFragment(int flags, ByteBuffer payload) throws Http2Exception {
+        if(this.headerBlock.size() + payload.remaining() > this.config.maxHeaderSize())
+            throw new Http2Exception(ENHANCE_YOUR_CALM, "header block is too large");
+        byte[] bytes = copy(payload);
+        this.headerBlock.write(bytes, 0, bytes.length);
+        if((flags & FLAG_END_HEADERS) != 0)
+            headersParsed();
+    }
+
+    private void headersParsed() throws Http2Exception {
+        int streamId = this.headerStreamId;
+        this.headerStreamId = 0;
+        byte[] block = this.headerBlock.toByteArray();
+        this.headerBlock.reset();
+        List<HttpHeader> fields = this.decoder.decode(block, 0, block.length);
+        Http2Stream stream = this.streams.get(streamId);
+        if(stream == null && this.resetStreams.contains(streamId))
+            return;
+        if(stream != null) {
+            if(stream.isRemoteClosed)
+                throw new Http2Exception(STREAM_CLOSED, streamId, "HEADERS on closed stream");
+            if(!this.headerEndStream)
+                throw new Http2Exception(PROTOCOL_ERROR, streamId, "trailers without END_STREAM");
+            requestParsed(stream);
+            return;
+        }
+        if(streamId <= this.lastStreamId || (streamId & 1) == 0)
+            throw new Http2Exception(PROTOCOL_ERROR, "illegal stream id " + streamId);
+        this.lastStreamId = streamId;
+        if(this.isClosed)
+            return;
+        if(fields == null)
+            throw new Http2Exception(ENHANCE_YOUR_CALM, streamId, "request headers are too large");
+        if(this.streams.size() >= this.config.http2MaxConcurrentStreams())
+            throw new Http2Exception(REFUSED_STREAM, streamId, "too many concurrent streams");
+        stream = new Http2Stream(streamId, this.peerInitialWindowSize, this.config.http2InitialWindowSize());
+        this.streams.put(streamId, stream);
+        requestHeaders(stream, fields);
+        if(this.headerEndStream) {
+            requestParsed(stream);
+            return;
+        }
+        String contentType = stream.headers.get(HttpConst.CONTENT_TYPE_STRING);
+        String boundary = stream.method == HttpMethod.POST ? MultipartParser.boundary(contentType) : null;
+        if(boundary != null) {
+            stream.multipart = new MultipartParser(boundary, this.config.maxHeaderSize(), this.config.bodySpoolThreshold(), this.config.bodySpoolDirectory());
+            return;
+        }
+        String length = stream.headers.get(HttpConst.CONTENT_LENGTH);
+        long contentLength = length == null ? -1 : parseLong(length);
+        if(contentLength > this.config.maxContentLength())
+            throw new Http2Exception(ENHANCE_YOUR_CALM, streamId, "content length " + contentLength + " is too large");
+        try {
+            stream.body = new RequestBody(contentLength, this.config.bodySpoolThreshold(), this.config.bodySpoolDirectory());
+        } catch (IOException e) {
+            logger.error("", e);
+            throw new Http2Exception(CANCEL, streamId, "can not spool request body");
+        }
+    }
+
+    /**
+     * the pseudo headers become the request line, the names get the case http/1.1 clients send,
+     * split cookie fields are joined again
+     */
+    private void requestHeaders(Http2Stream stream, List<HttpHeader> fields) throws Http2Exception {
+        String method = null;
+        String path = null;
+        String authority = null;
+        StringBuilder cookie = null;
+        stream.headers = new HeaderTable();
+        for(HttpHeader field : fields){
+            String name = field.name();
+            if(name.startsWith(":")) {
+                if(!stream.headers.isEmpty())
+                    throw new Http2Exception(PROTOCOL_ERROR, stream.id, "pseudo header after a regular header");
+                if(name.equals(":method"))
+                    method = field.value();
+                else if(name.equals(":path"))
+                    path = field.value();
+                else if(name.equals(":authority"))
+                    authority = field.value();
+                else if(!name.equals(":scheme"))
+                    throw new Http2Exception(PROTOCOL_ERROR, stream.id, "unknown pseudo header " + name);
+                continue;
+            }
+            if(CONNECTION_HEADERS.contains(name))
+                throw new Http2Exception(PROTOCOL_ERROR, stream.id, "connection header " + name);
+            if(name.equals("cookie")) {
+                cookie = cookie == null ? new StringBuilder(field.value()) : cookie.append("; ").append(field.value());
+                continue;
+            }
+            stream.headers.add(canonicalName(name), field.value());
+        }
+        if(method == null || path == null)
+            throw new Http2Exception(PROTOCOL_ERROR, stream.id, "missing :method or :path");
+        if(cookie != null)
+            stream.headers.add("Cookie", cookie.toString());
+        if(authority != null && !stream.headers.contains("Host"))
+            stream.headers.add("Host", authority);
+        stream.url = path;
+        try {
+            stream.method = HttpMethod.getHttpMethod(method);
+        } catch (IllegalArgumentException e) {
+            throw new Http2Exception(PROTOCOL_ERROR, stream.id, "illegal request " + method + " " + path);
+        }
+    }
+
+    private void requestParsed(Http2Stream stream) throws Http2Exception {
+        stream.isRemoteClosed = true;
+        HttpRequestLine requestLine = new HttpRequestLine(stream.method, stream.url, "HTTP/2.0");
+        HttpRequest request;
+        try {
+            if(stream.multipart != null) {
+                stream.multipart.finish();
+                request = TinyHttpRequest.of(requestLine, stream.headers, stream.multipart.parameters(), stream.multipart.fileItems(), this.socketChannel.getRemoteAddress(), AppContext.contextPath());
+                stream.multipart = null;
+            } else if(stream.body != null) {
+                stream.body.finish();
+                request = TinyHttpRequest.of(requestLine, stream.headers, stream.body, this.socketChannel.getRemoteAddress(), AppContext.contextPath());
+                stream.body = null;
+            } else {
+                request = TinyHttpRequest.of(requestLine, stream.headers, this.socketChannel.getRemoteAddress(), AppContext.contextPath());
+            }
+        } catch (IOException | ProtocolParserException | IllegalArgumentException e) {
+            logger.error("", e);
+            throw new Http2Exception(PROTOCOL_ERROR, stream.id, "illegal request body");
+        }
+        stream.headers = null;
+        this.requestQueue.add(request);
+        this.parsedStreams.put(request, stream);
+    }
+
+    private void rstStream(int streamId, ByteBuffer payload) throws Http2Exception {
+        if(streamId == 0 || streamId > this.lastStreamId)
+            throw new Http2Exception(PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        if(payload.remaining() != 4)
+            throw new Http2Exception(FRAME_SIZE_ERROR, "illegal RST_STREAM length");
+        Http2Stream stream = this.streams.remove(streamId);
+        if(stream != null)
+            stream.cancel();
+    }
+
+    private void settings(ByteBuffer payload) throws Http2Exception {
+        if(payload.remaining() % 6 != 0)
+            throw new Http2Exception(FRAME_SIZE_ERROR, "illegal SETTINGS length");
+        while(payload.hasRemaining()){
+            int id = payload.getShort() & 0xffff;
+            int value = payload.getInt();
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    this.encoder.maxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if(value != 0 && value != 1)
+                        throw new Http2Exception(PROTOCOL_ERROR, "illegal SETTINGS_ENABLE_PUSH");
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if(value < 0)
+                        throw new Http2Exception(FLOW_CONTROL_ERROR, "illegal SETTINGS_INITIAL_WINDOW_SIZE");
+                    int delta = value - this.peerInitialWindowSize;
+                    for(Http2Stream stream : this.streams.values()){
+                        if(delta > 0 && stream.sendWindow > Integer.MAX_VALUE - delta)
+                            throw new Http2Exception(FLOW_CONTROL_ERROR, "stream send window overflow");
+                        stream.sendWindow += delta;
+                    }
+                    this.peerInitialWindowSize = value;
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if(value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE)
+                        throw new Http2Exception(PROTOCOL_ERROR, "illegal SETTINGS_MAX_FRAME_SIZE");
+                    this.peerMaxFrameSize = value;
+                    break;
+                case SETTINGS_MAX_CONCURRENT_STREAMS:
+                case SETTINGS_MAX_HEADER_LIST_SIZE:
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void windowUpdate(int streamId, ByteBuffer payload) throws Http2Exception {
+        if(payload.remaining() != 4)
+            throw new Http2Exception(FRAME_SIZE_ERROR, "illegal WINDOW_UPDATE length");
+        int increment = payload.getInt() & 0x7fffffff;
+        if(streamId == 0) {
+            if(increment == 0)
+                throw new Http2Exception(PROTOCOL_ERROR, "WINDOW_UPDATE of 0");
+            if(this.sendWindow > Integer.MAX_VALUE - increment)
+                throw new Http2Exception(FLOW_CONTROL_ERROR, "connection send window overflow");
+            this.sendWindow += increment;
+            return;
+        }
+        if(streamId > this.lastStreamId)
+            throw new Http2Exception(PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream " + streamId);
+        Http2Stream stream = this.streams.get(streamId);
+        if(stream == null)
+            return;
+        if(increment == 0)
+            throw new Http2Exception(PROTOCOL_ERROR, streamId, "WINDOW_UPDATE of 0");
+        if(stream.sendWindow > Integer.MAX_VALUE - increment)
+            throw new Http2Exception(FLOW_CONTROL_ERROR, streamId, "stream send window overflow");
+        stream.sendWindow += increment;
+    }
+
+    private void unpad(int flags, ByteBuffer payload) throws Http2Exception {
+        if((flags & FLAG_PADDED) == 0)
+            return;
+        if(!payload.hasRemaining())
+            throw new Http2Exception(PROTOCOL_ERROR, "missing pad length");
+        int padLength = payload.get() & 0xff;
+        if(padLength > payload.remaining())
+            throw new Http2Exception(PROTOCOL_ERROR, "padding exceeds the frame");
+        payload.limit(payload.limit() - padLength);
+    }
+
+    private void resetStream(int streamId, int errorCode){
+        writeFrame(RST_STREAM, 0, streamId, intBuffer(errorCode));
+        this.resetStreams.add(streamId);
+        Http2Stream stream = this.streams.remove(streamId);
+        if(stream != null)
+            stream.cancel();
+    }
+
+    /**
+     * a connection error: tell the peer the last stream which may have been processed, answer
+     * nothing more and close once GOAWAY is written
+     */
+    private void goAway(int errorCode){
+        ByteBuffer payload = ByteBuffer.allocate(8);
+        payload.putInt(this.lastStreamId).putInt(errorCode).flip();
+        writeFrame(GOAWAY, 0, 0, payload);
+        this.isClosed = true;
+        cancelStreams();
+    }
+
+    private void cancelStreams(){
+        this.streams.values().forEach(Http2Stream::cancel);
+        this.streams.clear();
+        this.sending.clear();
+        HttpRequest request;
+        while((request = this.requestQueue.poll()) != null)
+            ((TinyHttpRequest) request).release();
+        this.parsedStreams.values().forEach(Http2Stream::cancel);
+        this.parsedStreams.clear();
+        this.headerBlock.reset();
+    }
+
+    @Override
+    public boolean parsed() {
+        return !this.requestQueue.isEmpty();
+    }
+
+    @Override
+    public HttpRequest takeHttpRequest() {
+        return this.requestQueue.poll();
+    }
+
+    @Override
+    public HttpResponse genHttpResponse() {
+        return new TinyHttpResponse(true);
+    }
+
+    @Override
+    public ResponseSlot reserve(HttpRequest request, HttpResponse response) {
+        Http2Stream stream = this.parsedStreams.remove(request);
+        if(stream == null)
+            throw new IllegalStateException("request is not parsed by this connection");
+        stream.response(response);
+        this.responding++;
+        return stream;
+    }
+
+    /**
+     * the headers go out at once, the body is framed as the windows allow
+     */
+    @Override
+    public void complete(ResponseSlot slot) {
+        Http2Stream stream = (Http2Stream) slot;
+        this.responding--;
+        if(stream.isAborted())
+            return;
+        TinyHttpResponse response = (TinyHttpResponse) stream.response();
+        stream.enqueue(response.byteBuffers());
+        if(response.fileRegion() != null)
+            stream.enqueue(response.fileRegion());
+        stream.isFinished = true;
+        if(!stream.isHeadersSent) {
+            writeHeaders(stream, response, !stream.hasData());
+            if(!stream.hasData()) {
+                endStreamSent(stream);
+                return;
+            }
+        }
+        send(stream);
+    }
+
+    @Override
+    public void stream(ResponseSlot slot, ByteBuffer[] buffers) {
+        Http2Stream stream = (Http2Stream) slot;
+        if(stream.isAborted())
+            return;
+        if(!stream.isHeadersSent)
+            writeHeaders(stream, (TinyHttpResponse) stream.response(), false);
+        stream.enqueue(buffers);
+        send(stream);
+    }
+
+    private void send(Http2Stream stream){
+        if(!this.sending.contains(stream))
+            this.sending.addLast(stream);
+        flushData();
+    }
+
+    private void writeHeaders(Http2Stream stream, TinyHttpResponse response, boolean endStream){
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        this.encoder.begin(block);
+        this.encoder.encode(":status", Integer.toString(response.responseLine().status()), block);
+        HeaderTable headers = response.headers();
+        if(!headers.contains(HttpConst.DATE))
+            this.encoder.encode("date", DateKit.currentHttpDate(), block);
+        for(int i = 0; i < headers.size(); i++){
+            String name = headers.name(i).toLowerCase(Locale.ROOT);
+            if(!CONNECTION_HEADERS.contains(name))
+                this.encoder.encode(name, headers.value(i), block);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(block.toByteArray());
+        int type = HEADERS;
+        do {
+            ByteBuffer fragment = bytes.duplicate();
+            fragment.limit(fragment.position() + Math.min(bytes.remaining(), this.peerMaxFrameSize));
+            bytes.position(fragment.limit());
+            int flags = bytes.hasRemaining() ? 0 : FLAG_END_HEADERS;
+            if(type == HEADERS && endStream)
+                flags |= FLAG_END_STREAM;
+            writeFrame(type, flags, stream.id, fragment);
+            type = CONTINUATION;
+        } while(bytes.hasRemaining());
+        stream.isHeadersSent = true;
+    }
+
+    /**
+     * cut DATA frames round robin over the streams with something to send, until the windows
+     * are used up or enough waits in the outbound buffer. called again when the outbound buffer
+     * drains and when a WINDOW_UPDATE arrives
+     */
+    private void flushData(){
+        int idle = 0;
+        while(!this.sending.isEmpty() && idle < this.sending.size() && this.outboundBuffer.pendingBytes() < MAX_OUTBOUND_DATA){
+            Http2Stream stream = this.sending.pollFirst();
+            boolean written;
+            try {
+                written = writeData(stream);
+            } catch (IOException e) {
+                logger.error("", e);
+                resetStream(stream.id, INTERNAL_ERROR);
+                continue;
+            }
+            if(stream.hasPending())
+                this.sending.addLast(stream);
+            idle = written ? 0 : idle + 1;
+        }
+    }
+
+    private boolean writeData(Http2Stream stream) throws IOException {
+        if(!stream.hasPending())
+            return true;
+        if(!stream.hasData()) {
+            writeFrame(DATA, FLAG_END_STREAM, stream.id);
+            endStreamSent(stream);
+            return true;
+        }
+        int max = Math.min(this.peerMaxFrameSize, Math.min(this.sendWindow, stream.sendWindow));
+        if(max <= 0)
+            return false;
+        List<ByteBuffer> data = stream.take(max);
+        int length = 0;
+        for(ByteBuffer buffer : data)
+            length += buffer.remaining();
+        this.sendWindow -= length;
+        stream.sendWindow -= length;
+        boolean end = stream.isFinished && !stream.hasData();
+        writeFrame(DATA, end ? FLAG_END_STREAM : 0, stream.id, data.toArray(new ByteBuffer[0]));
+        if(end)
+            endStreamSent(stream);
+        return true;
+    }
+
+    private void endStreamSent(Http2Stream stream){
+        stream.isEndStreamSent = true;
+        if(stream.isRemoteClosed)
+            this.streams.remove(stream.id);
+        stream.release();
+    }
+
+    private void sendSettings(){
+        ByteBuffer payload = ByteBuffer.allocate(18);
+        payload.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(this.config.http2MaxConcurrentStreams());
+        payload.putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt(this.config.http2InitialWindowSize());
+        payload.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE).putInt(this.config.maxHeaderSize());
+        payload.flip();
+        writeFrame(SETTINGS, 0, 0, payload);
+        int increment = this.config.http2InitialWindowSize() - DEFAULT_WINDOW_SIZE;
+        if(increment > 0) {
+            writeWindowUpdate(0, increment);
+            this.recvWindow += increment;
+        }
+    }
+
+    private void writeWindowUpdate(int streamId, int increment){
+        writeFrame(WINDOW_UPDATE, 0, streamId, intBuffer(increment));
+    }
+
+    private void writeFrame(int type, int flags, int streamId, ByteBuffer... payload){
+        int length = 0;
+        for(ByteBuffer buffer : payload)
+            length += buffer.remaining();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+        header.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length)
+                .put((byte) type).put((byte) flags).putInt(streamId).flip();
+        this.outboundBuffer.add(header);
+        this.outboundBuffer.add(payload);
+    }
+
+    private static ByteBuffer intBuffer(int value){
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(value).flip();
+        return buffer;
+    }
+
+    private static byte[] copy(ByteBuffer payload){
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    private static long parseLong(String value){
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String canonicalName(String name){
+        char[] chars = name.toCharArray();
+        boolean upper = true;
+        for(int i = 0; i < chars.length; i++){
+            if(upper && chars[i] >= 'a' && chars[i] <= 'z')
+                chars[i] = (char) (chars[i] - 'a' + 'A');
+            upper = chars[i] == '-';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return true when the buffer was filled up, more bytes may be waiting in the socket
+     */
+    private boolean read() throws IOException {
+        if(this.buffer == null)
+            this.buffer = this.bufferPool.acquire(INITIAL_BUFFER_SIZE);
+        if(!this.buffer.hasRemaining())
+            this.buffer = this.bufferPool.grow(this.buffer);
+        int count = this.socketChannel.read(this.buffer);
+        if(count < 0) {
+            this.isClosed = true;
+            cancelStreams();
+        }
+        return count > 0 && !this.buffer.hasRemaining();
+    }
+
+    private int readable(){
+        return this.buffer == null ? 0 : this.buffer.position();
+    }
+
+    private void compact(){
+        if(this.buffer == null)
+            return;
+        this.buffer.flip();
+        this.buffer.position(this.position);
+        this.buffer.compact();
+        this.position = 0;
+        if(this.buffer.position() == 0){
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    @Override
+    public ProtocolParser upgrade() {
+        return null;
+    }
+
+    @Override
+    public OutboundBuffer outboundBuffer() {
+        return this.outboundBuffer;
+    }
+
+    /**
+     * idle while no frame is half read and no request body is expected
+     */
+    @Override
+    public ReadState readState() {
+        if(this.prefaceIndex < PREFACE.length || this.headerStreamId != 0)
+            return ReadState.HEADERS;
+        if(readable() > 0)
+            return ReadState.BODY;
+        for(Http2Stream stream : this.streams.values()){
+            if(!stream.isRemoteClosed)
+                return ReadState.BODY;
+        }
+        return ReadState.IDLE;
+    }
+
+    @Override
+    public Timeout timeout() {
+        return timeout;
+    }
+
+    @Override
+    public void timeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * a body held back by flow control counts too, no read timeout applies while it waits
+     */
+    @Override
+    public int pendingRequests() {
+        return this.requestQueue.size() + this.responding + this.sending.size();
+    }
+
+    /**
+     * never full: the streams are limited with SETTINGS_MAX_CONCURRENT_STREAMS, and the
+     * connection must be read for the WINDOW_UPDATE frames the responses wait on
+     */
+    @Override
+    public boolean isPipelineFull() {
+        return false;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * after a GOAWAY of the peer the connection ends once the open streams are answered
+     */
+    @Override
+    public boolean isFinished() {
+        return this.outboundBuffer.isEmpty() && this.requestQueue.isEmpty() && this.responding == 0 && this.sending.isEmpty()
+                && (this.isClosed || (this.isGoAwayReceived && this.streams.isEmpty()));
+    }
+
+    @Override
+    public void release() {
+        this.outboundBuffer.clear();
+        cancelStreams();
+        if(this.buffer != null){
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package me.stevenkin.boomvc.server.parser.http2;
+
+import me.stevenkin.boomvc.http.HttpMethod;
+import me.stevenkin.boomvc.server.buffer.FileRegion;
+import me.stevenkin.boomvc.server.http.HeaderTable;
+import me.stevenkin.boomvc.server.http.RequestBody;
+import me.stevenkin.boomvc.server.parser.http.ResponseSlot;
+import me.stevenkin.boomvc.server.parser.multipart.MultipartParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * one stream of an http/2 connection: the request while its frames arrive, then the response
+ * body waiting to be cut into DATA frames as the flow control windows allow. only touched by
+ * the io thread of the connection, except the aborted flag of the slot
+ */
+class Http2Stream extends ResponseSlot {
+    private static final Logger logger = LoggerFactory.getLogger(Http2Stream.class);
+
+    final int id;
+
+    int sendWindow;
+
+    int recvWindow;
+
+    /**
+     * DATA bytes consumed but not given back with a WINDOW_UPDATE yet
+     */
+    int recvUnacked = 0;
+
+    HttpMethod method;
+
+    String url;
+
+    HeaderTable headers;
+
+    RequestBody body;
+
+    MultipartParser multipart;
+
+    long received = 0;
+
+    boolean isRemoteClosed = false;
+
+    boolean isHeadersSent = false;
+
+    /**
+     * the handler is done, END_STREAM goes with the last DATA frame
+     */
+    boolean isFinished = false;
+
+    boolean isEndStreamSent = false;
+
+    /**
+     * ByteBuffer or FileRegion, in write order
+     */
+    private final Deque<Object> pending = new ArrayDeque<>();
+
+    Http2Stream(int id, int sendWindow, int recvWindow) {
+        super(null);
+        this.id = id;
+        this.sendWindow = sendWindow;
+        this.recvWindow = recvWindow;
+    }
+
+    void enqueue(ByteBuffer[] buffers){
+        if(buffers == null)
+            return;
+        for(ByteBuffer buffer : buffers){
+            if(buffer.hasRemaining())
+                this.pending.addLast(buffer);
+        }
+    }
+
+    void enqueue(FileRegion region){
+        this.pending.addLast(region);
+    }
+
+    boolean hasData(){
+        return !this.pending.isEmpty();
+    }
+
+    /**
+     * something is left to send: body bytes, or the END_STREAM of a finished response
+     */
+    boolean hasPending(){
+        return !isAborted() && (hasData() || (this.isFinished && !this.isEndStreamSent));
+    }
+
+    /**
+     * the next body bytes, at most max of them. buffers are sliced, not copied, a file region
+     * is read into a heap buffer since a DATA frame can not be sent with sendfile
+     */
+    List<ByteBuffer> take(int max) throws IOException {
+        List<ByteBuffer> data = new ArrayList<>();
+        while(max > 0 && !this.pending.isEmpty()){
+            Object first = this.pending.peekFirst();
+            if(first instanceof FileRegion) {
+                FileRegion region = (FileRegion) first;
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(max, region.count()));
+                while(buffer.hasRemaining())
+                    region.read(buffer);
+                buffer.flip();
+                data.add(buffer);
+                max -= buffer.remaining();
+                if(region.isDone()) {
+                    this.pending.pollFirst();
+                    region.close();
+                }
+                continue;
+            }
+            ByteBuffer buffer = (ByteBuffer) first;
+            if(buffer.remaining() <= max) {
+                this.pending.pollFirst();
+                data.add(buffer);
+                max -= buffer.remaining();
+            } else {
+                ByteBuffer part = buffer.duplicate();
+                part.limit(part.position() + max);
+                buffer.position(buffer.position() + max);
+                data.add(part);
+                max = 0;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * the stream is reset or the connection is gone, the handler streaming to it gets an error
+     */
+    void cancel(){
+        abort();
+        release();
+    }
+
+    void release(){
+        for(Object entry : this.pending){
+            if(entry instanceof FileRegion) {
+                try {
+                    ((FileRegion) entry).close();
+                } catch (IOException e) {
+                    logger.error("", e);
+                }
+            }
+        }
+        this.pending.clear();
+        if(this.body != null) {
+            this.body.close();
+            this.body = null;
+        }
+        if(this.multipart != null) {
+            this.multipart.close();
+            this.multipart = null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.stevenkin.boomvc.server.parser.http2.hpack;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+
+/**
+ * the dynamic table of one direction of a connection, a ring of entries with the newest at
+ * index 1. the oldest entries are evicted when an insert or a size update does not fit
+ */
+final class DynamicTable {
+
+    /**
+     * the overhead of an entry counted by rfc 7541 4.1
+     */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private HttpHeader[] entries = new HttpHeader[16];
+
+    /**
+     * the slot of the next insert
+     */
+    private int head = 0;
+
+    private int length = 0;
+
+    private int size = 0;
+
+    private int maxSize;
+
+    DynamicTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    static int size(HttpHeader header){
+        return header.name().length() + header.value().length() + ENTRY_OVERHEAD;
+    }
+
+    int length() {
+        return length;
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    HttpHeader get(int index){
+        int i = this.head - index;
+        if(i < 0)
+            i += this.entries.length;
+        return this.entries[i];
+    }
+
+    /**
+     * an entry bigger than the table empties it and is not inserted
+     */
+    void add(HttpHeader header){
+        int size = size(header);
+        evict(this.maxSize - size);
+        if(size > this.maxSize)
+            return;
+        if(this.length == this.entries.length)
+            growEntries();
+        this.entries[this.head] = header;
+        this.head = (this.head + 1) % this.entries.length;
+        this.length++;
+        this.size += size;
+    }
+
+    void maxSize(int maxSize){
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    private void evict(int target){
+        while(this.length > 0 && this.size > Math.max(target, 0)){
+            int oldest = this.head - this.length;
+            if(oldest < 0)
+                oldest += this.entries.length;
+            this.size -= size(this.entries[oldest]);
+            this.entries[oldest] = null;
+            this.length--;
+        }
+    }
+
+    private void growEntries(){
+        HttpHeader[] entries = new HttpHeader[this.entries.length * 2];
+        for(int i = this.length; i > 0; i--)
+            entries[this.length - i] = get(i);
+        this.entries = entries;
+        this.head = this.length;
+    }
+}
@@ -0,0 +1,132 @@
+package me.stevenkin.boomvc.server.parser.http2.hpack;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+import me.stevenkin.boomvc.server.exception.Http2Exception;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * decodes the header blocks received on one connection, the blocks must be decoded in the
+ * order they were received since they share the dynamic table
+ */
+public class HpackDecoder {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * the table size allowed by our SETTINGS_HEADER_TABLE_SIZE, the encoder may only lower it
+     */
+    private final int maxTableSize;
+
+    private final int maxHeaderListSize;
+
+    private final DynamicTable table;
+
+    private byte[] block;
+
+    private int position;
+
+    private int limit;
+
+    public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+        this.maxTableSize = maxTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+        this.table = new DynamicTable(maxTableSize);
+    }
+
+    /**
+     * the whole block is always decoded so the dynamic table stays in step with the encoder
+     *
+     * @return the header list, null when it is larger than the max header list size
+     */
+    public List<HttpHeader> decode(byte[] block, int offset, int length) throws Http2Exception {
+        this.block = block;
+        this.position = offset;
+        this.limit = offset + length;
+        List<HttpHeader> headers = new ArrayList<>();
+        int listSize = 0;
+        boolean sizeUpdateAllowed = true;
+        try {
+            while(this.position < this.limit){
+                int b = this.block[this.position++] & 0xff;
+                HttpHeader header;
+                if((b & 0x80) != 0) {
+                    header = entry(readInt(b, 7));
+                } else if((b & 0x40) != 0) {
+                    header = literal(b, 6);
+                    this.table.add(header);
+                } else if((b & 0x20) != 0) {
+                    if(!sizeUpdateAllowed)
+                        throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "table size update after a header");
+                    int size = readInt(b, 5);
+                    if(size > this.maxTableSize)
+                        throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "table size update " + size + " is too large");
+                    this.table.maxSize(size);
+                    continue;
+                } else {
+                    header = literal(b, 4);
+                }
+                sizeUpdateAllowed = false;
+                listSize += DynamicTable.size(header);
+                if(listSize <= this.maxHeaderListSize)
+                    headers.add(header);
+            }
+        } finally {
+            this.block = null;
+        }
+        return listSize <= this.maxHeaderListSize ? headers : null;
+    }
+
+    private HttpHeader entry(int index) throws Http2Exception {
+        if(index == 0)
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "header index 0");
+        if(index <= StaticTable.LENGTH)
+            return StaticTable.get(index);
+        if(index - StaticTable.LENGTH > this.table.length())
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "header index " + index + " is out of the table");
+        return this.table.get(index - StaticTable.LENGTH);
+    }
+
+    private HttpHeader literal(int b, int prefix) throws Http2Exception {
+        int index = readInt(b, prefix);
+        String name = index == 0 ? readString() : entry(index).name();
+        return new HttpHeader(name, readString());
+    }
+
+    private int readInt(int first, int prefix) throws Http2Exception {
+        int max = (1 << prefix) - 1;
+        int value = first & max;
+        if(value < max)
+            return value;
+        int shift = 0;
+        int b;
+        do {
+            if(this.position == this.limit)
+                throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "truncated integer");
+            if(shift > 21)
+                throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "integer overflow");
+            b = this.block[this.position++] & 0xff;
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    private String readString() throws Http2Exception {
+        if(this.position == this.limit)
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "truncated string");
+        int b = this.block[this.position++] & 0xff;
+        int length = readInt(b, 7);
+        if(length > this.limit - this.position)
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "truncated string");
+        String s;
+        if((b & 0x80) != 0)
+            s = new String(Huffman.decode(this.block, this.position, length), ISO_8859_1);
+        else
+            s = new String(this.block, this.position, length, ISO_8859_1);
+        this.position += length;
+        return s;
+    }
+}
@@ -0,0 +1,139 @@
+package me.stevenkin.boomvc.server.parser.http2.hpack;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * encodes the header blocks sent on one connection. a field found in a table is sent as an
+ * index, the others are added to the dynamic table unless their value changes with every
+ * response, strings are huffman coded when that is shorter
+ */
+public class HpackEncoder {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int DEFAULT_TABLE_SIZE = 4096;
+
+    private final DynamicTable table = new DynamicTable(DEFAULT_TABLE_SIZE);
+
+    /**
+     * the table size changed since the last block, the next block starts with a size update
+     */
+    private boolean isSizeUpdated = false;
+
+    /**
+     * the smallest size the table had since the last block, the table was emptied down to it so
+     * the decoder must be told even when the size grew again (rfc 7541 4.2)
+     */
+    private int minSize = DEFAULT_TABLE_SIZE;
+
+    /**
+     * follow the SETTINGS_HEADER_TABLE_SIZE of the peer, never above the default
+     */
+    public void maxTableSize(int peerSize){
+        int size = Math.min(peerSize, DEFAULT_TABLE_SIZE);
+        if(size == this.table.maxSize())
+            return;
+        if(!this.isSizeUpdated)
+            this.minSize = this.table.maxSize();
+        this.minSize = Math.min(this.minSize, size);
+        this.table.maxSize(size);
+        this.isSizeUpdated = true;
+    }
+
+    /**
+     * start a header block, must be called before the first field of every block
+     */
+    public void begin(ByteArrayOutputStream out){
+        if(this.isSizeUpdated) {
+            if(this.minSize < this.table.maxSize())
+                writeInt(out, 0x20, 5, this.minSize);
+            writeInt(out, 0x20, 5, this.table.maxSize());
+            this.isSizeUpdated = false;
+        }
+    }
+
+    /**
+     * @param name a lower case name
+     */
+    public void encode(String name, String value, ByteArrayOutputStream out){
+        int index = StaticTable.indexOf(name, value);
+        if(index == 0)
+            index = dynamicIndexOf(name, value);
+        if(index > 0) {
+            writeInt(out, 0x80, 7, index);
+            return;
+        }
+        int nameIndex = StaticTable.indexOf(name);
+        if(nameIndex == 0)
+            nameIndex = dynamicIndexOf(name, null);
+        HttpHeader header = new HttpHeader(name, value);
+        if(isIndexable(name) && DynamicTable.size(header) <= this.table.maxSize()) {
+            writeInt(out, 0x40, 6, nameIndex);
+            this.table.add(header);
+        } else {
+            writeInt(out, 0x00, 4, nameIndex);
+        }
+        if(nameIndex == 0)
+            writeString(out, name);
+        writeString(out, value);
+    }
+
+    /**
+     * values which differ from one response to the next would only evict useful entries
+     */
+    private static boolean isIndexable(String name){
+        switch (name) {
+            case "content-length":
+            case "date":
+            case "etag":
+            case "last-modified":
+            case "set-cookie":
+            case "location":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param value null to match the name only
+     */
+    private int dynamicIndexOf(String name, String value){
+        for(int i = 1; i <= this.table.length(); i++){
+            HttpHeader entry = this.table.get(i);
+            if(entry.name().equals(name) && (value == null || entry.value().equals(value)))
+                return StaticTable.LENGTH + i;
+        }
+        return 0;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int mask, int prefix, int value){
+        int max = (1 << prefix) - 1;
+        if(value < max) {
+            out.write(mask | value);
+            return;
+        }
+        out.write(mask | max);
+        value -= max;
+        while(value >= 0x80){
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s){
+        byte[] bytes = s.getBytes(ISO_8859_1);
+        int huffmanLength = Huffman.encodedLength(bytes);
+        if(huffmanLength < bytes.length) {
+            writeInt(out, 0x80, 7, huffmanLength);
+            Huffman.encode(bytes, out);
+        } else {
+            writeInt(out, 0x00, 7, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.stevenkin.boomvc.server.parser.http2.hpack;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the static table of hpack (rfc 7541 appendix a), indexed from 1
+ */
+final class StaticTable {
+
+    private static final HttpHeader[] ENTRIES = {
+            new HttpHeader(":authority", ""),
+            new HttpHeader(":method", "GET"),
+            new HttpHeader(":method", "POST"),
+            new HttpHeader(":path", "/"),
+            new HttpHeader(":path", "/index.html"),
+            new HttpHeader(":scheme", "http"),
+            new HttpHeader(":scheme", "https"),
+            new HttpHeader(":status", "200"),
+            new HttpHeader(":status", "204"),
+            new HttpHeader(":status", "206"),
+            new HttpHeader(":status", "304"),
+            new HttpHeader(":status", "400"),
+            new HttpHeader(":status", "404"),
+            new HttpHeader(":status", "500"),
+            new HttpHeader("accept-charset", ""),
+            new HttpHeader("accept-encoding", "gzip, deflate"),
+            new HttpHeader("accept-language", ""),
+            new HttpHeader("accept-ranges", ""),
+            new HttpHeader("accept", ""),
+            new HttpHeader("access-control-allow-origin", ""),
+            new HttpHeader("age", ""),
+            new HttpHeader("allow", ""),
+            new HttpHeader("authorization", ""),
+            new HttpHeader("cache-control", ""),
+            new HttpHeader("content-disposition", ""),
+            new HttpHeader("content-encoding", ""),
+            new HttpHeader("content-language", ""),
+            new HttpHeader("content-length", ""),
+            new HttpHeader("content-location", ""),
+            new HttpHeader("content-range", ""),
+            new HttpHeader("content-type", ""),
+            new HttpHeader("cookie", ""),
+            new HttpHeader("date", ""),
+            new HttpHeader("etag", ""),
+            new HttpHeader("expect", ""),
+            new HttpHeader("expires", ""),
+            new HttpHeader("from", ""),
+            new HttpHeader("host", ""),
+            new HttpHeader("if-match", ""),
+            new HttpHeader("if-modified-since", ""),
+            new HttpHeader("if-none-match", ""),
+            new HttpHeader("if-range", ""),
+            new HttpHeader("if-unmodified-since", ""),
+            new HttpHeader("last-modified", ""),
+            new HttpHeader("link", ""),
+            new HttpHeader("location", ""),
+            new HttpHeader("max-forwards", ""),
+            new HttpHeader("proxy-authenticate", ""),
+            new HttpHeader("proxy-authorization", ""),
+            new HttpHeader("range", ""),
+            new HttpHeader("referer", ""),
+            new HttpHeader("refresh", ""),
+            new HttpHeader("retry-after", ""),
+            new HttpHeader("server", ""),
+            new HttpHeader("set-cookie", ""),
+            new HttpHeader("strict-transport-security", ""),
+            new HttpHeader("transfer-encoding", ""),
+            new HttpHeader("user-agent", ""),
+            new HttpHeader("vary", ""),
+            new HttpHeader("via", ""),
+            new HttpHeader("www-authenticate", "")
+    };
+
+    static final int LENGTH = ENTRIES.length;
+
+    /**
+     * the first index of every name
+     */
+    private static final Map<String, Integer> NAMES = new HashMap<>();
+
+    /**
+     * the index of every entry with a value, keyed by name and value
+     */
+    private static final Map<String, Integer> FIELDS = new HashMap<>();
+
+    static {
+        for(int i = LENGTH; i > 0; i--){
+            HttpHeader entry = ENTRIES[i - 1];
+            NAMES.put(entry.name(), i);
+            if(!entry.value().isEmpty())
+                FIELDS.put(entry.name() + ':' + entry.value(), i);
+        }
+    }
+
+    private StaticTable() {
+    }
+
+    static HttpHeader get(int index){
+        return ENTRIES[index - 1];
+    }
+
+    /**
+     * @return the index, 0 when no entry has the name
+     */
+    static int indexOf(String name){
+        Integer index = NAMES.get(name);
+        return index == null ? 0 : index;
+    }
+
+    static int indexOf(String name, String value){
+        Integer index = FIELDS.get(name + ':' + value);
+        return index == null ? 0 : index;
+    }
+}
@@ -0,0 +1,328 @@
+package me.stevenkin.boomvc.server.parser.multipart;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+import me.stevenkin.boomvc.http.HttpQueryParameter;
+import me.stevenkin.boomvc.http.multipart.FileItem;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.http.RequestBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * push parser of a multipart/form-data body, fed with the body slices as they are read from the
+ * socket. the delimiter is searched with boyer-moore-horspool in a fixed window, the bytes before
+ * a possible delimiter go straight to the current part, which is spooled to a temp file once it
+ * is bigger than the threshold. plain fields become parameters, file parts become FileItems
+ */
+public class MultipartParser implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MultipartParser.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] CRLF = {13, 10};
+
+    private static final byte[] HEADERSEND = {13, 10, 13, 10};
+
+    private static final int MIN_WINDOW_SIZE = 64 * 1024;
+
+    private enum State {
+        PREAMBLE, DELIMITER, HEADERS, BODY, EPILOGUE
+    }
+
+    /**
+     * CRLF "--" boundary, the body is treated as if it started with CRLF so the first delimiter
+     * has the same shape as the others
+     */
+    private final byte[] delimiter;
+
+    private final int[] shift = new int[256];
+
+    private final byte[] window;
+
+    private int count;
+
+    private State state = State.PREAMBLE;
+
+    private final int maxHeaderSize;
+
+    private final long spoolThreshold;
+
+    private final Path spoolDirectory;
+
+    private String partName;
+
+    private String partFileName;
+
+    private String partContentType;
+
+    private RequestBody partBody;
+
+    private Map<String, FileItem> fileItems = new LinkedHashMap<>();
+
+    private Multimap<String, HttpQueryParameter> parameters = LinkedListMultimap.create();
+
+    public MultipartParser(String boundary, int maxHeaderSize, long spoolThreshold, Path spoolDirectory) {
+        byte[] bytes = boundary.getBytes(Charset.forName("ISO-8859-1"));
+        this.delimiter = new byte[bytes.length + 4];
+        this.delimiter[0] = '\r';
+        this.delimiter[1] = '\n';
+        this.delimiter[2] = '-';
+        this.delimiter[3] = '-';
+        System.arraycopy(bytes, 0, this.delimiter, 4, bytes.length);
+        int m = this.delimiter.length;
+        Arrays.fill(this.shift, m);
+        for(int i = 0; i < m - 1; i++)
+            this.shift[this.delimiter[i] & 0xff] = m - 1 - i;
+        this.maxHeaderSize = maxHeaderSize;
+        this.spoolThreshold = spoolThreshold;
+        this.spoolDirectory = spoolDirectory;
+        this.window = new byte[Math.max(MIN_WINDOW_SIZE, maxHeaderSize + HEADERSEND.length) + m];
+        System.arraycopy(CRLF, 0, this.window, 0, CRLF.length);
+        this.count = CRLF.length;
+    }
+
+    /**
+     * the boundary parameter of a multipart/form-data content type, null for any other content type
+     */
+    public static String boundary(String contentType){
+        if(contentType == null || !contentType.toLowerCase().startsWith("multipart/form-data"))
+            return null;
+        for(String param : contentType.split(";")){
+            param = param.trim();
+            if(param.regionMatches(true, 0, "boundary=", 0, "boundary=".length())){
+                String boundary = param.substring("boundary=".length()).trim();
+                if(boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\""))
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    public void write(ByteBuffer src) throws ProtocolParserException {
+        while(src.hasRemaining()){
+            int n = Math.min(src.remaining(), this.window.length - this.count);
+            src.get(this.window, this.count, n);
+            this.count += n;
+            process();
+        }
+    }
+
+    /**
+     * the whole body has been written
+     */
+    public void finish() throws ProtocolParserException {
+        if(this.state != State.EPILOGUE)
+            throw new ProtocolParserException("multipart body is not terminated");
+    }
+
+    private void process() throws ProtocolParserException {
+        int pos = 0;
+        int m = this.delimiter.length;
+        loop:
+        while(true){
+            switch (this.state) {
+                case PREAMBLE: {
+                    int index = search(this.delimiter, pos);
+                    if(index < 0) {
+                        pos = Math.max(pos, this.count - m + 1);
+                        break loop;
+                    }
+                    pos = index + m;
+                    this.state = State.DELIMITER;
+                    break;
+                }
+                case DELIMITER: {
+                    if(this.count - pos < 2)
+                        break loop;
+                    if(this.window[pos] == '-' && this.window[pos + 1] == '-') {
+                        pos = this.count;
+                        this.state = State.EPILOGUE;
+                    } else if(this.window[pos] == '\r' && this.window[pos + 1] == '\n') {
+                        pos += 2;
+                        this.state = State.HEADERS;
+                    } else {
+                        throw new ProtocolParserException("illegal multipart delimiter");
+                    }
+                    break;
+                }
+                case HEADERS: {
+                    int index = indexOf(HEADERSEND, pos);
+                    if(index < 0) {
+                        if(this.count - pos > this.maxHeaderSize)
+                            throw new ProtocolParserException("multipart headers are too large");
+                        break loop;
+                    }
+                    startPart(new String(this.window, pos, index - pos, UTF8));
+                    pos = index + HEADERSEND.length;
+                    this.state = State.BODY;
+                    break;
+                }
+                case BODY: {
+                    int index = search(this.delimiter, pos);
+                    if(index < 0) {
+                        int safe = Math.max(pos, this.count - m + 1);
+                        writePart(pos, safe);
+                        pos = safe;
+                        break loop;
+                    }
+                    writePart(pos, index);
+                    endPart();
+                    pos = index + m;
+                    this.state = State.DELIMITER;
+                    break;
+                }
+                case EPILOGUE:
+                    pos = this.count;
+                    break loop;
+            }
+        }
+        System.arraycopy(this.window, pos, this.window, 0, this.count - pos);
+        this.count -= pos;
+    }
+
+    /**
+     * boyer-moore-horspool search of the pattern in window[from, count)
+     */
+    private int search(byte[] pattern, int from){
+        int m = pattern.length;
+        int i = from;
+        while(i <= this.count - m){
+            int j = m - 1;
+            while(j >= 0 && this.window[i + j] == pattern[j])
+                j--;
+            if(j < 0)
+                return i;
+            i += this.shift[this.window[i + m - 1] & 0xff];
+        }
+        return -1;
+    }
+
+    private int indexOf(byte[] pattern, int from){
+        outer:
+        for(int i = from; i <= this.count - pattern.length; i++){
+            for(int j = 0; j < pattern.length; j++){
+                if(this.window[i + j] != pattern[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void startPart(String headers) throws ProtocolParserException {
+        this.partName = null;
+        this.partFileName = null;
+        this.partContentType = null;
+        for(String header : headers.split("\r\n")){
+            int colon = header.indexOf(':');
+            if(colon < 0)
+                continue;
+            String name = header.substring(0, colon).trim();
+            String value = header.substring(colon + 1).trim();
+            if(name.equalsIgnoreCase("Content-Disposition")) {
+                for(String param : value.split(";")){
+                    param = param.trim();
+                    int eq = param.indexOf('=');
+                    if(eq < 0)
+                        continue;
+                    String key = param.substring(0, eq).trim();
+                    String v = unquote(param.substring(eq + 1).trim());
+                    if(key.equalsIgnoreCase("name"))
+                        this.partName = v;
+                    else if(key.equalsIgnoreCase("filename"))
+                        this.partFileName = v;
+                }
+            } else if(name.equalsIgnoreCase("Content-Type")) {
+                this.partContentType = value;
+            }
+        }
+        if(this.partName == null)
+            throw new ProtocolParserException("multipart part has no name");
+        try {
+            this.partBody = new RequestBody(-1, this.spoolThreshold, this.spoolDirectory);
+        } catch (IOException e) {
+            throw new ProtocolParserException("can not spool multipart part", e);
+        }
+    }
+
+    private void writePart(int from, int to) throws ProtocolParserException {
+        if(to <= from)
+            return;
+        try {
+            this.partBody.write(ByteBuffer.wrap(this.window, from, to - from));
+        } catch (IOException e) {
+            throw new ProtocolParserException("can not write multipart part", e);
+        }
+    }
+
+    private void endPart() throws ProtocolParserException {
+        RequestBody body = this.partBody;
+        this.partBody = null;
+        try {
+            body.finish();
+            if(this.partFileName == null) {
+                this.parameters.put(this.partName, new HttpQueryParameter(this.partName, new String(body.bytes(), UTF8)));
+                body.close();
+            } else if(body.isSpooled()) {
+                putFileItem(new FileItem(this.partName, this.partFileName, this.partContentType, body.size(), body.file()));
+            } else {
+                putFileItem(new FileItem(this.partName, this.partFileName, this.partContentType, body.size(), body.bytes()));
+            }
+        } catch (IOException e) {
+            body.close();
+            throw new ProtocolParserException("can not read multipart part", e);
+        }
+    }
+
+    /**
+     * the last file part of a name is kept, the temp file of the one it replaces is deleted at
+     * once since nothing else would delete it
+     */
+    private void putFileItem(FileItem fileItem) throws IOException {
+        FileItem replaced = this.fileItems.put(fileItem.getName(), fileItem);
+        if(replaced != null)
+            replaced.delete();
+    }
+
+    private static String unquote(String s){
+        if(s.length() > 1 && s.startsWith("\"") && s.endsWith("\""))
+            return s.substring(1, s.length() - 1);
+        return s;
+    }
+
+    public Map<String, FileItem> fileItems() {
+        return fileItems;
+    }
+
+    public Multimap<String, HttpQueryParameter> parameters() {
+        return parameters;
+    }
+
+    /**
+     * drop the temp files of a body which is not handed to a request
+     */
+    @Override
+    public void close() {
+        if(this.partBody != null) {
+            this.partBody.close();
+            this.partBody = null;
+        }
+        this.fileItems.values().forEach(fileItem -> {
+            try {
+                fileItem.delete();
+            } catch (IOException e) {
+                logger.error("", e);
+            }
+        });
+        this.fileItems.clear();
+    }
+}
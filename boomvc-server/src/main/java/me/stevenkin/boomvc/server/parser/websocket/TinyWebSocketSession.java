@@ -0,0 +1,74 @@
+package me.stevenkin.boomvc.server.parser.websocket;
+
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.websocket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.stevenkin.boomvc.server.parser.websocket.WebSocketCodec.*;
+
+class TinyWebSocketSession implements WebSocketSession {
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    private final String id = Long.toString(ids.incrementAndGet());
+
+    private final WebSocketConnection connection;
+
+    private final HttpRequest request;
+
+    private final String subprotocol;
+
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    TinyWebSocketSession(WebSocketConnection connection, HttpRequest request, String subprotocol) {
+        this.connection = connection;
+        this.request = request;
+        this.subprotocol = subprotocol;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public HttpRequest request() {
+        return request;
+    }
+
+    @Override
+    public String subprotocol() {
+        return subprotocol;
+    }
+
+    @Override
+    public Map<String, Object> attributes() {
+        return attributes;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.connection.isOpen();
+    }
+
+    @Override
+    public void sendText(String text) throws IOException {
+        this.connection.send(frame(TEXT, text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void sendBinary(ByteBuffer data) throws IOException {
+        this.connection.send(header(BINARY, data.remaining()), data);
+    }
+
+    @Override
+    public void close(int code, String reason) {
+        this.connection.close(code, reason);
+    }
+}
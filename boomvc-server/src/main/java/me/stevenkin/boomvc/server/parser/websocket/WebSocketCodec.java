@@ -0,0 +1,307 @@
+package me.stevenkin.boomvc.server.parser.websocket;
+
+import me.stevenkin.boomvc.server.exception.WebSocketException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static me.stevenkin.boomvc.http.websocket.WebSocketSession.*;
+
+/**
+ * the websocket frames of one connection. the decoder is resumable: a frame may arrive in any
+ * number of pieces, the payload is unmasked while it is copied out of the read buffer and the
+ * fragments of a message are joined before the message is handed on. frames sent by the
+ * server are never masked
+ */
+public class WebSocketCodec {
+
+    public static final int CONTINUATION = 0x0;
+    public static final int TEXT = 0x1;
+    public static final int BINARY = 0x2;
+    public static final int CLOSE = 0x8;
+    public static final int PING = 0x9;
+    public static final int PONG = 0xa;
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+
+    public interface FrameListener {
+
+        /**
+         * a whole text or binary message, the payload array is handed over
+         */
+        void onMessage(int opcode, byte[] payload, int length) throws WebSocketException;
+
+        void onControl(int opcode, byte[] payload) throws WebSocketException;
+    }
+
+    private final int maxMessageSize;
+
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * 2 bytes, up to 8 bytes of extended length and the masking key
+     */
+    private final byte[] header = new byte[14];
+
+    private int headerLength = 0;
+
+    private int headerNeeded = 2;
+
+    private boolean isInPayload = false;
+
+    private boolean fin;
+
+    private int opcode;
+
+    private long payloadRemaining;
+
+    private final byte[] mask = new byte[4];
+
+    private int maskIndex;
+
+    /**
+     * the opcode of the message being joined, -1 between messages
+     */
+    private int messageOpcode = -1;
+
+    private byte[] message;
+
+    private int messageLength = 0;
+
+    private byte[] control;
+
+    private int controlLength;
+
+    public WebSocketCodec(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * consume every readable byte of the buffer, the listener is called for each frame completed
+     */
+    public void decode(ByteBuffer src, FrameListener listener) throws WebSocketException {
+        while(true){
+            if(!this.isInPayload) {
+                if(!readHeader(src))
+                    return;
+                startFrame();
+                if(this.payloadRemaining == 0) {
+                    endFrame(listener);
+                    continue;
+                }
+            }
+            if(!src.hasRemaining())
+                return;
+            int n = (int) Math.min(src.remaining(), this.payloadRemaining);
+            if(this.opcode >= CLOSE) {
+                src.get(this.control, this.controlLength, n);
+                unmask(this.control, this.controlLength, n);
+                this.controlLength += n;
+            } else {
+                src.get(this.message, this.messageLength, n);
+                unmask(this.message, this.messageLength, n);
+                this.messageLength += n;
+            }
+            this.payloadRemaining -= n;
+            if(this.payloadRemaining == 0)
+                endFrame(listener);
+        }
+    }
+
+    /**
+     * nothing of a frame or a message is waiting for more bytes
+     */
+    public boolean isIdle(){
+        return this.headerLength == 0 && !this.isInPayload && this.messageOpcode < 0;
+    }
+
+    private boolean readHeader(ByteBuffer src){
+        while(this.headerLength < this.headerNeeded){
+            if(!src.hasRemaining())
+                return false;
+            this.header[this.headerLength++] = src.get();
+            if(this.headerLength == 2) {
+                int length = this.header[1] & 0x7f;
+                this.headerNeeded = 2 + (length == 126 ? 2 : length == 127 ? 8 : 0) + ((this.header[1] & 0x80) != 0 ? 4 : 0);
+            }
+        }
+        return true;
+    }
+
+    private void startFrame() throws WebSocketException {
+        int b0 = this.header[0] & 0xff;
+        int b1 = this.header[1] & 0xff;
+        this.fin = (b0 & 0x80) != 0;
+        this.opcode = b0 & 0x0f;
+        if((b0 & 0x70) != 0)
+            throw new WebSocketException(PROTOCOL_ERROR, "reserved bits are set without an extension");
+        if((b1 & 0x80) == 0)
+            throw new WebSocketException(PROTOCOL_ERROR, "frame from the client is not masked");
+        long length = b1 & 0x7f;
+        int offset = 2;
+        if(length == 126) {
+            length = ((this.header[2] & 0xff) << 8) | (this.header[3] & 0xff);
+            offset = 4;
+        } else if(length == 127) {
+            length = 0;
+            for(int i = 2; i < 10; i++)
+                length = (length << 8) | (this.header[i] & 0xff);
+            offset = 10;
+            if(length < 0)
+                throw new WebSocketException(PROTOCOL_ERROR, "frame length is negative");
+        }
+        System.arraycopy(this.header, offset, this.mask, 0, 4);
+        this.maskIndex = 0;
+        this.headerLength = 0;
+        this.headerNeeded = 2;
+        this.payloadRemaining = length;
+        if(this.opcode >= CLOSE) {
+            if(this.opcode != CLOSE && this.opcode != PING && this.opcode != PONG)
+                throw new WebSocketException(PROTOCOL_ERROR, "unknown opcode " + this.opcode);
+            if(!this.fin || length > MAX_CONTROL_PAYLOAD)
+                throw new WebSocketException(PROTOCOL_ERROR, "control frame is fragmented or too long");
+            this.control = new byte[(int) length];
+            this.controlLength = 0;
+        } else {
+            if(this.opcode == CONTINUATION) {
+                if(this.messageOpcode < 0)
+                    throw new WebSocketException(PROTOCOL_ERROR, "continuation frame without a message");
+            } else if(this.opcode == TEXT || this.opcode == BINARY) {
+                if(this.messageOpcode >= 0)
+                    throw new WebSocketException(PROTOCOL_ERROR, "new message before the last fragment");
+                this.messageOpcode = this.opcode;
+            } else {
+                throw new WebSocketException(PROTOCOL_ERROR, "unknown opcode " + this.opcode);
+            }
+            if(this.messageLength + length > this.maxMessageSize)
+                throw new WebSocketException(MESSAGE_TOO_BIG, "message is larger than " + this.maxMessageSize);
+            ensureCapacity(this.messageLength + (int) length);
+        }
+        this.isInPayload = true;
+    }
+
+    /**
+     * a message in one frame gets an array of its exact size, fragments double it
+     */
+    private void ensureCapacity(int needed){
+        if(this.message == null) {
+            this.message = new byte[needed];
+        } else if(this.message.length < needed) {
+            int capacity = (int) Math.min(Math.max(this.message.length * 2L, needed), this.maxMessageSize);
+            this.message = Arrays.copyOf(this.message, capacity);
+        }
+    }
+
+    private void endFrame(FrameListener listener) throws WebSocketException {
+        this.isInPayload = false;
+        if(this.opcode >= CLOSE) {
+            byte[] payload = this.control;
+            this.control = null;
+            listener.onControl(this.opcode, payload);
+            return;
+        }
+        if(!this.fin)
+            return;
+        int opcode = this.messageOpcode;
+        byte[] payload = this.message;
+        int length = this.messageLength;
+        this.messageOpcode = -1;
+        this.message = null;
+        this.messageLength = 0;
+        listener.onMessage(opcode, payload, length);
+    }
+
+    private void unmask(byte[] bytes, int offset, int length){
+        int index = this.maskIndex;
+        for(int i = offset, end = offset + length; i < end; i++){
+            bytes[i] ^= this.mask[index];
+            index = (index + 1) & 3;
+        }
+        this.maskIndex = index;
+    }
+
+    /**
+     * @throws WebSocketException when the bytes are not utf-8
+     */
+    public String text(byte[] payload, int offset, int length) throws WebSocketException {
+        try {
+            CharBuffer chars = this.utf8.reset().decode(ByteBuffer.wrap(payload, offset, length));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            throw new WebSocketException(INVALID_PAYLOAD, "text is not utf-8");
+        }
+    }
+
+    /**
+     * a frame with its payload in one buffer, for payloads already copied into an array
+     */
+    public static ByteBuffer frame(int opcode, byte[] payload){
+        ByteBuffer frame = ByteBuffer.allocate(headerLength(payload.length) + payload.length);
+        putHeader(frame, opcode, payload.length);
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * the header of a frame whose payload is written from its own buffer
+     */
+    public static ByteBuffer header(int opcode, int length){
+        ByteBuffer header = ByteBuffer.allocate(headerLength(length));
+        putHeader(header, opcode, length);
+        header.flip();
+        return header;
+    }
+
+    public static ByteBuffer closeFrame(int code, String reason){
+        byte[] bytes = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_CONTROL_PAYLOAD - 2);
+        byte[] payload = new byte[2 + length];
+        payload[0] = (byte) (code >>> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(bytes, 0, payload, 2, length);
+        return frame(CLOSE, payload);
+    }
+
+    private static int headerLength(int length){
+        return length < 126 ? 2 : length < 65536 ? 4 : 10;
+    }
+
+    private static void putHeader(ByteBuffer buffer, int opcode, int length){
+        buffer.put((byte) (0x80 | opcode));
+        if(length < 126) {
+            buffer.put((byte) length);
+        } else if(length < 65536) {
+            buffer.put((byte) 126);
+            buffer.putShort((short) length);
+        } else {
+            buffer.put((byte) 127);
+            buffer.putLong(length);
+        }
+    }
+
+    /**
+     * the Sec-WebSocket-Accept value answering the key of the client
+     */
+    public static String accept(String key){
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key.trim() + GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package me.stevenkin.boomvc.server.parser.websocket;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+import me.stevenkin.boomvc.http.HttpMethod;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketEndpoint;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.exception.WebSocketException;
+import me.stevenkin.boomvc.server.executor.MpscQueue;
+import me.stevenkin.boomvc.server.http.TinyHttpRequest;
+import me.stevenkin.boomvc.server.parser.ProtocolParser;
+import me.stevenkin.boomvc.server.parser.http.HttpParserConfig;
+import me.stevenkin.boomvc.server.parser.http.ReadState;
+import me.stevenkin.boomvc.server.timer.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static me.stevenkin.boomvc.http.websocket.WebSocketSession.*;
+import static me.stevenkin.boomvc.server.parser.websocket.WebSocketCodec.*;
+
+/**
+ * a connection switched to websocket. frames are decoded on the io thread and the endpoint is
+ * called right there, without handing each message to another thread. messages sent by the
+ * endpoint, from whatever thread, wait in a lock-free outbox; one flush per batch moves them
+ * to the outbound buffer, so many small messages go out with one gathering write
+ */
+public class WebSocketConnection implements ProtocolParser, WebSocketCodec.FrameListener {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConnection.class);
+
+    private static final String WEBSOCKET = "websocket";
+
+    private static final String VERSION = "13";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * reads of one connection per readable event, the other connections of the loop get their turn after
+     */
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    /**
+     * takes the place of the close frame once the connection is released
+     */
+    private static final ByteBuffer[] RELEASED = new ByteBuffer[0];
+
+    private SocketChannel socketChannel;
+
+    private BufferPool bufferPool;
+
+    private OutboundBuffer outboundBuffer;
+
+    private WebSocketEndpoint endpoint;
+
+    private HttpRequest request;
+
+    private WebSocketCodec codec;
+
+    private TinyWebSocketSession session;
+
+    /**
+     * borrowed from the pool while bytes are read, kept in write mode: the readable bytes are [0, position)
+     */
+    private ByteBuffer buffer;
+
+    private MpscQueue<ByteBuffer[]> outbox = new MpscQueue<>();
+
+    private AtomicBoolean isFlushScheduled = new AtomicBoolean(false);
+
+    /**
+     * schedules a flush on the io thread, given by the event loop
+     */
+    private Runnable flusher;
+
+    /**
+     * the close frame queued in the outbox, nothing is sent after it
+     */
+    private AtomicReference<ByteBuffer[]> closeFrame = new AtomicReference<>();
+
+    private boolean isCloseSent = false;
+
+    private boolean isCloseReceived = false;
+
+    /**
+     * a protocol error was answered with a close frame, nothing more is read
+     */
+    private boolean isFailed = false;
+
+    private boolean isEof = false;
+
+    private int closeCode = ABNORMAL_CLOSURE;
+
+    private String closeReason = "";
+
+    private boolean isCloseNotified = false;
+
+    private Timeout timeout;
+
+    private WebSocketConnection(SocketChannel socketChannel, BufferPool bufferPool, HttpParserConfig config,
+                                OutboundBuffer outboundBuffer, ByteBuffer buffer, HttpRequest request,
+                                WebSocketEndpoint endpoint, String subprotocol) {
+        this.socketChannel = socketChannel;
+        this.bufferPool = bufferPool;
+        this.outboundBuffer = outboundBuffer;
+        this.buffer = buffer;
+        this.request = request;
+        this.endpoint = endpoint;
+        this.codec = new WebSocketCodec(config.webSocketMaxMessageSize());
+        this.session = new TinyWebSocketSession(this, request, subprotocol);
+    }
+
+    /**
+     * a GET asking for websocket version 13 with a key, the path decides if there is an endpoint
+     */
+    public static boolean isHandshake(HttpRequest request){
+        return request.httpMethod() == HttpMethod.GET
+                && containsToken(request, "Upgrade", WEBSOCKET)
+                && containsToken(request, "Connection", "upgrade")
+                && containsToken(request, "Sec-WebSocket-Version", VERSION)
+                && tokens(request, "Sec-WebSocket-Key").size() == 1;
+    }
+
+    /**
+     * answer the handshake, the switching protocols response goes to the outbound buffer which
+     * must be empty. the connection owns the request and the unparsed bytes from then on
+     */
+    public static WebSocketConnection upgrade(SocketChannel socketChannel, BufferPool bufferPool, HttpParserConfig config,
+                                              OutboundBuffer outboundBuffer, ByteBuffer buffer, HttpRequest request,
+                                              WebSocketEndpoint endpoint){
+        String subprotocol = endpoint.subprotocol(tokens(request, "Sec-WebSocket-Protocol"));
+        StringBuilder response = new StringBuilder("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n")
+                .append("Sec-WebSocket-Accept: ").append(accept(tokens(request, "Sec-WebSocket-Key").get(0))).append("\r\n");
+        if(subprotocol != null)
+            response.append("Sec-WebSocket-Protocol: ").append(subprotocol).append("\r\n");
+        response.append("\r\n");
+        outboundBuffer.add(ByteBuffer.wrap(response.toString().getBytes(StandardCharsets.ISO_8859_1)));
+        return new WebSocketConnection(socketChannel, bufferPool, config, outboundBuffer, buffer, request, endpoint, subprotocol);
+    }
+
+    private static boolean containsToken(HttpRequest request, String name, String token){
+        for(String value : tokens(request, name)){
+            if(value.equalsIgnoreCase(token))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * the comma separated values of every header with the name
+     */
+    private static List<String> tokens(HttpRequest request, String name){
+        List<String> tokens = new ArrayList<>();
+        for(HttpHeader header : request.headers()){
+            if(!header.name().equalsIgnoreCase(name))
+                continue;
+            for(String token : header.value().split(",")){
+                token = token.trim();
+                if(!token.isEmpty())
+                    tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * called by the event loop once the connection is attached, before the bytes after the
+     * handshake are parsed
+     *
+     * @param flusher runs flush on the io thread later, may be called from any thread
+     */
+    public void open(Runnable flusher){
+        this.flusher = flusher;
+        try {
+            this.endpoint.open(this.session);
+        } catch (Exception e) {
+            error(e);
+        }
+    }
+
+    @Override
+    public void parser() throws ProtocolParserException {
+        boolean filled;
+        int reads = 0;
+        do {
+            try {
+                filled = read();
+            } catch (IOException e) {
+                logger.debug("read websocket failed: {}", e.getMessage());
+                throw new ProtocolParserException("a io exception happened when readed data", e);
+            }
+            resume();
+        } while(filled && ++reads < MAX_READS_PER_EVENT && !isClosed() && !isPipelineFull());
+    }
+
+    private boolean read() throws IOException {
+        if(this.buffer == null)
+            this.buffer = this.bufferPool.acquire(BUFFER_SIZE);
+        int count = this.socketChannel.read(this.buffer);
+        if(count < 0)
+            this.isEof = true;
+        return count > 0 && !this.buffer.hasRemaining();
+    }
+
+    /**
+     * decode every byte read, a frame cut in two waits in the codec. the frames sent meanwhile
+     * are moved to the outbound buffer
+     */
+    @Override
+    public void resume() {
+        if(this.buffer != null) {
+            if(!isClosed()) {
+                this.buffer.flip();
+                try {
+                    this.codec.decode(this.buffer, this);
+                } catch (WebSocketException e) {
+                    fail(e);
+                }
+            }
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+        flush();
+    }
+
+    @Override
+    public void onMessage(int opcode, byte[] payload, int length) throws WebSocketException {
+        if(isClosed())
+            return;
+        boolean isTaken;
+        try {
+            if(opcode == TEXT)
+                isTaken = this.endpoint.text(this.session, this.codec.text(payload, 0, length));
+            else
+                isTaken = this.endpoint.binary(this.session, ByteBuffer.wrap(payload, 0, length));
+        } catch (WebSocketException e) {
+            throw e;
+        } catch (Exception e) {
+            error(e);
+            return;
+        }
+        if(!isTaken)
+            throw new WebSocketException(UNSUPPORTED_DATA, opcode == TEXT ? "text messages are not supported" : "binary messages are not supported");
+    }
+
+    @Override
+    public void onControl(int opcode, byte[] payload) throws WebSocketException {
+        if(isClosed())
+            return;
+        switch (opcode) {
+            case PING:
+                this.outbox.offer(new ByteBuffer[]{ frame(PONG, payload) });
+                break;
+            case CLOSE:
+                closeReceived(payload);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * the peer starts or answers the closing handshake, the code is echoed when the server
+     * did not send its close frame yet
+     */
+    private void closeReceived(byte[] payload) throws WebSocketException {
+        int code = NO_STATUS_RECEIVED;
+        String reason = "";
+        if(payload.length == 1)
+            throw new WebSocketException(PROTOCOL_ERROR, "close frame with a one byte payload");
+        if(payload.length >= 2) {
+            code = ((payload[0] & 0xff) << 8) | (payload[1] & 0xff);
+            if(!isValidCloseCode(code))
+                throw new WebSocketException(PROTOCOL_ERROR, "illegal close code " + code);
+            reason = this.codec.text(payload, 2, payload.length - 2);
+        }
+        this.isCloseReceived = true;
+        this.closeCode = code;
+        this.closeReason = reason;
+        close(code == NO_STATUS_RECEIVED ? NORMAL_CLOSURE : code, "");
+        flush();
+    }
+
+    private static boolean isValidCloseCode(int code){
+        if(code >= 3000 && code <= 4999)
+            return true;
+        return code >= 1000 && code <= 1011 && code != 1004 && code != NO_STATUS_RECEIVED && code != ABNORMAL_CLOSURE;
+    }
+
+    private void fail(WebSocketException e){
+        logger.debug("websocket protocol error: {}", e.getMessage());
+        this.isFailed = true;
+        this.closeCode = e.closeCode();
+        this.closeReason = e.getMessage();
+        close(e.closeCode(), e.getMessage());
+        flush();
+    }
+
+    /**
+     * an endpoint method threw, OnError decides what happens, without it the connection is
+     * closed as an internal error
+     */
+    private void error(Exception cause){
+        try {
+            if(this.endpoint.error(this.session, cause))
+                return;
+        } catch (Exception e) {
+            logger.error("", e);
+        }
+        logger.error("", cause);
+        close(INTERNAL_ERROR, "");
+    }
+
+    /**
+     * queue a frame, any thread
+     */
+    void send(ByteBuffer... frame) throws IOException {
+        if(this.closeFrame.get() != null)
+            throw new ClosedChannelException();
+        this.outbox.offer(frame);
+        scheduleFlush();
+    }
+
+    /**
+     * queue the close frame, only the first call counts. any thread
+     */
+    void close(int code, String reason){
+        ByteBuffer[] frame = new ByteBuffer[]{ closeFrame(code, reason) };
+        if(!this.closeFrame.compareAndSet(null, frame))
+            return;
+        this.outbox.offer(frame);
+        scheduleFlush();
+    }
+
+    boolean isOpen(){
+        return this.closeFrame.get() == null;
+    }
+
+    private void scheduleFlush(){
+        if(this.isFlushScheduled.compareAndSet(false, true))
+            this.flusher.run();
+    }
+
+    /**
+     * move the queued frames to the outbound buffer, on the io thread. the flag is cleared first,
+     * a frame queued after the drain schedules the next flush
+     */
+    public void flush(){
+        this.isFlushScheduled.set(false);
+        ByteBuffer[] frame;
+        while((frame = this.outbox.poll()) != null){
+            if(this.isCloseSent)
+                continue;
+            this.outboundBuffer.add(frame);
+            if(frame == this.closeFrame.get())
+                this.isCloseSent = true;
+        }
+    }
+
+    @Override
+    public boolean parsed() {
+        return false;
+    }
+
+    @Override
+    public ProtocolParser upgrade() {
+        return null;
+    }
+
+    @Override
+    public OutboundBuffer outboundBuffer() {
+        return this.outboundBuffer;
+    }
+
+    @Override
+    public ReadState readState() {
+        return this.codec.isIdle() ? ReadState.IDLE : ReadState.BODY;
+    }
+
+    @Override
+    public Timeout timeout() {
+        return timeout;
+    }
+
+    @Override
+    public void timeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * an open connection has no read timeout, it may stay silent as long as the endpoint keeps
+     * it. once the server sent its close frame the reply is waited for as long as the idle timeout
+     */
+    @Override
+    public int pendingRequests() {
+        return this.isCloseSent ? 0 : 1;
+    }
+
+    /**
+     * the connection is not read while the outbound buffer is over its high watermark, a client
+     * which does not read its messages can not make the server buffer the replies without end
+     */
+    @Override
+    public boolean isPipelineFull() {
+        return !this.outboundBuffer.isWritable();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.isEof || this.isCloseReceived || this.isFailed;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return this.outboundBuffer.isEmpty() && (this.isEof || (isClosed() && this.isCloseSent));
+    }
+
+    /**
+     * the endpoint hears of the close once, with the code of the peer or 1006 when the connection
+     * was lost without a closing handshake
+     */
+    @Override
+    public void release() {
+        this.closeFrame.compareAndSet(null, RELEASED);
+        this.outboundBuffer.clear();
+        while(this.outbox.poll() != null);
+        if(this.buffer != null) {
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+        if(!this.isCloseNotified) {
+            this.isCloseNotified = true;
+            try {
+                this.endpoint.close(this.session, this.closeCode, this.closeReason);
+            } catch (Exception e) {
+                logger.error("", e);
+            }
+            ((TinyHttpRequest) this.request).release();
+        }
+    }
+}
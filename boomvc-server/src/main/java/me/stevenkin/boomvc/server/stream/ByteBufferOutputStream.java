@@ -0,0 +1,133 @@
+package me.stevenkin.boomvc.server.stream;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * collect the written bytes into a list of buffer segments instead of one growing array,
+ * the segments are handed to the socket as they are, nothing is copied when the stream
+ * gets bigger or when it is written out
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private static final int MIN_SEGMENT_SIZE = 512;
+
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024;
+
+    private List<ByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * the segment being filled, in write mode
+     */
+    private ByteBuffer current;
+
+    private int segmentSize = MIN_SEGMENT_SIZE;
+
+    private long size = 0;
+
+    private boolean closed = false;
+
+    @Override
+    public void write(int b) {
+        ensureWritable(1);
+        this.current.put((byte) b);
+        this.size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        while(len > 0){
+            ensureWritable(len);
+            int n = Math.min(len, this.current.remaining());
+            this.current.put(b, off, n);
+            off += n;
+            len -= n;
+            this.size += n;
+        }
+    }
+
+    /**
+     * append the readable bytes of the buffer as a segment of its own, the stream
+     * takes the buffer over and the caller must not touch it any more
+     */
+    public void write(ByteBuffer buffer) {
+        checkClosed();
+        if(!buffer.hasRemaining())
+            return;
+        seal();
+        this.size += buffer.remaining();
+        this.segments.add(buffer);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * the written segments in read mode, the stream can not be written any more
+     */
+    public List<ByteBuffer> segments() {
+        close();
+        return segments;
+    }
+
+    /**
+     * the segments written since the last drain in read mode, unlike segments() the stream
+     * stays writable
+     */
+    public List<ByteBuffer> drain() {
+        checkClosed();
+        seal();
+        List<ByteBuffer> drained = this.segments;
+        this.segments = new ArrayList<>();
+        this.size = 0;
+        return drained;
+    }
+
+    /**
+     * an empty writable stream again, the segments handed out are left to their new owner
+     */
+    public void reset() {
+        this.segments.clear();
+        this.current = null;
+        this.segmentSize = MIN_SEGMENT_SIZE;
+        this.size = 0;
+        this.closed = false;
+    }
+
+    @Override
+    public void close() {
+        if(this.closed)
+            return;
+        seal();
+        this.closed = true;
+    }
+
+    private void ensureWritable(int len){
+        checkClosed();
+        if(this.current != null && this.current.hasRemaining())
+            return;
+        seal();
+        this.current = ByteBuffer.allocate(Math.min(Math.max(this.segmentSize, len), MAX_SEGMENT_SIZE));
+        this.segmentSize = Math.min(this.segmentSize * 2, MAX_SEGMENT_SIZE);
+    }
+
+    private void seal(){
+        if(this.current == null)
+            return;
+        if(this.current.position() > 0){
+            this.current.flip();
+            this.segments.add(this.current);
+        }
+        this.current = null;
+    }
+
+    private void checkClosed(){
+        if(this.closed)
+            throw new IllegalStateException("stream is closed");
+    }
+}
@@ -1,27 +1,57 @@
 package me.stevenkin.boomvc.server.task;
 
+import me.stevenkin.boomvc.common.compress.HttpCompression;
 import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
+import me.stevenkin.boomvc.ioc.Environment;
+import me.stevenkin.boomvc.http.HttpConst;
+import me.stevenkin.boomvc.http.HttpHeader;
 import me.stevenkin.boomvc.http.HttpRequest;
 import me.stevenkin.boomvc.http.HttpResponse;
 import me.stevenkin.boomvc.mvc.filter.FilterMapping;
 import me.stevenkin.boomvc.mvc.filter.FilterRegisterBean;
 import me.stevenkin.boomvc.mvc.filter.imp.DefaultFilterMapping;
 import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.SocketConfig;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
+import me.stevenkin.boomvc.server.buffer.Recycler;
+import me.stevenkin.boomvc.server.executor.EventExecutor;
 import me.stevenkin.boomvc.server.executor.EventExecutorGroup;
+import me.stevenkin.boomvc.server.executor.MpscQueue;
+import me.stevenkin.boomvc.server.http.HttpObjectPool;
+import me.stevenkin.boomvc.server.http.TinyHttpRequest;
+import me.stevenkin.boomvc.server.http.TinyHttpResponse;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.parser.HttpRequestParser;
+import me.stevenkin.boomvc.server.parser.ProtocolParser;
+import me.stevenkin.boomvc.server.parser.http.HttpParserConfig;
 import me.stevenkin.boomvc.server.parser.http.HttpProtocolParser;
+import me.stevenkin.boomvc.server.parser.http.ReadState;
+import me.stevenkin.boomvc.server.parser.http.ResponseSlot;
+import me.stevenkin.boomvc.server.parser.websocket.WebSocketConnection;
+import me.stevenkin.boomvc.server.timer.HashedTimingWheel;
+import me.stevenkin.boomvc.server.timer.Timeout;
 import me.stevenkin.boomvc.server.session.SessionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static me.stevenkin.boomvc.http.Const.*;
 
 public class EventLoop implements Runnable, Task {
     private static final Logger logger = LoggerFactory.getLogger(EventLoop.class);
@@ -34,121 +64,503 @@ public class EventLoop implements Runnable, Task {
 
     private FilterMapping filterMapping;
 
-    private volatile boolean isStart = false;
+    private WebSocketMapping webSocketMapping;
 
-    private Semaphore semaphore;
+    private volatile boolean isStart = false;
 
     private SessionManager sessionManager;
 
-    public EventLoop(Selector selector, EventExecutorGroup childGroup, MvcDispatcher dispatcher, SessionManager sessionManager, Semaphore semaphore) {
+    private Executor businessExecutor;
+
+    private HttpParserConfig parserConfig;
+
+    private SocketConfig socketConfig;
+
+    private BufferPool bufferPool;
+
+    /**
+     * the requests and responses of the http/1.1 connections of this loop
+     */
+    private HttpObjectPool objectPool;
+
+    private Recycler<RequestTask> requestTasks;
+
+    private HttpCompression compression;
+
+    private HashedTimingWheel timingWheel;
+
+    private long idleTimeout;
+
+    private long headerReadTimeout;
+
+    private long bodyReadTimeout;
+
+    private MpscQueue<Runnable> taskQueue = new MpscQueue<>();
+
+    /**
+     * set by the first producer which wakes the selector up, the others skip the wakeup syscall
+     */
+    private AtomicBoolean wakenUp = new AtomicBoolean(false);
+
+    private volatile Thread thread;
+
+    /**
+     * incremented by the accepting thread when a connection is handed to this loop,
+     * decremented by the io thread when it is closed
+     */
+    private AtomicInteger connectionCount = new AtomicInteger();
+
+    public EventLoop(Selector selector, EventExecutorGroup childGroup, MvcDispatcher dispatcher, WebSocketMapping webSocketMapping,
+                     SessionManager sessionManager, Executor businessExecutor, BufferPool bufferPool) {
         this.selector = selector;
+        this.bufferPool = bufferPool;
         this.childGroup = childGroup;
         this.dispatcher = dispatcher;
+        this.webSocketMapping = webSocketMapping;
         this.sessionManager = sessionManager;
-        this.semaphore = semaphore;
+        this.businessExecutor = businessExecutor;
+        this.parserConfig = HttpParserConfig.of(AppContext.environment());
+        this.socketConfig = SocketConfig.of(AppContext.environment());
+        this.compression = HttpCompression.of(AppContext.environment());
+        this.timingWheel = new HashedTimingWheel(this::expire);
+        Environment environment = AppContext.environment();
+        this.idleTimeout = Long.parseLong(environment.getValue(ENV_KEY_SERVER_IDLE_TIMEOUT, Long.toString(DEFAULT_IDLE_TIMEOUT)));
+        this.headerReadTimeout = Long.parseLong(environment.getValue(ENV_KEY_SERVER_HEADER_READ_TIMEOUT, Long.toString(DEFAULT_HEADER_READ_TIMEOUT)));
+        this.bodyReadTimeout = Long.parseLong(environment.getValue(ENV_KEY_SERVER_BODY_READ_TIMEOUT, Long.toString(DEFAULT_BODY_READ_TIMEOUT)));
+        boolean recycle = Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_RECYCLE_ENABLE, "false"));
+        int maxCached = Integer.parseInt(environment.getValue(ENV_KEY_SERVER_RECYCLE_MAX_CACHED, Integer.toString(DEFAULT_RECYCLE_MAX_CACHED)));
+        boolean leakDetection = Boolean.parseBoolean(environment.getValue(ENV_KEY_SERVER_RECYCLE_LEAK_DETECTION, "false"));
+        this.objectPool = new HttpObjectPool(recycle, maxCached, leakDetection);
         List<FilterRegisterBean> filterRegisterBeans = AppContext.ioc().getBeans(FilterRegisterBean.class);
         this.filterMapping = new DefaultFilterMapping();
         this.filterMapping.registerDispatcher(this.dispatcher);
         filterRegisterBeans.forEach(f->this.filterMapping.registerFilter(f));
+        this.requestTasks = new Recycler<>("request task", () -> new RequestTask(this, this.filterMapping, this.sessionManager),
+                RequestTask::recycle, recycle, maxCached, leakDetection);
     }
 
     @Override
     public void run() {
+        this.thread = Thread.currentThread();
         while(this.isStart){
+            int n = -1;
+            this.wakenUp.set(false);
             try {
-                int n = -1;
-                try {
-                    n = selector.select(1000);
-                    semaphore.acquire();
-                } catch (InterruptedException e) {
-                    logger.error("", e);
-                } finally {
-                    semaphore.release();
-                }
-                if(n<=0)
-                    continue;
+                if(!this.taskQueue.isEmpty())
+                    n = selector.selectNow();
+                else
+                    n = selector.select(this.timingWheel.isEmpty() ? 1000 : this.timingWheel.untilNextTick());
             } catch (IOException e) {
                 logger.error("", e);
+            }
+            if(n > 0)
+                processSelectedKeys();
+            runAllTasks();
+            this.timingWheel.advance();
+        }
+    }
+
+    private void processSelectedKeys(){
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while(iterator.hasNext()){
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            if(!key.isValid())
                 continue;
+            try {
+                if (key.isAcceptable()) {
+                    accept(key);
+                }
+                if (key.isReadable()) {
+                    read(key);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write(key);
+                }
+            }catch (Exception e){
+                close(key);
+                logger.error("", e);
             }
-            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
-            while(iterator.hasNext()){
-                SelectionKey key = iterator.next();
-                iterator.remove();
-                if(!key.isValid())
-                    continue;
+        }
+    }
+
+    private void runAllTasks(){
+        Runnable task;
+        while((task = this.taskQueue.poll()) != null){
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("", e);
+            }
+        }
+    }
+
+    /**
+     * run the task on the io thread of this loop, the task is queued and the selector
+     * is woken up when the caller is another thread. tasks queued while the loop is awake
+     * share a single wakeup
+     */
+    public void execute(Runnable task){
+        if(inEventLoop()) {
+            task.run();
+            return;
+        }
+        this.taskQueue.offer(task);
+        if(this.wakenUp.compareAndSet(false, true))
+            this.selector.wakeup();
+    }
+
+    /**
+     * queue the task even when the caller is the io thread, it runs after the selected keys are
+     * processed. a connection asking for a flush many times while one event is handled is
+     * flushed once
+     */
+    public void executeLater(Runnable task){
+        this.taskQueue.offer(task);
+        if(!inEventLoop() && this.wakenUp.compareAndSet(false, true))
+            this.selector.wakeup();
+    }
+
+    public boolean inEventLoop(){
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * accept what is waiting, up to the batch size. an accept which fails is logged and the
+     * listening socket is kept, it is selected again when a slot frees up. a loop with no child
+     * group listens on its own reuseport socket and keeps the connections it accepts
+     */
+    private void accept(SelectionKey key) {
+        ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
+        for(int i = 0; i < this.socketConfig.acceptBatchSize(); i++) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverSocketChannel.accept();
+            } catch (IOException e) {
+                logger.error("", e);
+                return;
+            }
+            if(socketChannel == null)
+                return;
+            try {
+                socketChannel.configureBlocking(false);
+                this.socketConfig.configure(socketChannel);
+            } catch (IOException e) {
+                logger.error("", e);
                 try {
-                    if (key.isAcceptable()) {
-                        accept(key);
-                    }
-                    if (key.isReadable()) {
-                        read(key);
-                    }
-                    if (key.isWritable()) {
-                        write(key);
-                    }
-                }catch (Exception e){
-                    if(key!=null&&key.isValid()){
-                        try {
-                            key.channel().close();
-                        } catch (IOException e1) {
-                            e1.printStackTrace();
-                        }
-                    }
-                    logger.error("", e);
+                    socketChannel.close();
+                } catch (IOException e1) {
+                    logger.error("", e1);
                 }
+                continue;
             }
+            if(this.childGroup == null) {
+                connectionOpened();
+                register(socketChannel, SelectionKey.OP_READ, new HttpProtocolParser(socketChannel, this.bufferPool, this.objectPool, this.parserConfig, this.webSocketMapping));
+                continue;
+            }
+            EventExecutor executor = this.childGroup.next();
+            executor.register(socketChannel, SelectionKey.OP_READ, new HttpProtocolParser(socketChannel, executor.bufferPool(), executor.eventLoop().objectPool(), this.parserConfig, this.webSocketMapping));
         }
     }
 
-    private void accept(SelectionKey key) throws IOException {
-        ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
-        SocketChannel socketChannel = serverSocketChannel.accept();
-        socketChannel.configureBlocking(false);
-        this.childGroup.register(socketChannel, SelectionKey.OP_READ, new HttpProtocolParser(socketChannel));
+    /**
+     * register the channel with the selector of this loop, must run on the io thread. the idle
+     * timeout of a new connection starts here, a client which never sends anything is closed too
+     */
+    public void register(SelectableChannel channel, int ops, Object att){
+        SelectionKey key;
+        try {
+            key = channel.register(this.selector, ops, att);
+        } catch (ClosedChannelException e) {
+            logger.error("", e);
+            if(att instanceof ProtocolParser)
+                ((ProtocolParser) att).release();
+            if(channel instanceof SocketChannel)
+                connectionClosed();
+            try {
+                channel.close();
+            } catch (IOException e1) {
+                logger.error("", e1);
+            }
+            return;
+        }
+        if(att instanceof ProtocolParser)
+            scheduleTimeout(key, (ProtocolParser) att);
     }
 
     private void read(SelectionKey key) throws Exception{
-        HttpProtocolParser httpProtocolParser = (HttpProtocolParser) key.attachment();
-        httpProtocolParser.parser();
-        HttpRequest request;
-        HttpResponse response;
-        if(httpProtocolParser.parsed()){
-            request = httpProtocolParser.takeHttpRequest();
-            String id = sessionManager.createSession(request);
-            response = httpProtocolParser.genHttpResponse();
-            if(id != null)
-                response.cookie(SessionManager.SESSION_KEY, id);
-            AppContext.initAppContext(request, response);
-            this.filterMapping.mappingFilters(request).doFilter(request, response);
-            AppContext.destroyAppContext();
+        ProtocolParser protocolParser = (ProtocolParser) key.attachment();
+        protocolParser.parser();
+        dispatch(key, protocolParser);
+        if(key.isValid() && !protocolParser.outboundBuffer().isEmpty())
+            write(key);
+    }
+
+    /**
+     * dispatch every parsed request of the connection, parsing the buffered bytes again
+     * whenever the pipeline has room
+     */
+    private void dispatch(SelectionKey key, ProtocolParser protocolParser) throws Exception {
+        do {
+            protocolParser = upgrade(key, protocolParser);
+            while(protocolParser.parsed() && key.isValid())
+                dispatchRequest(key, (HttpRequestParser) protocolParser);
+            protocolParser.resume();
+        } while((protocolParser.parsed() || protocolParser.upgrade() != null) && key.isValid());
+        updateInterestOps(key, protocolParser);
+    }
+
+    /**
+     * the client switched to http/2 or websocket: the new parser is attached to the key and parses
+     * what the old one had read. the outbound buffer is shared, so nothing written is lost
+     */
+    private ProtocolParser upgrade(SelectionKey key, ProtocolParser protocolParser) throws ProtocolParserException {
+        ProtocolParser upgraded = protocolParser.upgrade();
+        if(upgraded == null)
+            return protocolParser;
+        upgraded.timeout(protocolParser.timeout());
+        key.attach(upgraded);
+        if(upgraded instanceof WebSocketConnection) {
+            WebSocketConnection connection = (WebSocketConnection) upgraded;
+            connection.open(() -> executeLater(() -> flushed(key, connection)));
+        }
+        upgraded.resume();
+        return upgraded;
+    }
+
+    private void dispatchRequest(SelectionKey key, HttpRequestParser protocolParser){
+        HttpRequest request = protocolParser.takeHttpRequest();
+        ResponseSlot slot = protocolParser.reserve(request, protocolParser.genHttpResponse());
+        if(slot.response() instanceof TinyHttpResponse && this.compression.isEnabled()) {
+            TinyHttpResponse response = (TinyHttpResponse) slot.response();
+            response.compression(this.compression, this.compression.negotiate(request.firstHeader(HttpConst.ACCEPT_ENCODING).map(HttpHeader::value).orElse(null)));
+        }
+        RequestTask task = this.requestTasks.acquire().init(key, protocolParser, request, slot);
+        if(this.businessExecutor == null){
+            task.run();
+            return;
+        }
+        try {
+            this.businessExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.warn("business executor is busy, reject request {}", request.uri());
+            serviceUnavailable(slot.response());
+            complete(key, protocolParser, slot);
+            if(request instanceof TinyHttpRequest)
+                ((TinyHttpRequest) request).release();
+            protocolParser.recycle(request, slot);
+            this.requestTasks.recycle(task);
+        }
+    }
+
+    private void serviceUnavailable(HttpResponse response){
+        try {
+            response.status(503);
             response.flush();
-            httpProtocolParser.putHttpResponse(response);
-            key.interestOps(SelectionKey.OP_WRITE);
-            /*if(httpProtocolParser.isClosed())
-                key.interestOps(SelectionKey.OP_WRITE);
-            else
-                key.interestOps(SelectionKey.OP_READ|SelectionKey.OP_WRITE);*/
+        } catch (Exception e) {
+            logger.error("", e);
+        }
+    }
+
+    /**
+     * called by the request running the handler when it flushes a committed response
+     */
+    void stream(SelectionKey key, HttpRequestParser protocolParser, ResponseSlot slot, ByteBuffer[] buffers) throws IOException {
+        if(slot.isAborted())
+            throw new ClosedChannelException();
+        execute(()->streamed(key, protocolParser, slot, buffers));
+    }
+
+    /**
+     * write what the socket takes at once, the rest waits for OP_WRITE. this may run inside the
+     * handler of an io mode request, so nothing is dispatched from here
+     */
+    private void streamed(SelectionKey key, HttpRequestParser protocolParser, ResponseSlot slot, ByteBuffer[] buffers){
+        if(!key.isValid())
+            return;
+        boolean writable = protocolParser.outboundBuffer().isWritable();
+        protocolParser.stream(slot, buffers);
+        try {
+            protocolParser.outboundBuffer().writeTo((SocketChannel) key.channel());
+        } catch (IOException e) {
+            logger.debug("write streamed response failed, close connection {}", key.channel());
+            close(key);
+            return;
         }
+        if(!writable && protocolParser.outboundBuffer().isWritable())
+            executeLater(() -> resume(key, protocolParser));
+        updateInterestOps(key, protocolParser);
     }
 
-    private void write(SelectionKey key) throws IOException {
-        ByteBuffer buffer;
-        HttpProtocolParser httpProtocolParser = (HttpProtocolParser) key.attachment();
+    /**
+     * write the websocket frames sent since the last flush of the connection
+     */
+    private void flushed(SelectionKey key, WebSocketConnection connection){
+        if(!key.isValid())
+            return;
+        boolean writable = connection.outboundBuffer().isWritable();
+        connection.flush();
+        try {
+            connection.outboundBuffer().writeTo((SocketChannel) key.channel());
+        } catch (IOException e) {
+            logger.debug("write websocket frames failed, close connection {}", key.channel());
+            close(key);
+            return;
+        }
+        if(!writable && connection.outboundBuffer().isWritable())
+            executeLater(() -> resume(key, connection));
+        updateInterestOps(key, connection);
+    }
+
+    /**
+     * the outbound buffer went down to its low watermark outside of a write event, what the
+     * parser stopped at is parsed and dispatched now
+     */
+    private void resume(SelectionKey key, ProtocolParser protocolParser){
+        if(!key.isValid() || key.attachment() != protocolParser)
+            return;
+        try {
+            dispatch(key, protocolParser);
+        } catch (Exception e) {
+            close(key);
+            logger.error("", e);
+        }
+    }
+
+    /**
+     * the handler of the task is done, its request, its response and the task itself may be
+     * reused. the task of an async response may still be called by the handler, it is not
+     */
+    void complete(RequestTask task){
+        complete(task.key(), task.protocolParser(), task.slot());
+        task.protocolParser().recycle(task.request(), task.slot());
+        recycle(task);
+    }
+
+    /**
+     * the handler of the task failed, the connection is closed
+     */
+    void fail(RequestTask task){
+        close(task.key());
+        task.protocolParser().recycle(task.request(), task.slot());
+        recycle(task);
+    }
+
+    private void recycle(RequestTask task){
+        if(task.response().isAsync())
+            this.requestTasks.discard(task);
+        else
+            this.requestTasks.recycle(task);
+    }
+
+    void complete(SelectionKey key, HttpRequestParser protocolParser, ResponseSlot slot){
+        if(!key.isValid())
+            return;
+        protocolParser.complete(slot);
+        updateInterestOps(key, protocolParser);
+    }
+
+    /**
+     * read while the pipeline has room, the outbound buffer is under its high watermark and the
+     * client may send more, write while something is pending
+     */
+    private void updateInterestOps(SelectionKey key, ProtocolParser protocolParser){
+        if(!key.isValid())
+            return;
+        if(protocolParser.isFinished()){
+            close(key);
+            return;
+        }
+        int ops = 0;
+        if(!protocolParser.isClosed() && !protocolParser.isPipelineFull())
+            ops |= SelectionKey.OP_READ;
+        if(!protocolParser.outboundBuffer().isEmpty())
+            ops |= SelectionKey.OP_WRITE;
+        if(key.interestOps() != ops)
+            key.interestOps(ops);
+        scheduleTimeout(key, protocolParser);
+    }
+
+    /**
+     * idle: nothing received since the last response, restarted on every response
+     * header read: counted from the first byte of the request, bytes trickling in do not restart it
+     * body read: restarted whenever a part of the body arrives
+     * no read timeout applies while the connection waits for its responses
+     */
+    private void scheduleTimeout(SelectionKey key, ProtocolParser protocolParser){
+        Timeout timeout = protocolParser.timeout();
+        if(timeout == null) {
+            timeout = new Timeout(key);
+            protocolParser.timeout(timeout);
+        }
+        if(protocolParser.isClosed() || protocolParser.pendingRequests() > 0 || !protocolParser.outboundBuffer().isEmpty()){
+            this.timingWheel.cancel(timeout);
+            return;
+        }
+        ReadState state = protocolParser.readState();
+        if(state == ReadState.HEADERS && timeout.isScheduled() && timeout.tag() == ReadState.HEADERS)
+            return;
+        long delay = state == ReadState.IDLE ? this.idleTimeout : state == ReadState.HEADERS ? this.headerReadTimeout : this.bodyReadTimeout;
+        timeout.tag(state);
+        if(delay > 0)
+            this.timingWheel.schedule(timeout, delay);
+        else
+            this.timingWheel.cancel(timeout);
+    }
+
+    private void expire(Timeout timeout){
+        SelectionKey key = (SelectionKey) timeout.attachment();
+        logger.debug("{} timeout, close connection {}", timeout.tag(), key.channel());
+        close(key);
+    }
+
+    void close(SelectionKey key){
+        if(key.attachment() instanceof ProtocolParser) {
+            ProtocolParser protocolParser = (ProtocolParser) key.attachment();
+            if(protocolParser.timeout() != null)
+                this.timingWheel.cancel(protocolParser.timeout());
+            protocolParser.release();
+        }
+        if(!key.channel().isOpen())
+            return;
+        if(key.channel() instanceof SocketChannel)
+            connectionClosed();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.error("", e);
+        }
+    }
+
+    private void write(SelectionKey key) throws Exception {
+        ProtocolParser protocolParser = (ProtocolParser) key.attachment();
         SocketChannel socketChannel = (SocketChannel) key.channel();
-        do{
-            buffer = httpProtocolParser.takeHttpResponseBuffer();
-            if(buffer == null){
-                if(httpProtocolParser.isClosed())
-                    key.cancel();
-                else
-                    key.interestOps(SelectionKey.OP_READ);
-                break;
-            }
-            socketChannel.write(buffer);
-        } while(!buffer.hasRemaining());
-        if(buffer != null)
-            httpProtocolParser.putResponseBuffer(buffer);
+        OutboundBuffer outboundBuffer = protocolParser.outboundBuffer();
+        boolean writable = outboundBuffer.isWritable();
+        // the parser is resumed when everything is written, or when the buffer just went down
+        // to its low watermark and the requests read before may be waiting
+        if(!outboundBuffer.writeTo(socketChannel) && (writable || !outboundBuffer.isWritable())) {
+            updateInterestOps(key, protocolParser);
+            return;
+        }
+        dispatch(key, protocolParser);
+    }
+
+    public void connectionOpened(){
+        this.connectionCount.incrementAndGet();
+    }
+
+    private void connectionClosed(){
+        this.connectionCount.decrementAndGet();
+    }
+
+    public int connectionCount(){
+        return this.connectionCount.get();
+    }
+
+    public HttpObjectPool objectPool(){
+        return this.objectPool;
     }
 
     @Override
@@ -161,8 +573,4 @@ public class EventLoop implements Runnable, Task {
         this.filterMapping.distory();
         this.isStart = false;
     }
-
-    public Semaphore semaphore(){
-        return this.semaphore;
-    }
 }
@@ -0,0 +1,164 @@
+package me.stevenkin.boomvc.server.task;
+
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.filter.FilterMapping;
+import me.stevenkin.boomvc.server.http.StreamSink;
+import me.stevenkin.boomvc.server.http.TinyHttpRequest;
+import me.stevenkin.boomvc.server.http.TinyHttpResponse;
+import me.stevenkin.boomvc.server.parser.HttpRequestParser;
+import me.stevenkin.boomvc.server.parser.http.ResponseSlot;
+import me.stevenkin.boomvc.server.session.SessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+
+/**
+ * run the filter chain and the dispatcher for one request, then hand the response
+ * back to the event loop which owns the connection. the event loop reuses the task
+ * for another request once it is complete
+ */
+public class RequestTask implements Runnable, StreamSink {
+    private static final Logger logger = LoggerFactory.getLogger(RequestTask.class);
+
+    private final EventLoop eventLoop;
+
+    private final FilterMapping filterMapping;
+
+    private final SessionManager sessionManager;
+
+    /**
+     * made once with the task, so no lambda is made per request
+     */
+    private final Runnable completer = this::completeAsync;
+
+    private final Runnable completion;
+
+    private SelectionKey key;
+
+    private HttpRequestParser protocolParser;
+
+    private HttpRequest request;
+
+    private ResponseSlot slot;
+
+    private HttpResponse response;
+
+    public RequestTask(EventLoop eventLoop, FilterMapping filterMapping, SessionManager sessionManager) {
+        this.eventLoop = eventLoop;
+        this.filterMapping = filterMapping;
+        this.sessionManager = sessionManager;
+        this.completion = () -> this.eventLoop.complete(this);
+    }
+
+    RequestTask init(SelectionKey key, HttpRequestParser protocolParser, HttpRequest request, ResponseSlot slot) {
+        this.key = key;
+        this.protocolParser = protocolParser;
+        this.request = request;
+        this.slot = slot;
+        this.response = slot.response();
+        if(this.response instanceof TinyHttpResponse) {
+            TinyHttpResponse response = (TinyHttpResponse) this.response;
+            response.streamSink(this);
+            response.asyncCompleter(this.completer);
+        }
+        return this;
+    }
+
+    void recycle() {
+        this.key = null;
+        this.protocolParser = null;
+        this.request = null;
+        this.slot = null;
+        this.response = null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            String id = this.sessionManager.createSession(this.request);
+            if(id != null)
+                this.response.cookie(SessionManager.SESSION_KEY, id);
+            AppContext.initAppContext(this.request, this.response);
+            try {
+                this.filterMapping.mappingFilters(this.request).doFilter(this.request, this.response);
+            } finally {
+                AppContext.destroyAppContext();
+            }
+            if(!this.response.isAsync())
+                this.response.flush();
+        } catch (Exception e) {
+            logger.error("", e);
+            // an async response is completed when its connection is closed, its request goes then
+            if(!this.response.isAsync())
+                release();
+            this.eventLoop.execute(()->this.eventLoop.fail(this));
+            return;
+        }
+        if(!this.response.isAsync()) {
+            release();
+            this.eventLoop.execute(this.completion);
+        }
+    }
+
+    /**
+     * the body and the uploaded files of the request are deleted once the response is done, the
+     * stage of an async response may still read them after the handler returned
+     */
+    private void release(){
+        if(this.request instanceof TinyHttpRequest)
+            ((TinyHttpRequest) this.request).release();
+    }
+
+    /**
+     * a part of a committed response, called by the thread running the handler
+     */
+    @Override
+    public void write(ByteBuffer[] buffers) throws IOException {
+        this.eventLoop.stream(this.key, this.protocolParser, this.slot, buffers);
+    }
+
+    /**
+     * end a response the handler kept open, called once by its async context from any thread.
+     * the slot is given back after the current event even on the io thread, since the
+     * connection may be closing right now. a closed connection takes no more bytes
+     */
+    private void completeAsync(){
+        if(!this.slot.isAborted()) {
+            try {
+                this.response.flush();
+            } catch (Exception e) {
+                logger.error("", e);
+                release();
+                this.eventLoop.execute(()->this.eventLoop.fail(this));
+                return;
+            }
+        }
+        release();
+        this.eventLoop.executeLater(this.completion);
+    }
+
+    SelectionKey key() {
+        return this.key;
+    }
+
+    HttpRequestParser protocolParser() {
+        return this.protocolParser;
+    }
+
+    HttpRequest request() {
+        return this.request;
+    }
+
+    ResponseSlot slot() {
+        return this.slot;
+    }
+
+    HttpResponse response() {
+        return this.response;
+    }
+}
@@ -0,0 +1,124 @@
+package me.stevenkin.boomvc.server.timer;
+
+import java.util.function.Consumer;
+
+/**
+ * hashed timing wheel owned by one event loop, it is only touched by the io thread of that loop.
+ * schedule and cancel are O(1) list operations, advance walks the buckets of the elapsed ticks
+ * and hands the expired timeouts to the handler
+ */
+public class HashedTimingWheel {
+
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickDuration;
+
+    /**
+     * sentinel of the circular list of every bucket
+     */
+    private final Timeout[] buckets;
+
+    private final int mask;
+
+    private final long startTime;
+
+    private final Consumer<Timeout> handler;
+
+    /**
+     * the next tick to be processed
+     */
+    private long tick = 0;
+
+    private int size = 0;
+
+    public HashedTimingWheel(Consumer<Timeout> handler) {
+        this(DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL, handler);
+    }
+
+    public HashedTimingWheel(long tickDuration, int ticksPerWheel, Consumer<Timeout> handler) {
+        if(tickDuration <= 0)
+            throw new IllegalArgumentException("tick duration must be positive");
+        if(ticksPerWheel <= 0 || (ticksPerWheel & (ticksPerWheel - 1)) != 0)
+            throw new IllegalArgumentException("ticks per wheel must be a power of two");
+        this.tickDuration = tickDuration;
+        this.buckets = new Timeout[ticksPerWheel];
+        for(int i = 0; i < ticksPerWheel; i++){
+            Timeout sentinel = new Timeout(null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            this.buckets[i] = sentinel;
+        }
+        this.mask = ticksPerWheel - 1;
+        this.handler = handler;
+        this.startTime = now();
+    }
+
+    /**
+     * (re)schedule the timeout to expire after the delay in milliseconds, rounded up to a tick
+     */
+    public void schedule(Timeout timeout, long delay){
+        cancel(timeout);
+        long deadline = (now() - this.startTime + delay + this.tickDuration - 1) / this.tickDuration;
+        deadline = Math.max(deadline, this.tick);
+        timeout.rounds = (deadline - this.tick) / this.buckets.length;
+        Timeout sentinel = this.buckets[(int) (deadline & this.mask)];
+        timeout.prev = sentinel.prev;
+        timeout.next = sentinel;
+        sentinel.prev.next = timeout;
+        sentinel.prev = timeout;
+        this.size++;
+    }
+
+    public void cancel(Timeout timeout){
+        if(!timeout.isScheduled())
+            return;
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        this.size--;
+    }
+
+    /**
+     * expire every timeout whose tick has passed
+     */
+    public void advance(){
+        long current = (now() - this.startTime) / this.tickDuration;
+        while(this.tick <= current){
+            if(this.size == 0) {
+                this.tick = current + 1;
+                break;
+            }
+            Timeout sentinel = this.buckets[(int) (this.tick & this.mask)];
+            this.tick++;
+            Timeout timeout = sentinel.next;
+            while(timeout != sentinel){
+                Timeout next = timeout.next;
+                if(timeout.rounds > 0) {
+                    timeout.rounds--;
+                } else {
+                    cancel(timeout);
+                    this.handler.accept(timeout);
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * milliseconds until the next tick, how long the loop may block in select
+     */
+    public long untilNextTick(){
+        return Math.max(1, this.tick * this.tickDuration - (now() - this.startTime));
+    }
+
+    public boolean isEmpty(){
+        return this.size == 0;
+    }
+
+    private static long now(){
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,41 @@
+package me.stevenkin.boomvc.server.timer;
+
+/**
+ * a node of the timing wheel, it is linked into one bucket while scheduled. one timeout is
+ * created per connection and rescheduled again and again, nothing is allocated per schedule
+ */
+public class Timeout {
+
+    private final Object attachment;
+
+    private Object tag;
+
+    long rounds;
+
+    Timeout prev;
+
+    Timeout next;
+
+    public Timeout(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public Object attachment() {
+        return attachment;
+    }
+
+    /**
+     * what the timeout is scheduled for, set by the owner
+     */
+    public Object tag() {
+        return tag;
+    }
+
+    public void tag(Object tag) {
+        this.tag = tag;
+    }
+
+    public boolean isScheduled() {
+        return this.prev != null;
+    }
+}
@@ -0,0 +1,74 @@
+package me.stevenkin.boomvc.server.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import static org.junit.Assert.*;
+
+public class OutboundBufferTest {
+
+    @Test
+    public void watermarks() throws Exception {
+        OutboundBuffer buffer = new OutboundBuffer(100, 40);
+        buffer.add(ByteBuffer.allocate(60));
+        assertTrue(buffer.isWritable());
+        buffer.add(ByteBuffer.allocate(60));
+        assertFalse(buffer.isWritable());
+        assertFalse(buffer.writeTo(new SlowChannel(50)));
+        assertEquals(70, buffer.pendingBytes());
+        assertFalse(buffer.isWritable());
+        assertFalse(buffer.writeTo(new SlowChannel(30)));
+        assertEquals(40, buffer.pendingBytes());
+        assertTrue(buffer.isWritable());
+        buffer.add(ByteBuffer.allocate(70));
+        assertFalse(buffer.isWritable());
+        buffer.clear();
+        assertTrue(buffer.isWritable());
+        assertTrue(buffer.isEmpty());
+    }
+
+    /**
+     * takes at most the given bytes per write, like a socket whose send buffer is nearly full
+     */
+    private static class SlowChannel implements GatheringByteChannel {
+
+        private long capacity;
+
+        private SlowChannel(long capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for(int i = offset; i < offset + length && this.capacity > 0; i++){
+                int n = (int) Math.min(srcs[i].remaining(), this.capacity);
+                srcs[i].position(srcs[i].position() + n);
+                this.capacity -= n;
+                written += n;
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[]{ src });
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
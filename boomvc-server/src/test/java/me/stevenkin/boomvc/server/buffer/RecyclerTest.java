@@ -0,0 +1,47 @@
+package me.stevenkin.boomvc.server.buffer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecyclerTest {
+
+    @Test
+    public void reuse(){
+        Recycler<List<String>> recycler = new Recycler<>("list", ArrayList::new, List::clear, true, 1, false);
+        List<String> list = recycler.acquire();
+        list.add("a");
+        recycler.recycle(list);
+        assertSame(list, recycler.acquire());
+        assertTrue(list.isEmpty());
+        recycler.recycle(list);
+        recycler.recycle(new ArrayList<>());
+        assertEquals(1, recycler.cached());
+    }
+
+    @Test
+    public void disabled(){
+        Recycler<List<String>> recycler = new Recycler<>("list", ArrayList::new, List::clear, false, 1, true);
+        List<String> list = recycler.acquire();
+        recycler.recycle(list);
+        assertNotSame(list, recycler.acquire());
+        assertEquals(0, recycler.cached());
+    }
+
+    @Test
+    public void recycledTwice(){
+        Recycler<Object> recycler = new Recycler<>("object", Object::new, o -> {}, true, 8, true);
+        Object object = recycler.acquire();
+        recycler.recycle(object);
+        recycler.recycle(object);
+        recycler.recycle(new Object());
+        assertEquals(1, recycler.cached());
+        Object discarded = recycler.acquire();
+        recycler.discard(discarded);
+        recycler.recycle(discarded);
+        assertEquals(0, recycler.cached());
+    }
+}
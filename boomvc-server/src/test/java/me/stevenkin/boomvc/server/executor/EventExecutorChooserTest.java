@@ -0,0 +1,156 @@
+package me.stevenkin.boomvc.server.executor;
+
+import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
+import me.stevenkin.boomvc.common.view.View;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.ioc.Environment;
+import me.stevenkin.boomvc.ioc.Ioc;
+import me.stevenkin.boomvc.ioc.SimpleIoc;
+import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.kit.NameThreadFactory;
+import me.stevenkin.boomvc.server.parser.http.HttpParserConfig;
+import me.stevenkin.boomvc.server.parser.http.HttpProtocolParser;
+import me.stevenkin.boomvc.server.session.SessionManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EventExecutorChooserTest {
+
+    @Before
+    public void setUp() {
+        AppContext.init(new SimpleIoc(), Environment.empty(), "/");
+    }
+
+    @Test
+    public void powerOfTwo() throws Exception {
+        EventExecutor[] executors = executors(4);
+        EventExecutorChooser chooser = EventExecutorChooser.newChooser(EventExecutorChooser.ROUND_ROBIN, executors);
+        assertTrue(chooser instanceof EventExecutorChooser.PowerOfTwoChooser);
+        assertRoundRobin(chooser, executors);
+    }
+
+    @Test
+    public void generic() throws Exception {
+        EventExecutor[] executors = executors(3);
+        EventExecutorChooser chooser = EventExecutorChooser.newChooser("Round-Robin", executors);
+        assertTrue(chooser instanceof EventExecutorChooser.GenericChooser);
+        assertRoundRobin(chooser, executors);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategy() throws Exception {
+        EventExecutorChooser.newChooser("random", executors(2));
+    }
+
+    @Test
+    public void leastConnections() throws Exception {
+        EventExecutor[] executors = executors(3);
+        EventExecutorChooser chooser = EventExecutorChooser.newChooser(EventExecutorChooser.LEAST_CONNECTIONS, executors);
+        assertTrue(chooser instanceof EventExecutorChooser.LeastConnectionsChooser);
+        // no connection anywhere, the ties go round robin
+        assertRoundRobin(chooser, executors);
+
+        opened(executors[0], 2);
+        opened(executors[2], 1);
+        for(int i = 0; i < 10; i++)
+            assertSame(executors[1], chooser.next());
+
+        // every new connection goes to the executor with the fewest until they are even
+        Map<EventExecutor, Integer> chosen = new IdentityHashMap<>();
+        for(int i = 0; i < 9; i++){
+            EventExecutor executor = chooser.next();
+            chosen.merge(executor, 1, Integer::sum);
+            opened(executor, 1);
+        }
+        for(EventExecutor executor : executors)
+            assertEquals(4, executor.connectionCount());
+        assertEquals(Integer.valueOf(2), chosen.get(executors[0]));
+        assertEquals(Integer.valueOf(4), chosen.get(executors[1]));
+        assertEquals(Integer.valueOf(3), chosen.get(executors[2]));
+    }
+
+    /**
+     * a connection counts from the moment it is handed to the executor, before the io thread
+     * registers it, and until the io thread closes it. a listening socket does not count
+     */
+    @Test
+    public void connectionCount() throws Exception {
+        EventExecutor executor = new EventExecutor(new NameThreadFactory("@test"), null, new NoDispatcher(),
+                new WebSocketMapping(), new SessionManager(), null);
+        try(ServerSocketChannel serverChannel = ServerSocketChannel.open(); Socket client = new Socket()) {
+            serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+            serverChannel.configureBlocking(false);
+            executor.register(serverChannel, 0);
+            assertEquals(0, executor.connectionCount());
+
+            client.connect(serverChannel.getLocalAddress());
+            SocketChannel channel = null;
+            while(channel == null)
+                channel = serverChannel.accept();
+            channel.configureBlocking(false);
+            executor.register(channel, SelectionKey.OP_READ, new HttpProtocolParser(channel, executor.bufferPool(),
+                    executor.eventLoop().objectPool(), HttpParserConfig.of(Environment.empty()), new WebSocketMapping()));
+            assertEquals(1, executor.connectionCount());
+
+            executor.start();
+            client.close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while(executor.connectionCount() != 0){
+                assertTrue("the closed connection is still counted", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            assertFalse(channel.isOpen());
+        } finally {
+            executor.stop();
+            executor.eventLoop().execute(() -> {});
+        }
+    }
+
+    private static void assertRoundRobin(EventExecutorChooser chooser, EventExecutor[] executors){
+        EventExecutor first = chooser.next();
+        int start = 0;
+        while(executors[start] != first)
+            start++;
+        for(int i = 1; i < executors.length * 100; i++)
+            assertSame(executors[(start + i) % executors.length], chooser.next());
+    }
+
+    private static void opened(EventExecutor executor, int count){
+        for(int i = 0; i < count; i++)
+            executor.eventLoop().connectionOpened();
+    }
+
+    private static EventExecutor[] executors(int count) throws Exception {
+        EventExecutor[] executors = new EventExecutor[count];
+        for(int i = 0; i < count; i++)
+            executors[i] = new EventExecutor(new NameThreadFactory("@test"), null, null, new WebSocketMapping(), new SessionManager(), null);
+        return executors;
+    }
+
+    private static class NoDispatcher implements MvcDispatcher {
+
+        @Override
+        public void init(Ioc ioc, Environment environment, Class<? extends View> viewTemplate) {
+        }
+
+        @Override
+        public void dispatcher(HttpRequest request, HttpResponse response) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package me.stevenkin.boomvc.server.executor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class MpscQueueTest {
+
+    @Test
+    public void singleThread() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for(int i = 0; i < 10; i++)
+            queue.offer(i);
+        assertFalse(queue.isEmpty());
+        for(int i = 0; i < 10; i++)
+            assertEquals(Integer.valueOf(i), queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullElement() {
+        new MpscQueue<Integer>().offer(null);
+    }
+
+    /**
+     * the consumer polls while the producers offer: nothing is lost or seen twice, and the
+     * elements of one producer come out in the order it offered them
+     */
+    @Test
+    public void manyProducers() throws Exception {
+        int producers = 8;
+        int perProducer = 100_000;
+        MpscQueue<long[]> queue = new MpscQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int p = 0; p < producers; p++){
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for(int i = 0; i < perProducer; i++)
+                    queue.offer(new long[]{producer, i});
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        long[] next = new long[producers];
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30_000;
+        while(received < producers * perProducer){
+            long[] element = queue.poll();
+            if(element == null) {
+                assertTrue("elements are missing", System.currentTimeMillis() < deadline);
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) element[0];
+            assertEquals("out of order for producer " + producer, next[producer], element[1]);
+            next[producer]++;
+            received++;
+        }
+        for(Thread thread : threads)
+            thread.join();
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        for(long count : next)
+            assertEquals(perProducer, count);
+    }
+}
@@ -0,0 +1,55 @@
+package me.stevenkin.boomvc.server.http;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.*;
+
+public class HeaderTableTest {
+
+    private static void parse(HeaderTable table, String name, String value){
+        for(byte b : name.getBytes())
+            table.append(b);
+        table.nameParsed();
+        for(byte b : value.getBytes())
+            table.append(b);
+        table.valueParsed();
+    }
+
+    @Test
+    public void parsed(){
+        HeaderTable table = new HeaderTable();
+        parse(table, "Host", "localhost");
+        parse(table, "Content-Type", "text/plain \t");
+        parse(table, "X-Forwarded-For", "a");
+        parse(table, "x-forwarded-for", "b");
+        assertEquals(4, table.size());
+        assertEquals("localhost", table.get("host"));
+        assertEquals("text/plain", table.get("CONTENT-TYPE"));
+        assertEquals(HeaderTable.hash("content-type"), table.hash(1));
+        assertTrue(table.nameEquals(1, "content-type"));
+        assertNull(table.get("Content-Length"));
+        assertEquals(2, table.list("X-FORWARDED-FOR").size());
+        assertEquals("b", table.list("X-Forwarded-For").get(1).value());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("Host", "Content-Type", "X-Forwarded-For")), table.names());
+    }
+
+    @Test
+    public void addRemoveEncode(){
+        HeaderTable table = new HeaderTable();
+        for(int i = 0; i < 20; i++)
+            table.add("X-" + i, Integer.toString(i));
+        table.add("Set-Cookie", "a=1");
+        table.add("set-cookie", "b=2");
+        table.remove("SET-COOKIE");
+        assertEquals(20, table.size());
+        assertFalse(table.contains("Set-Cookie"));
+        assertEquals("19", table.get("x-19"));
+        table.remove("X-0");
+        byte[] bytes = new byte[table.encodedLength()];
+        assertEquals(bytes.length, table.encode(bytes, 0));
+        assertTrue(new String(bytes).startsWith("X-1: 1\r\nX-2: 2\r\n"));
+    }
+}
@@ -0,0 +1,146 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.common.compress.Compressor;
+import me.stevenkin.boomvc.common.compress.HttpCompression;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpCompressionTest {
+
+    private final HttpCompression compression = new HttpCompression(true, 100, Arrays.asList("text/*", "application/json"));
+
+    @Test
+    public void negotiate(){
+        assertNull(this.compression.negotiate(null));
+        assertNull(this.compression.negotiate(""));
+        assertNull(this.compression.negotiate("identity, br"));
+        assertEquals("gzip", this.compression.negotiate("gzip, deflate"));
+        assertEquals("gzip", this.compression.negotiate("deflate;q=0.8, gzip;q=0.8"));
+        assertEquals("deflate", this.compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("gzip", this.compression.negotiate(" GZIP ; q=1.0 "));
+        assertEquals("gzip", this.compression.negotiate("x-gzip"));
+        assertNull(this.compression.negotiate("gzip;q=0, deflate;q=0"));
+        assertNull(this.compression.negotiate("gzip;q=oops"));
+        // the wildcard stands for the codings not named
+        assertEquals("gzip", this.compression.negotiate("*;q=0.3, deflate;q=0.2"));
+        assertEquals("deflate", this.compression.negotiate("gzip;q=0, *"));
+        assertNull(this.compression.negotiate("*;q=0"));
+        assertNull(new HttpCompression(false, 0, Collections.singletonList("text/*")).negotiate("gzip"));
+    }
+
+    @Test
+    public void compressible(){
+        assertTrue(this.compression.isCompressible("text/html; charset=UTF-8", 100));
+        assertTrue(this.compression.isCompressible("Application/JSON", -1));
+        assertFalse(this.compression.isCompressible("text/plain", 99));
+        assertFalse(this.compression.isCompressible("image/png", 1000));
+        assertFalse(this.compression.isCompressible(null, 1000));
+    }
+
+    @Test
+    public void gzipTrailer() throws Exception {
+        byte[] body = body(100 * 1024);
+        Compressor compressor = new Compressor(Compressor.GZIP);
+        byte[] compressed = compressor.compress(body);
+        compressor.end();
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer trailer = ByteBuffer.wrap(compressed, compressed.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals((int) crc.getValue(), trailer.getInt());
+        assertEquals(body.length, trailer.getInt());
+    }
+
+    @Test
+    public void streamedParts() throws Exception {
+        byte[] body = body(30 * 1024);
+        Compressor compressor = new Compressor(Compressor.GZIP);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(int offset = 0; offset < body.length; offset += 10 * 1024){
+            List<ByteBuffer> part = new ArrayList<>();
+            part.add(ByteBuffer.wrap(body, offset, 10 * 1024));
+            write(out, compressor.compress(part, false));
+        }
+        write(out, compressor.compress(new ArrayList<>(), true));
+        compressor.end();
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    public void manyThreads() throws Exception {
+        byte[] body = body(50 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<byte[]>> compressed = new ArrayList<>();
+            for(int i = 0; i < 200; i++) {
+                String encoding = i % 2 == 0 ? "gzip" : "deflate";
+                compressed.add(executor.submit(() -> this.compression.compress(encoding, body)));
+            }
+            for(int i = 0; i < compressed.size(); i++){
+                InputStream in = new ByteArrayInputStream(compressed.get(i).get());
+                assertArrayEquals(body, readAll(i % 2 == 0 ? new GZIPInputStream(in) : new InflaterInputStream(in)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void reused() throws Exception {
+        byte[] first = body(20 * 1024);
+        byte[] second = body(5 * 1024);
+        assertArrayEquals(first, readAll(new GZIPInputStream(new ByteArrayInputStream(this.compression.compress("gzip", first)))));
+        assertArrayEquals(second, readAll(new GZIPInputStream(new ByteArrayInputStream(this.compression.compress("gzip", second)))));
+        assertArrayEquals(second, readAll(new InflaterInputStream(new ByteArrayInputStream(this.compression.compress("deflate", second)))));
+    }
+
+    /**
+     * words picked at random, so the body compresses like text and not like a run of one byte
+     */
+    private static byte[] body(int length){
+        String[] words = {"event ", "stream ", "boomvc ", "header ", "chunk ", "gzip ", "data\n"};
+        Random random = new Random(length);
+        StringBuilder sb = new StringBuilder();
+        while(sb.length() < length)
+            sb.append(words[random.nextInt(words.length)]);
+        sb.setLength(length);
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void write(ByteArrayOutputStream out, List<ByteBuffer> buffers){
+        for(ByteBuffer buffer : buffers){
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[1024];
+        int n;
+        while((n = in.read(bytes)) > 0)
+            out.write(bytes, 0, n);
+        return out.toByteArray();
+    }
+}
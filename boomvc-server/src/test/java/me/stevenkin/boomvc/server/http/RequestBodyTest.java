@@ -0,0 +1,121 @@
+package me.stevenkin.boomvc.server.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RequestBodyTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = Files.createTempDirectory("request-body-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.delete(this.dir);
+    }
+
+    private static byte[] random(int length){
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * write the bytes in slices, as they come from the socket
+     */
+    private static void write(RequestBody body, byte[] bytes, int slice) throws Exception {
+        for(int i = 0; i < bytes.length; i += slice)
+            body.write(ByteBuffer.wrap(bytes, i, Math.min(slice, bytes.length - i)));
+        body.finish();
+    }
+
+    @Test
+    public void inMemory() throws Exception {
+        byte[] bytes = random(5000);
+        RequestBody body = new RequestBody(bytes.length, 64 * 1024, this.dir);
+        write(body, bytes, 700);
+        assertFalse(body.isSpooled());
+        assertNull(body.file());
+        assertEquals(bytes.length, body.size());
+        assertArrayEquals(bytes, body.bytes());
+        assertArrayEquals(bytes, readAll(body.inputStream()));
+        assertEquals(0, Files.list(this.dir).count());
+        body.close();
+    }
+
+    @Test
+    public void spooledOnceOverThreshold() throws Exception {
+        byte[] bytes = random(10000);
+        RequestBody body = new RequestBody(-1, 4096, this.dir);
+        body.write(ByteBuffer.wrap(bytes, 0, 4096));
+        assertFalse(body.isSpooled());
+        body.write(ByteBuffer.wrap(bytes, 4096, 1));
+        assertTrue(body.isSpooled());
+        body.write(ByteBuffer.wrap(bytes, 4097, bytes.length - 4097));
+        body.finish();
+        assertEquals(bytes.length, body.size());
+        assertEquals(bytes.length, Files.size(body.file()));
+        assertArrayEquals(bytes, body.bytes());
+        assertArrayEquals(bytes, readAll(body.inputStream()));
+        body.close();
+        assertEquals(0, Files.list(this.dir).count());
+    }
+
+    @Test
+    public void spooledFromTheStart() throws Exception {
+        byte[] bytes = random(10000);
+        RequestBody body = new RequestBody(bytes.length, 4096, this.dir);
+        assertTrue(body.isSpooled());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        body.write(direct);
+        body.finish();
+        assertArrayEquals(bytes, body.bytes());
+        assertArrayEquals(bytes, readAll(body.inputStream()));
+        body.close();
+        assertEquals(0, Files.list(this.dir).count());
+    }
+
+    @Test
+    public void chunked() throws Exception {
+        byte[] bytes = random(3000);
+        RequestBody body = new RequestBody(-1, 64 * 1024, this.dir);
+        write(body, bytes, 100);
+        assertFalse(body.isSpooled());
+        assertArrayEquals(bytes, body.bytes());
+        body.close();
+    }
+
+    @Test
+    public void announcedButNotSent() throws Exception {
+        RequestBody body = new RequestBody(1024 * 1024, 2 * 1024 * 1024, this.dir);
+        body.finish();
+        assertEquals(0, body.size());
+        assertEquals(0, body.bytes().length);
+        body.close();
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        try(InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            int n;
+            while((n = input.read(bytes)) > 0)
+                out.write(bytes, 0, n);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.http.HttpResponseLine;
+import me.stevenkin.boomvc.http.kit.DateKit;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ResponseHeadTest {
+
+    private static String encode(HttpResponseLine line, HeaderTable headers){
+        return new String(ResponseHead.encode(line, headers), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void standard(){
+        HttpResponseLine line = new HttpResponseLine();
+        line.status(404);
+        HeaderTable headers = new HeaderTable();
+        headers.add("Content-Type", "text/html; charset=UTF-8");
+        headers.add("X-Name", "café中");
+        String head = encode(line, headers);
+        assertTrue(head.startsWith("HTTP/1.1 404 Not Found\r\nDate: "));
+        assertTrue(head.endsWith(" GMT\r\nContent-Type: text/html; charset=UTF-8\r\nX-Name: café?\r\n\r\n"));
+        assertSame(ResponseHead.statusLine(line), ResponseHead.statusLine(line));
+    }
+
+    @Test
+    public void custom(){
+        HttpResponseLine line = new HttpResponseLine("HTTP/1.0", 299, null);
+        HeaderTable headers = new HeaderTable();
+        headers.add("date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        assertEquals("HTTP/1.0 299 Unknown\r\ndate: Thu, 01 Jan 1970 00:00:00 GMT\r\n\r\n", encode(line, headers));
+        line.reason("Fine");
+        assertEquals("HTTP/1.0 299 Fine\r\n", new String(ResponseHead.statusLine(line), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void date(){
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", DateKit.httpDate(0));
+        assertEquals(29, DateKit.currentHttpDate().length());
+    }
+}
@@ -0,0 +1,93 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.http.sse.SseEmitter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SseEmitterTest {
+
+    private List<ByteBuffer> streamed;
+
+    private AtomicInteger completed;
+
+    private TinyHttpResponse response;
+
+    @Before
+    public void setUp() {
+        this.streamed = new ArrayList<>();
+        this.completed = new AtomicInteger();
+        this.response = new TinyHttpResponse();
+        this.response.streamSink(buffers -> Collections.addAll(this.streamed, buffers));
+        this.response.asyncCompleter(() -> {
+            this.completed.incrementAndGet();
+            try {
+                this.response.flush();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void eventsBeforeBind() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        emitter.send("1");
+        emitter.send("update", "2");
+        assertTrue(this.streamed.isEmpty());
+        emitter.bind(this.response);
+        String written = string(this.streamed);
+        assertTrue(written.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(written.contains("\r\nContent-Type: text/event-stream; charset=UTF-8\r\n"));
+        assertTrue(written.contains("\r\nTransfer-Encoding: chunked\r\n"));
+        // the waiting events go out in one chunk, in the order they were sent
+        assertTrue(written.endsWith("\r\n\r\n20\r\ndata: 1\n\nevent: update\ndata: 2\n\n\r\n"));
+        this.streamed.clear();
+        emitter.send("3");
+        assertEquals("9\r\ndata: 3\n\n\r\n", string(this.streamed));
+        assertTrue(this.response.isAsync());
+        assertEquals(0, this.completed.get());
+    }
+
+    @Test
+    public void completeBeforeBind() throws Exception {
+        SseEmitter emitter = new SseEmitter();
+        emitter.send("1");
+        emitter.complete();
+        assertFalse(emitter.isOpen());
+        assertEquals(0, this.completed.get());
+        emitter.bind(this.response);
+        assertTrue(string(this.streamed).endsWith("\r\n\r\n9\r\ndata: 1\n\n\r\n"));
+        assertEquals(1, this.completed.get());
+        assertEquals("0\r\n\r\n", string(this.response.byteBuffers()));
+        try {
+            emitter.send("2");
+            fail();
+        } catch (IOException e) {
+            // the stream is completed
+        }
+    }
+
+    private static String string(List<ByteBuffer> buffers){
+        return string(buffers.toArray(new ByteBuffer[0]));
+    }
+
+    private static String string(ByteBuffer[] buffers){
+        StringBuilder sb = new StringBuilder();
+        for(ByteBuffer buffer : buffers){
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            sb.append(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.http.HttpMethod;
+import me.stevenkin.boomvc.http.HttpRequestLine;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class TinyHttpRequestTest {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 1234);
+
+    private static TinyHttpRequest get(String url, String contextPath, HeaderTable headers){
+        return TinyHttpRequest.of(new HttpRequestLine(HttpMethod.GET, url, "HTTP/1.1"), headers, ADDRESS, contextPath);
+    }
+
+    @Test
+    public void query(){
+        TinyHttpRequest request = get("/a%20b+c?x&y=&a=1%262&a=%E4%B8%AD+%3D&=z", "/", new HeaderTable());
+        assertEquals("/a b+c", request.uri());
+        assertEquals("x&y=&a=1%262&a=%E4%B8%AD+%3D&=z", request.queryString());
+        assertEquals("", request.firstParameter("x").get().value());
+        assertEquals("", request.firstParameter("y").get().value());
+        assertEquals(2, request.parameters("a").size());
+        assertEquals("1&2", request.parameters("a").get(0).value());
+        assertEquals("中 =", request.parameters("a").get(1).value());
+        assertEquals(4, request.parameters().size());
+    }
+
+    @Test
+    public void rawUtf8Path(){
+        String raw = new String("/中".getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        assertEquals("/中", get(raw, "/", new HeaderTable()).uri());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badEscape(){
+        get("/a%2", "/", new HeaderTable());
+    }
+
+    @Test
+    public void contextPathAndCookies(){
+        HeaderTable headers = new HeaderTable();
+        headers.add("Cookie", "a=1;b=x=y; c ; d=");
+        TinyHttpRequest request = get("/app//hello", "/app", headers);
+        assertEquals("/hello", request.uri());
+        assertEquals("1", request.cookieValue("a").get());
+        assertEquals("x=y", request.cookieValue("b").get());
+        assertEquals("", request.cookieValue("d").get());
+        assertFalse(request.cookieRaw("c").isPresent());
+        assertEquals(3, request.cookies().size());
+    }
+
+    @Test
+    public void form() throws Exception {
+        HeaderTable headers = new HeaderTable();
+        headers.add("Content-Type", "application/x-www-form-urlencoded; charset=ISO-8859-1");
+        RequestBody body = new RequestBody(-1, 1024, Paths.get(System.getProperty("java.io.tmpdir")));
+        body.write(ByteBuffer.wrap("name=caf%E9&q=a%26b".getBytes(StandardCharsets.ISO_8859_1)));
+        body.finish();
+        TinyHttpRequest request = TinyHttpRequest.of(new HttpRequestLine(HttpMethod.POST, "/form?ignored=1", "HTTP/1.1"),
+                headers, body, ADDRESS, "/");
+        assertEquals("café", request.firstParameter("name").get().value());
+        assertEquals("a&b", request.firstParameter("q").get().value());
+        assertFalse(request.firstParameter("ignored").isPresent());
+        request.release();
+    }
+}
@@ -0,0 +1,158 @@
+package me.stevenkin.boomvc.server.http;
+
+import me.stevenkin.boomvc.common.compress.HttpCompression;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class TinyHttpResponseTest {
+
+    private List<ByteBuffer> streamed;
+
+    private TinyHttpResponse response;
+
+    @Before
+    public void setUp() {
+        this.streamed = new ArrayList<>();
+        this.response = new TinyHttpResponse();
+        this.response.streamSink(buffers -> Collections.addAll(this.streamed, buffers));
+        this.response.contentType("text/plain");
+    }
+
+    @Test
+    public void chunked() throws Exception {
+        OutputStream out = this.response.outputStream();
+        byte[] part = new byte[300];
+        Arrays.fill(part, (byte) 'a');
+        out.write(part);
+        out.flush();
+        String head = string(this.streamed);
+        assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(head.contains("\r\nTransfer-Encoding: chunked\r\n"));
+        assertFalse(head.contains("Content-Length"));
+        assertTrue(head.endsWith("\r\n\r\n12c\r\n" + new String(part, StandardCharsets.ISO_8859_1) + "\r\n"));
+        this.streamed.clear();
+        out.write("hello".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        assertEquals("5\r\nhello\r\n", string(this.streamed));
+        // nothing written since the last flush, nothing is sent
+        this.streamed.clear();
+        out.flush();
+        assertTrue(this.streamed.isEmpty());
+        out.write("bye".getBytes(StandardCharsets.ISO_8859_1));
+        this.response.flush();
+        assertTrue(this.streamed.isEmpty());
+        assertEquals("3\r\nbye\r\n0\r\n\r\n", string(this.response.byteBuffers()));
+    }
+
+    @Test
+    public void emptyLastPart() throws Exception {
+        this.response.outputStream().flush();
+        this.response.flush();
+        assertEquals("0\r\n\r\n", string(this.response.byteBuffers()));
+    }
+
+    @Test
+    public void streamedWithContentLength() throws Exception {
+        this.response.header("Content-Length", "5");
+        OutputStream out = this.response.outputStream();
+        out.write("hel".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        out.write("lo".getBytes(StandardCharsets.ISO_8859_1));
+        this.response.flush();
+        String head = string(this.streamed);
+        assertFalse(head.contains("Transfer-Encoding"));
+        assertTrue(head.endsWith("\r\nContent-Length: 5\r\n\r\nhel"));
+        assertEquals("lo", string(this.response.byteBuffers()));
+    }
+
+    @Test
+    public void streamedGzip() throws Exception {
+        this.response.compression(new HttpCompression(true, 0, Collections.singletonList("text/*")), "gzip");
+        OutputStream out = this.response.outputStream();
+        out.write("first part, ".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        out.write("second part".getBytes(StandardCharsets.ISO_8859_1));
+        this.response.flush();
+        String written = string(this.streamed) + string(this.response.byteBuffers());
+        int bodyStart = written.indexOf("\r\n\r\n") + 4;
+        String head = written.substring(0, bodyStart);
+        assertTrue(head.contains("\r\nContent-Encoding: gzip\r\n"));
+        assertTrue(head.contains("\r\nVary: Accept-Encoding\r\n"));
+        assertTrue(head.contains("\r\nTransfer-Encoding: chunked\r\n"));
+        // the gzip stream checks the crc and the length in its trailer
+        byte[] body = readAll(new GZIPInputStream(new ByteArrayInputStream(dechunk(written.substring(bodyStart)))));
+        assertEquals("first part, second part", new String(body, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void abortedWhileCompressing() throws Exception {
+        this.response.compression(new HttpCompression(true, 0, Collections.singletonList("text/*")), "deflate");
+        OutputStream out = this.response.outputStream();
+        out.write('a');
+        out.flush();
+        this.response.abort();
+        out.write('b');
+        try {
+            out.flush();
+            fail();
+        } catch (IOException e) {
+            // the compressor is ended, the connection is gone
+        }
+    }
+
+    private static byte[] dechunk(String chunked){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while(true){
+            int lineEnd = chunked.indexOf("\r\n", i);
+            int size = Integer.parseInt(chunked.substring(i, lineEnd), 16);
+            int start = lineEnd + 2;
+            if(size == 0) {
+                assertEquals("\r\n", chunked.substring(start));
+                return out.toByteArray();
+            }
+            byte[] bytes = chunked.substring(start, start + size).getBytes(StandardCharsets.ISO_8859_1);
+            out.write(bytes, 0, bytes.length);
+            assertEquals("\r\n", chunked.substring(start + size, start + size + 2));
+            i = start + size + 2;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[1024];
+        int n;
+        while((n = in.read(bytes)) > 0)
+            out.write(bytes, 0, n);
+        return out.toByteArray();
+    }
+
+    private static String string(List<ByteBuffer> buffers){
+        return string(buffers.toArray(new ByteBuffer[0]));
+    }
+
+    private static String string(ByteBuffer[] buffers){
+        StringBuilder sb = new StringBuilder();
+        for(ByteBuffer buffer : buffers){
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            sb.append(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package me.stevenkin.boomvc.server.parser.http;
+
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.ioc.Environment;
+import me.stevenkin.boomvc.ioc.SimpleIoc;
+import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import me.stevenkin.boomvc.server.http.HttpObjectPool;
+import me.stevenkin.boomvc.server.http.TinyHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HttpProtocolParserTest {
+
+    private ServerSocketChannel serverChannel;
+
+    private Socket client;
+
+    private SocketChannel channel;
+
+    private HttpProtocolParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        AppContext.init(new SimpleIoc(), Environment.empty(), "/");
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        this.client = new Socket();
+        this.client.connect(this.serverChannel.getLocalAddress());
+        this.client.setSoTimeout(5000);
+        this.channel = this.serverChannel.accept();
+        this.parser = new HttpProtocolParser(this.channel, new BufferPool(), new HttpObjectPool(false, 0, false),
+                HttpParserConfig.of(Environment.empty()), new WebSocketMapping());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.parser.release();
+        this.client.close();
+        this.serverChannel.close();
+    }
+
+    private void send(String s) throws Exception {
+        this.client.getOutputStream().write(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void trailingWhitespace() throws Exception {
+        send("POST /a HTTP/1.1\r\nHost: x \t\r\nContent-Length: 5 \r\nConnection: close\t\r\n\r\nhello");
+        while(!this.parser.parsed())
+            this.parser.parser();
+        HttpRequest request = this.parser.takeHttpRequest();
+        assertEquals("x", request.firstHeader("Host").get().value());
+        assertEquals("5", request.firstHeader("Content-Length").get().value());
+        assertEquals("hello", readBody(request));
+        assertFalse(request.keepAlive());
+        assertTrue(this.parser.isClosed());
+    }
+
+    @Test
+    public void chunkedBody() throws Exception {
+        send("POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5;ext=1\r\nhello\r\n1\r\n!\r\n0\r\nX-Trailer: t\r\n\r\n");
+        while(!this.parser.parsed())
+            this.parser.parser();
+        assertEquals("hello!", readBody(this.parser.takeHttpRequest()));
+    }
+
+    @Test
+    public void sameContentLengthTwice() throws Exception {
+        send("POST /a HTTP/1.1\r\nContent-Length: 2\r\nContent-Length: 2\r\n\r\nok");
+        while(!this.parser.parsed())
+            this.parser.parser();
+        assertEquals("ok", readBody(this.parser.takeHttpRequest()));
+    }
+
+    @Test(expected = ProtocolParserException.class)
+    public void conflictingContentLengths() throws Exception {
+        parseAll("POST /a HTTP/1.1\r\nContent-Length: 2\r\nContent-Length: 20\r\n\r\nok");
+    }
+
+    @Test(expected = ProtocolParserException.class)
+    public void chunkedNotLast() throws Exception {
+        parseAll("POST /a HTTP/1.1\r\nTransfer-Encoding: chunked, gzip\r\n\r\n0\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+    }
+
+    @Test(expected = ProtocolParserException.class)
+    public void chunkedNotLastHeader() throws Exception {
+        parseAll("POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\nTransfer-Encoding: gzip\r\n\r\n0\r\n\r\n");
+    }
+
+    @Test(expected = ProtocolParserException.class)
+    public void contentLengthAndTransferEncoding() throws Exception {
+        parseAll("POST /a HTTP/1.1\r\nContent-Length: 5\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+    }
+
+    /**
+     * parse until a request is complete, or the parser fails
+     */
+    private void parseAll(String s) throws Exception {
+        send(s);
+        while(!this.parser.parsed())
+            this.parser.parser();
+    }
+
+    @Test
+    public void expectContinueWithTrailingWhitespace() throws Exception {
+        send("PUT /a HTTP/1.1\r\nContent-Length: 5\r\nExpect: 100-continue  \r\n\r\n");
+        this.parser.parser();
+        assertTrue(this.parser.outboundBuffer().writeTo(this.channel));
+        byte[] bytes = new byte[25];
+        InputStream in = this.client.getInputStream();
+        int n = 0;
+        while(n < bytes.length)
+            n += in.read(bytes, n, bytes.length - n);
+        assertEquals("HTTP/1.1 100 Continue\r\n\r\n", new String(bytes, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void pipelinedExpectContinue() throws Exception {
+        send("GET /a HTTP/1.1\r\n\r\nPUT /b HTTP/1.1\r\nContent-Length: 5\r\nExpect: 100-continue\r\n\r\n");
+        while(this.parser.readState() != ReadState.BODY)
+            this.parser.parser();
+        // the 100 Continue waits for the response to the request before
+        assertTrue(this.parser.outboundBuffer().isEmpty());
+        HttpRequest request = this.parser.takeHttpRequest();
+        ResponseSlot slot = this.parser.reserve(request, this.parser.genHttpResponse());
+        slot.response().body("a");
+        slot.response().flush();
+        this.parser.complete(slot);
+        assertTrue(this.parser.outboundBuffer().writeTo(this.channel));
+        this.channel.shutdownOutput();
+        String written = readAll();
+        assertTrue(written.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(written.endsWith("\r\n\r\naHTTP/1.1 100 Continue\r\n\r\n"));
+    }
+
+    @Test
+    public void streamedToHttp10() throws Exception {
+        send("GET /a HTTP/1.0\r\nConnection: keep-alive\r\n\r\nGET /b HTTP/1.0\r\n\r\n");
+        while(!this.parser.parsed())
+            this.parser.parser();
+        HttpRequest request = this.parser.takeHttpRequest();
+        assertTrue(request.keepAlive());
+        ResponseSlot slot = this.parser.reserve(request, this.parser.genHttpResponse());
+        TinyHttpResponse response = (TinyHttpResponse) slot.response();
+        response.streamSink(buffers -> this.parser.stream(slot, buffers));
+        OutputStream out = response.outputStream();
+        out.write("hello".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        response.flush();
+        this.parser.complete(slot);
+        // the body ends with the connection, the request after it is not answered
+        assertTrue(this.parser.isClosed());
+        assertFalse(this.parser.parsed());
+        assertTrue(this.parser.outboundBuffer().writeTo(this.channel));
+        assertTrue(this.parser.isFinished());
+        this.channel.shutdownOutput();
+        String head = readAll();
+        assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertFalse(head.contains("Transfer-Encoding"));
+        assertTrue(head.contains("\r\nConnection: close\r\n"));
+        assertTrue(head.endsWith("\r\n\r\nhello"));
+    }
+
+    private String readAll() throws Exception {
+        InputStream in = this.client.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[1024];
+        int n;
+        while((n = in.read(bytes)) >= 0)
+            out.write(bytes, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readBody(HttpRequest request) throws Exception {
+        InputStream in = request.body();
+        byte[] bytes = new byte[in.available()];
+        in.read(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,52 @@
+package me.stevenkin.boomvc.server.parser.http;
+
+import me.stevenkin.boomvc.http.AsyncContext;
+import me.stevenkin.boomvc.http.sse.SseEmitter;
+import me.stevenkin.boomvc.server.http.TinyHttpResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResponseSlotTest {
+
+    @Test
+    public void abortDisconnectsOnce() throws Exception {
+        AtomicInteger completed = new AtomicInteger();
+        TinyHttpResponse response = new TinyHttpResponse();
+        response.streamSink(buffers -> {});
+        response.asyncCompleter(completed::incrementAndGet);
+        ResponseSlot slot = new ResponseSlot(response);
+        SseEmitter emitter = new SseEmitter();
+        emitter.bind(response);
+        AtomicInteger emitterDisconnects = new AtomicInteger();
+        emitter.onDisconnect(emitterDisconnects::incrementAndGet);
+        AsyncContext context = response.startAsync();
+        AtomicInteger disconnects = new AtomicInteger();
+        context.onDisconnect(disconnects::incrementAndGet);
+
+        slot.abort();
+        slot.abort();
+        assertTrue(slot.isAborted());
+        assertTrue(context.isDisconnected());
+        assertEquals(1, disconnects.get());
+        assertEquals(1, emitterDisconnects.get());
+        assertEquals(1, completed.get());
+        assertFalse(emitter.isOpen());
+
+        // a listener added afterwards runs at once, the response is not completed again
+        context.onDisconnect(disconnects::incrementAndGet);
+        assertEquals(2, disconnects.get());
+        context.complete();
+        emitter.complete();
+        assertEquals(1, completed.get());
+        try {
+            emitter.send("gone");
+            fail();
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package me.stevenkin.boomvc.server.parser.http2;
+
+import me.stevenkin.boomvc.http.Const;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.ioc.Environment;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.buffer.OutboundBuffer;
+import me.stevenkin.boomvc.server.exception.Http2Exception;
+import me.stevenkin.boomvc.server.parser.http.HttpParserConfig;
+import me.stevenkin.boomvc.server.parser.http.ResponseSlot;
+import me.stevenkin.boomvc.server.parser.http2.hpack.HpackEncoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class Http2ConnectionTest {
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+
+    private ServerSocketChannel serverChannel;
+
+    private Socket client;
+
+    private DataInputStream in;
+
+    private SocketChannel channel;
+
+    private Http2Connection connection;
+
+    private HpackEncoder encoder = new HpackEncoder();
+
+    @Before
+    public void setUp() throws Exception {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        this.client = new Socket();
+        this.client.connect(this.serverChannel.getLocalAddress());
+        this.client.setSoTimeout(5000);
+        this.in = new DataInputStream(this.client.getInputStream());
+        this.channel = this.serverChannel.accept();
+        this.channel.configureBlocking(false);
+        // the default window, no WINDOW_UPDATE follows the SETTINGS of the server
+        Environment environment = Environment.of(Collections.singletonMap(Const.ENV_KEY_SERVER_HTTP2_INITIAL_WINDOW_SIZE, "65535"));
+        HttpParserConfig config = HttpParserConfig.of(environment);
+        this.connection = Http2Connection.priorKnowledge(this.channel, new BufferPool(), config,
+                new OutboundBuffer(config.writeBufferHighWatermark(), config.writeBufferLowWatermark()), null, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.connection.release();
+        this.client.close();
+        this.serverChannel.close();
+    }
+
+    @Test
+    public void prefaceAndSettings() throws Exception {
+        send(PREFACE, frame(SETTINGS, 0, 0, new byte[0]));
+        Frame settings = nextFrame();
+        assertEquals(SETTINGS, settings.type);
+        assertEquals(0, settings.flags);
+        assertEquals(18, settings.payload.length);
+        Frame ack = nextFrame();
+        assertEquals(SETTINGS, ack.type);
+        assertEquals(FLAG_ACK, ack.flags);
+        assertEquals(0, ack.payload.length);
+
+        send(frame(PING, 0, 0, new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+        Frame pong = nextFrame();
+        assertEquals(PING, pong.type);
+        assertEquals(FLAG_ACK, pong.flags);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, pong.payload);
+        assertFalse(this.connection.isClosed());
+    }
+
+    @Test
+    public void illegalPreface() throws Exception {
+        send("PRI * HTTP/1.1\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(SETTINGS, nextFrame().type);
+        Frame goAway = nextFrame();
+        assertEquals(GOAWAY, goAway.type);
+        assertEquals(Http2Exception.PROTOCOL_ERROR, ByteBuffer.wrap(goAway.payload).getInt(4));
+        assertTrue(this.connection.isClosed());
+    }
+
+    @Test
+    public void windowUpdate() throws Exception {
+        handshake(settingsPayload(0x4, 10));
+        send(frame(HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 1, requestHeaders("GET", "/a")));
+        HttpRequest request = request();
+        assertEquals("/a", request.url());
+        respond(request, "hello world!");
+        assertEquals(HEADERS, nextFrame().type);
+        Frame first = nextFrame();
+        assertEquals(DATA, first.type);
+        assertEquals(0, first.flags);
+        assertEquals("hello worl", new String(first.payload, StandardCharsets.ISO_8859_1));
+        assertNoFrame();
+
+        // the connection window is not the limit, the stream one is
+        send(frame(WINDOW_UPDATE, 0, 0, intPayload(100)));
+        assertNoFrame();
+        send(frame(WINDOW_UPDATE, 0, 1, intPayload(5)));
+        Frame last = nextFrame();
+        assertEquals(DATA, last.type);
+        assertEquals(FLAG_END_STREAM, last.flags);
+        assertEquals("d!", new String(last.payload, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void dataOnResetStream() throws Exception {
+        handshake(new byte[0]);
+        // a connection header is a stream error, the stream is reset at once
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(requestHeaders("POST", "/a"));
+        this.encoder.encode("connection", "keep-alive", block);
+        send(frame(HEADERS, FLAG_END_HEADERS, 1, block.toByteArray()));
+        Frame reset = nextFrame();
+        assertEquals(RST_STREAM, reset.type);
+        assertEquals(1, reset.streamId);
+        assertEquals(Http2Exception.PROTOCOL_ERROR, ByteBuffer.wrap(reset.payload).getInt());
+
+        // the frames sent before the client saw the reset are dropped, their bytes still count
+        // against the connection window which is given back once half of it is used
+        byte[] data = new byte[12000];
+        send(frame(DATA, 0, 1, data), frame(DATA, 0, 1, data), frame(DATA, 0, 1, data),
+                frame(HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 1, trailers()));
+        Frame update = nextFrame();
+        assertEquals(WINDOW_UPDATE, update.type);
+        assertEquals(0, update.streamId);
+        assertEquals(36000, ByteBuffer.wrap(update.payload).getInt());
+        assertNoFrame();
+        assertFalse(this.connection.isClosed());
+
+        // the connection goes on
+        send(frame(HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 3, requestHeaders("GET", "/b")));
+        assertEquals("/b", request().url());
+    }
+
+    @Test
+    public void rstStreamFromPeer() throws Exception {
+        handshake(new byte[0]);
+        send(frame(HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 1, requestHeaders("GET", "/a")));
+        HttpRequest request = request();
+        HttpResponse response = this.connection.genHttpResponse();
+        ResponseSlot slot = this.connection.reserve(request, response);
+        send(frame(RST_STREAM, 0, 1, intPayload(Http2Exception.CANCEL)));
+        assertNoFrame();
+        assertTrue(slot.isAborted());
+        // the handler finishing later writes nothing, a late WINDOW_UPDATE is ignored
+        response.body("hello");
+        response.flush();
+        this.connection.complete(slot);
+        send(frame(WINDOW_UPDATE, 0, 1, intPayload(5)));
+        assertNoFrame();
+        assertFalse(this.connection.isClosed());
+    }
+
+    @Test
+    public void continuation() throws Exception {
+        handshake(new byte[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(requestHeaders("GET", "/a"));
+        this.encoder.encode("x-custom", "value", out);
+        byte[] block = out.toByteArray();
+        int split = block.length / 2;
+        send(frame(HEADERS, FLAG_END_STREAM, 1, slice(block, 0, split)),
+                frame(CONTINUATION, 0, 1, slice(block, split, split + 1)),
+                frame(CONTINUATION, FLAG_END_HEADERS, 1, slice(block, split + 1, block.length)));
+        HttpRequest request = request();
+        assertEquals("/a", request.url());
+        assertEquals("value", request.firstHeader("X-Custom").get().value());
+        assertEquals("x", request.firstHeader("Host").get().value());
+    }
+
+    @Test
+    public void interruptedContinuation() throws Exception {
+        handshake(new byte[0]);
+        byte[] block = requestHeaders("GET", "/a");
+        send(frame(HEADERS, FLAG_END_STREAM, 1, block), frame(PING, 0, 0, new byte[8]));
+        Frame goAway = nextFrame();
+        assertEquals(GOAWAY, goAway.type);
+        assertEquals(Http2Exception.PROTOCOL_ERROR, ByteBuffer.wrap(goAway.payload).getInt(4));
+        assertTrue(this.connection.isClosed());
+        assertFalse(this.connection.parsed());
+    }
+
+    /**
+     * the client preface with the given settings, the settings of the server and the two acks
+     */
+    private void handshake(byte[] settings) throws Exception {
+        send(PREFACE, frame(SETTINGS, 0, 0, settings));
+        assertEquals(SETTINGS, nextFrame().type);
+        assertEquals(FLAG_ACK, nextFrame().flags);
+        send(frame(SETTINGS, FLAG_ACK, 0, new byte[0]));
+    }
+
+    private HttpRequest request() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!this.connection.parsed()){
+            assertTrue("no request parsed", System.currentTimeMillis() < deadline);
+            this.connection.parser();
+            Thread.sleep(1);
+        }
+        return this.connection.takeHttpRequest();
+    }
+
+    private void respond(HttpRequest request, String body) throws Exception {
+        HttpResponse response = this.connection.genHttpResponse();
+        ResponseSlot slot = this.connection.reserve(request, response);
+        response.body(body);
+        response.flush();
+        this.connection.complete(slot);
+    }
+
+    private byte[] requestHeaders(String method, String path){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.encoder.begin(out);
+        this.encoder.encode(":method", method, out);
+        this.encoder.encode(":scheme", "http", out);
+        this.encoder.encode(":path", path, out);
+        this.encoder.encode(":authority", "x", out);
+        return out.toByteArray();
+    }
+
+    private byte[] trailers(){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.encoder.begin(out);
+        this.encoder.encode("x-trailer", "t", out);
+        return out.toByteArray();
+    }
+
+    private void send(byte[]... frames) throws Exception {
+        for(byte[] frame : frames)
+            this.client.getOutputStream().write(frame);
+        this.client.getOutputStream().flush();
+    }
+
+    /**
+     * run the connection until a frame reaches the client
+     */
+    private Frame nextFrame() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(this.in.available() == 0){
+            assertTrue("no frame received", System.currentTimeMillis() < deadline);
+            this.connection.parser();
+            this.connection.outboundBuffer().writeTo(this.channel);
+            Thread.sleep(1);
+        }
+        Frame frame = new Frame();
+        int length = this.in.readUnsignedByte() << 16 | this.in.readUnsignedShort();
+        frame.type = this.in.readUnsignedByte();
+        frame.flags = this.in.readUnsignedByte();
+        frame.streamId = this.in.readInt() & 0x7fffffff;
+        frame.payload = new byte[length];
+        this.in.readFully(frame.payload);
+        return frame;
+    }
+
+    private void assertNoFrame() throws Exception {
+        for(int i = 0; i < 20; i++){
+            this.connection.parser();
+            this.connection.outboundBuffer().writeTo(this.channel);
+            Thread.sleep(5);
+        }
+        assertEquals(0, this.in.available());
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[] payload){
+        ByteBuffer frame = ByteBuffer.allocate(9 + payload.length);
+        frame.put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length)
+                .put((byte) type).put((byte) flags).putInt(streamId).put(payload);
+        return frame.array();
+    }
+
+    private static byte[] settingsPayload(int id, int value){
+        return ByteBuffer.allocate(6).putShort((short) id).putInt(value).array();
+    }
+
+    private static byte[] intPayload(int value){
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] slice(byte[] bytes, int from, int to){
+        byte[] slice = new byte[to - from];
+        System.arraycopy(bytes, from, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static class Frame {
+        int type;
+        int flags;
+        int streamId;
+        byte[] payload;
+    }
+}
@@ -0,0 +1,118 @@
+package me.stevenkin.boomvc.server.parser.http2.hpack;
+
+import me.stevenkin.boomvc.http.HttpHeader;
+import me.stevenkin.boomvc.server.exception.Http2Exception;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HpackTest {
+
+    private static byte[] hex(String s){
+        byte[] bytes = new byte[s.length() / 2];
+        for(int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        return bytes;
+    }
+
+    private static String text(List<HttpHeader> headers){
+        StringBuilder sb = new StringBuilder();
+        headers.forEach(h -> sb.append(h.name()).append('=').append(h.value()).append(';'));
+        return sb.toString();
+    }
+
+    private static List<HttpHeader> decode(HpackDecoder decoder, byte[] block) throws Http2Exception {
+        return decoder.decode(block, 0, block.length);
+    }
+
+    /**
+     * rfc 7541 c.4, requests with huffman coding sharing one dynamic table
+     */
+    @Test
+    public void decodeRfcExamples() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(4096, 16 * 1024);
+        assertEquals(":method=GET;:scheme=http;:path=/;:authority=www.example.com;",
+                text(decode(decoder, hex("828684418cf1e3c2e5f23a6ba0ab90f4ff"))));
+        assertEquals(":method=GET;:scheme=http;:path=/;:authority=www.example.com;cache-control=no-cache;",
+                text(decode(decoder, hex("828684be5886a8eb10649cbf"))));
+        assertEquals(":method=GET;:scheme=https;:path=/index.html;:authority=www.example.com;custom-key=custom-value;",
+                text(decode(decoder, hex("828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"))));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder(4096, 16 * 1024);
+        String[][] fields = {
+                {":status", "200"}, {"content-type", "application/json; charset=UTF-8"},
+                {"content-length", "11"}, {"x-custom", "été"}, {"set-cookie", "id=1; path=/"}
+        };
+        for(int i = 0; i < 3; i++){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.begin(out);
+            for(String[] field : fields)
+                encoder.encode(field[0], field[1], out);
+            byte[] block = out.toByteArray();
+            List<HttpHeader> headers = decode(decoder, block);
+            assertEquals(fields.length, headers.size());
+            for(int j = 0; j < fields.length; j++){
+                assertEquals(fields[j][0], headers.get(j).name());
+                assertEquals(fields[j][1], headers.get(j).value());
+            }
+            if(i > 0)
+                assertTrue("indexed fields are sent as one byte", block.length < 40);
+        }
+        encoder.maxTableSize(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.begin(out);
+        encoder.encode("content-type", "text/plain", out);
+        assertEquals("content-type=text/plain;", text(decode(decoder, out.toByteArray())));
+    }
+
+    /**
+     * the table shrunk and grew again between two blocks, the entries are gone and the decoder
+     * is told the smallest size before the final one (rfc 7541 4.2)
+     */
+    @Test
+    public void smallestSizeSignalled() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder(4096, 16 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.begin(out);
+        encoder.encode("x-custom", "value", out);
+        decode(decoder, out.toByteArray());
+
+        encoder.maxTableSize(0);
+        encoder.maxTableSize(1024);
+        encoder.maxTableSize(4096);
+        out = new ByteArrayOutputStream();
+        encoder.begin(out);
+        byte[] updates = out.toByteArray();
+        assertArrayEquals(hex("203fe11f"), updates);
+        encoder.encode("x-custom", "value", out);
+        byte[] block = out.toByteArray();
+        assertTrue("the field is not indexed any more", block.length > updates.length + 1);
+        assertEquals("x-custom=value;", text(decode(decoder, block)));
+
+        // nothing changed, no update is sent
+        encoder.maxTableSize(4096);
+        out = new ByteArrayOutputStream();
+        encoder.begin(out);
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void headerListTooLarge() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(4096, 64);
+        assertNull(decode(decoder, hex("828684418cf1e3c2e5f23a6ba0ab90f4ff")));
+        assertEquals(":authority=www.example.com;", text(decode(decoder, hex("be"))));
+    }
+
+    @Test(expected = Http2Exception.class)
+    public void illegalPadding() throws Exception {
+        Huffman.decode(hex("f1e3c2e5f23a6ba0ab90f4fe"), 0, 12);
+    }
+}
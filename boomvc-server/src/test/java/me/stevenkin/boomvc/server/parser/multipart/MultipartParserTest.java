@@ -0,0 +1,113 @@
+package me.stevenkin.boomvc.server.parser.multipart;
+
+import me.stevenkin.boomvc.http.multipart.FileItem;
+import me.stevenkin.boomvc.server.exception.ProtocolParserException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultipartParserTest {
+
+    private static final String BOUNDARY = "----boundary7MA4YWxk";
+
+    private static byte[] body(byte[] small, byte[] large) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("preamble\r\n--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"a\"\r\n\r\n" +
+                "b\r\n--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"small\"; filename=\"small.bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n").getBytes("ISO-8859-1"));
+        out.write(small);
+        out.write(("\r\n--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"large\"; filename=\"large.bin\"\r\n\r\n").getBytes("ISO-8859-1"));
+        out.write(large);
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void parseInSlices() throws Exception {
+        Random random = new Random(1);
+        byte[] small = new byte[100];
+        byte[] large = new byte[300000];
+        random.nextBytes(small);
+        random.nextBytes(large);
+        // a near miss of the delimiter inside the content
+        byte[] nearMiss = ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1)).getBytes("ISO-8859-1");
+        System.arraycopy(nearMiss, 0, large, 1000, nearMiss.length);
+        byte[] body = body(small, large);
+        Path dir = Files.createTempDirectory("multipart-test");
+        MultipartParser parser = new MultipartParser(BOUNDARY, 8192, 64 * 1024, dir);
+        for(int i = 0; i < body.length; i += 7)
+            parser.write(ByteBuffer.wrap(body, i, Math.min(7, body.length - i)));
+        parser.finish();
+
+        assertEquals("b", parser.parameters().get("a").iterator().next().value());
+        FileItem smallItem = parser.fileItems().get("small");
+        assertTrue(smallItem.isInMemory());
+        assertEquals("small.bin", smallItem.getFileName());
+        assertEquals("application/octet-stream", smallItem.getContentType());
+        assertArrayEquals(small, smallItem.getData());
+        FileItem largeItem = parser.fileItems().get("large");
+        assertFalse(largeItem.isInMemory());
+        assertEquals(large.length, largeItem.getLength());
+        assertTrue(Arrays.equals(large, largeItem.getData()));
+
+        parser.close();
+        assertEquals(0, Files.list(dir).count());
+        Files.delete(dir);
+    }
+
+    @Test
+    public void sameNameFiles() throws Exception {
+        Random random = new Random(2);
+        byte[] first = new byte[5000];
+        byte[] second = new byte[6000];
+        random.nextBytes(first);
+        random.nextBytes(second);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] content : new byte[][]{ first, second }){
+            out.write(("--" + BOUNDARY + "\r\n" +
+                    "Content-Disposition: form-data; name=\"file\"; filename=\"" + content.length + ".bin\"\r\n\r\n").getBytes("ISO-8859-1"));
+            out.write(content);
+            out.write("\r\n".getBytes("ISO-8859-1"));
+        }
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
+        Path dir = Files.createTempDirectory("multipart-test");
+        MultipartParser parser = new MultipartParser(BOUNDARY, 8192, 1024, dir);
+        parser.write(ByteBuffer.wrap(out.toByteArray()));
+        parser.finish();
+
+        FileItem item = parser.fileItems().get("file");
+        assertEquals("6000.bin", item.getFileName());
+        assertArrayEquals(second, item.getData());
+        // the replaced part is not left on disk
+        assertEquals(1, Files.list(dir).count());
+
+        parser.close();
+        assertEquals(0, Files.list(dir).count());
+        Files.delete(dir);
+    }
+
+    @Test(expected = ProtocolParserException.class)
+    public void unterminated() throws Exception {
+        byte[] body = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nb").getBytes("ISO-8859-1");
+        MultipartParser parser = new MultipartParser(BOUNDARY, 8192, 1024, null);
+        parser.write(ByteBuffer.wrap(body));
+        parser.finish();
+    }
+
+    @Test
+    public void boundary() {
+        assertEquals("abc", MultipartParser.boundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartParser.boundary("multipart/form-data; charset=utf-8; boundary=\"a b\""));
+        assertNull(MultipartParser.boundary("application/x-www-form-urlencoded"));
+    }
+}
@@ -0,0 +1,111 @@
+package me.stevenkin.boomvc.server.parser.websocket;
+
+import me.stevenkin.boomvc.server.exception.WebSocketException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static me.stevenkin.boomvc.http.websocket.WebSocketSession.*;
+import static me.stevenkin.boomvc.server.parser.websocket.WebSocketCodec.*;
+import static org.junit.Assert.*;
+
+public class WebSocketCodecTest {
+
+    private static final byte[] MASK = {0x37, (byte) 0xfa, 0x21, 0x3d};
+
+    private static byte[] clientFrame(int opcode, boolean fin, byte[] payload){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write((fin ? 0x80 : 0) | opcode);
+        if(payload.length < 126) {
+            out.write(0x80 | payload.length);
+        } else {
+            out.write(0x80 | 126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+        }
+        out.write(MASK, 0, 4);
+        for(int i = 0; i < payload.length; i++)
+            out.write(payload[i] ^ MASK[i & 3]);
+        return out.toByteArray();
+    }
+
+    private static class Frames implements FrameListener {
+        List<String> events = new ArrayList<>();
+
+        @Override
+        public void onMessage(int opcode, byte[] payload, int length) {
+            this.events.add(opcode + ":" + new String(payload, 0, length, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onControl(int opcode, byte[] payload) {
+            this.events.add(opcode + ":" + new String(payload, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * rfc 6455 1.3
+     */
+    @Test
+    public void accept(){
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketCodec.accept("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    public void fragmentsAcrossReads() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(clientFrame(TEXT, false, "Hel".getBytes()));
+        out.write(clientFrame(PING, true, "p".getBytes()));
+        out.write(clientFrame(CONTINUATION, true, "lo".getBytes()));
+        byte[] big = new byte[300];
+        Arrays.fill(big, (byte) 'a');
+        out.write(clientFrame(BINARY, true, big));
+        byte[] bytes = out.toByteArray();
+        WebSocketCodec codec = new WebSocketCodec(1024);
+        Frames frames = new Frames();
+        for(byte b : bytes)
+            codec.decode(ByteBuffer.wrap(new byte[]{b}), frames);
+        assertEquals(3, frames.events.size());
+        assertEquals(PING + ":p", frames.events.get(0));
+        assertEquals(TEXT + ":Hello", frames.events.get(1));
+        assertEquals(BINARY + ":" + new String(big), frames.events.get(2));
+        assertTrue(codec.isIdle());
+    }
+
+    @Test
+    public void protocolErrors(){
+        assertCloseCode(PROTOCOL_ERROR, new byte[]{(byte) 0x81, 0x01, 'x'});
+        assertCloseCode(PROTOCOL_ERROR, clientFrame(CONTINUATION, true, "x".getBytes()));
+        assertCloseCode(PROTOCOL_ERROR, clientFrame(PING, false, "x".getBytes()));
+        assertCloseCode(MESSAGE_TOO_BIG, clientFrame(BINARY, true, new byte[200]));
+    }
+
+    private static void assertCloseCode(int code, byte[] bytes){
+        try {
+            new WebSocketCodec(100).decode(ByteBuffer.wrap(bytes), new Frames());
+            fail();
+        } catch (WebSocketException e) {
+            assertEquals(code, e.closeCode());
+        }
+    }
+
+    @Test
+    public void serverFrames(){
+        ByteBuffer frame = frame(TEXT, "hi".getBytes());
+        assertEquals(4, frame.remaining());
+        assertEquals((byte) 0x81, frame.get(0));
+        assertEquals(2, frame.get(1));
+        ByteBuffer header = header(BINARY, 70000);
+        assertEquals(10, header.remaining());
+        assertEquals(127, header.get(1));
+        assertEquals(70000, header.getLong(2));
+        ByteBuffer close = closeFrame(NORMAL_CLOSURE, "bye");
+        assertEquals(0x03, close.get(2));
+        assertEquals((byte) 0xe8, close.get(3));
+    }
+}
@@ -0,0 +1,195 @@
+package me.stevenkin.boomvc.server.task;
+
+import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
+import me.stevenkin.boomvc.common.view.View;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.ioc.Environment;
+import me.stevenkin.boomvc.ioc.Ioc;
+import me.stevenkin.boomvc.ioc.SimpleIoc;
+import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.session.SessionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EventLoopTest {
+
+    private CountingSelector selector;
+
+    private EventLoop eventLoop;
+
+    private Thread thread;
+
+    @Before
+    public void setUp() throws Exception {
+        AppContext.init(new SimpleIoc(), Environment.empty(), "/");
+        this.selector = new CountingSelector(Selector.open());
+        this.eventLoop = new EventLoop(this.selector, null, new NoDispatcher(), new WebSocketMapping(), new SessionManager(), null, new BufferPool());
+        this.eventLoop.start();
+        this.thread = new Thread(this.eventLoop);
+        this.thread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.eventLoop.stop();
+        this.eventLoop.execute(() -> {});
+        this.thread.join(1000);
+        this.selector.close();
+    }
+
+    /**
+     * the loop is blocked in a select of a second when the task is queued, the wakeup makes it
+     * run long before the select would time out
+     */
+    @Test
+    public void taskWakesSelect() throws Exception {
+        awaitIdle();
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        this.eventLoop.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue("the select was not woken up", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    /**
+     * tasks queued by many threads while the loop is busy share the wakeup of the first one
+     */
+    @Test
+    public void wakeupCoalesced() throws Exception {
+        awaitIdle();
+        int wakeups = this.selector.wakeups.get();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        this.eventLoop.execute(() -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        AtomicInteger ran = new AtomicInteger();
+        List<Thread> producers = new ArrayList<>();
+        for(int p = 0; p < 4; p++){
+            Thread producer = new Thread(() -> {
+                for(int i = 0; i < 1000; i++)
+                    this.eventLoop.execute(ran::incrementAndGet);
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for(Thread producer : producers)
+            producer.join();
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(ran.get() < 4000){
+            assertTrue("queued tasks did not run", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        assertEquals(wakeups + 1, this.selector.wakeups.get());
+    }
+
+    /**
+     * wait until the loop went back to select with nothing queued
+     */
+    private void awaitIdle() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        this.eventLoop.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+    }
+
+    private static class NoDispatcher implements MvcDispatcher {
+
+        @Override
+        public void init(Ioc ioc, Environment environment, Class<? extends View> viewTemplate) {
+        }
+
+        @Override
+        public void dispatcher(HttpRequest request, HttpResponse response) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    /**
+     * counts the wakeup calls, the rest goes to the real selector
+     */
+    private static class CountingSelector extends Selector {
+
+        private final Selector selector;
+
+        private final AtomicInteger wakeups = new AtomicInteger();
+
+        CountingSelector(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.selector.isOpen();
+        }
+
+        @Override
+        public SelectorProvider provider() {
+            return this.selector.provider();
+        }
+
+        @Override
+        public Set<SelectionKey> keys() {
+            return this.selector.keys();
+        }
+
+        @Override
+        public Set<SelectionKey> selectedKeys() {
+            return this.selector.selectedKeys();
+        }
+
+        @Override
+        public int selectNow() throws IOException {
+            return this.selector.selectNow();
+        }
+
+        @Override
+        public int select(long timeout) throws IOException {
+            return this.selector.select(timeout);
+        }
+
+        @Override
+        public int select() throws IOException {
+            return this.selector.select();
+        }
+
+        @Override
+        public Selector wakeup() {
+            this.wakeups.incrementAndGet();
+            this.selector.wakeup();
+            return this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.selector.close();
+        }
+    }
+}
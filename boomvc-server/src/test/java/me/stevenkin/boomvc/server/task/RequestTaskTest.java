@@ -0,0 +1,117 @@
+package me.stevenkin.boomvc.server.task;
+
+import me.stevenkin.boomvc.common.dispatcher.MvcDispatcher;
+import me.stevenkin.boomvc.common.view.View;
+import me.stevenkin.boomvc.http.AsyncContext;
+import me.stevenkin.boomvc.http.HttpRequest;
+import me.stevenkin.boomvc.http.HttpResponse;
+import me.stevenkin.boomvc.ioc.Environment;
+import me.stevenkin.boomvc.ioc.Ioc;
+import me.stevenkin.boomvc.ioc.SimpleIoc;
+import me.stevenkin.boomvc.mvc.AppContext;
+import me.stevenkin.boomvc.mvc.websocket.WebSocketMapping;
+import me.stevenkin.boomvc.server.buffer.BufferPool;
+import me.stevenkin.boomvc.server.parser.http.HttpParserConfig;
+import me.stevenkin.boomvc.server.parser.http.HttpProtocolParser;
+import me.stevenkin.boomvc.server.session.SessionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestTaskTest {
+
+    private EventLoop eventLoop;
+
+    private Thread thread;
+
+    private ServerSocketChannel serverChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        AppContext.init(new SimpleIoc(), Environment.empty(), "/");
+        this.eventLoop = new EventLoop(Selector.open(), null, new LaterEcho(), new WebSocketMapping(), new SessionManager(), null, new BufferPool());
+        this.eventLoop.start();
+        this.thread = new Thread(this.eventLoop);
+        this.thread.start();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.eventLoop.stop();
+        this.eventLoop.execute(() -> {});
+        this.thread.join(1000);
+        this.serverChannel.close();
+    }
+
+    @Test
+    public void bodyReadAfterHandlerReturned() throws Exception {
+        try(Socket client = new Socket()) {
+            client.connect(this.serverChannel.getLocalAddress());
+            client.setSoTimeout(5000);
+            SocketChannel channel = this.serverChannel.accept();
+            channel.configureBlocking(false);
+            HttpProtocolParser parser = new HttpProtocolParser(channel, new BufferPool(), this.eventLoop.objectPool(),
+                    HttpParserConfig.of(Environment.empty()), new WebSocketMapping());
+            this.eventLoop.execute(() -> this.eventLoop.register(channel, SelectionKey.OP_READ, parser));
+            client.getOutputStream().write(("POST /echo HTTP/1.1\r\nHost: x\r\nContent-Type: text/plain\r\nContent-Length: 5\r\nConnection: close\r\n\r\nhello")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            String response = readAll(client.getInputStream());
+            assertTrue(response, response.startsWith("HTTP/1.1 200"));
+            assertTrue(response, response.endsWith("\r\n\r\nhello"));
+        }
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[1024];
+        int n;
+        while((n = in.read(bytes)) > 0)
+            out.write(bytes, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * answers with the body of the request, read by a stage finishing after the handler returned
+     */
+    private static class LaterEcho implements MvcDispatcher {
+
+        @Override
+        public void init(Ioc ioc, Environment environment, Class<? extends View> viewTemplate) {
+        }
+
+        @Override
+        public void dispatcher(HttpRequest request, HttpResponse response) {
+            AsyncContext context = response.startAsync();
+            CompletableFuture.runAsync(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    response.text(request.bodyToString());
+                } catch (Exception e) {
+                    response.status(500);
+                } finally {
+                    context.complete();
+                }
+            });
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
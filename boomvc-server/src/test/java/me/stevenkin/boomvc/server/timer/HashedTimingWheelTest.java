@@ -0,0 +1,50 @@
+package me.stevenkin.boomvc.server.timer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HashedTimingWheelTest {
+
+    @Test
+    public void expire() throws InterruptedException {
+        List<Object> expired = new ArrayList<>();
+        HashedTimingWheel wheel = new HashedTimingWheel(10, 8, t->expired.add(t.attachment()));
+        Timeout t1 = new Timeout("t1");
+        Timeout t2 = new Timeout("t2");
+        wheel.schedule(t1, 20);
+        wheel.schedule(t2, 200);
+        wheel.advance();
+        assertTrue(expired.isEmpty());
+        Thread.sleep(60);
+        wheel.advance();
+        assertEquals(1, expired.size());
+        assertEquals("t1", expired.get(0));
+        assertFalse(t1.isScheduled());
+        assertTrue(t2.isScheduled());
+        Thread.sleep(200);
+        wheel.advance();
+        assertEquals(2, expired.size());
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void cancelAndReschedule() throws InterruptedException {
+        List<Object> expired = new ArrayList<>();
+        HashedTimingWheel wheel = new HashedTimingWheel(10, 8, t->expired.add(t.attachment()));
+        Timeout t1 = new Timeout("t1");
+        Timeout t2 = new Timeout("t2");
+        wheel.schedule(t1, 20);
+        wheel.schedule(t2, 20);
+        wheel.cancel(t1);
+        wheel.schedule(t2, 300);
+        Thread.sleep(60);
+        wheel.advance();
+        assertTrue(expired.isEmpty());
+        assertFalse(t1.isScheduled());
+        assertFalse(wheel.isEmpty());
+    }
+}